@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import org.joda.time.Period;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Pending pod allowance per profile that adapts to how fast the cluster schedules pods, additive increase and
+ * multiplicative decrease. Every pod that starts running within the latency target grows the allowance by one pod per
+ * allowance worth of pods; a pod pending longer than the target, or found unschedulable, halves it. The allowance is
+ * halved at most once per target period, so one congested episode does not collapse it to a single pod.
+ */
+class AdaptivePendingPodLimit {
+    private final ConcurrentMap<String, Allowance> allowances = new ConcurrentHashMap<>();
+    private volatile long targetMillis = Period.seconds(60).toStandardDuration().getMillis();
+    Clock clock = Clock.DEFAULT;
+
+    void setTarget(Period target) {
+        targetMillis = target.toStandardDuration().getMillis();
+    }
+
+    /**
+     * @param configured the configured maximum pending pods of the profile, where the allowance starts
+     * @param ceiling    the largest allowance, or zero to use the configured maximum as is
+     * @return the number of pods of the profile allowed to be pending
+     */
+    int limit(String profile, int configured, int ceiling) {
+        if (ceiling <= 0) {
+            return configured;
+        }
+        return allowances.computeIfAbsent(profile, p -> new Allowance(Math.min(configured, ceiling))).limit(ceiling);
+    }
+
+    /**
+     * A pod of the profile started running after being pending for the given time.
+     */
+    void scheduled(String profile, long pendingMillis) {
+        Allowance allowance = allowances.get(profile);
+        if (allowance == null) {
+            return;
+        }
+
+        if (pendingMillis <= targetMillis) {
+            allowance.increase();
+        } else {
+            allowance.decrease(profile, format("a pod was pending for {0}ms", pendingMillis));
+        }
+    }
+
+    /**
+     * A pod of the profile is still pending after the given time.
+     */
+    void pending(String profile, long pendingMillis) {
+        Allowance allowance = allowances.get(profile);
+        if (allowance != null && pendingMillis > targetMillis) {
+            allowance.decrease(profile, format("a pod is pending for {0}ms", pendingMillis));
+        }
+    }
+
+    /**
+     * A pod of the profile cannot be scheduled by the cluster.
+     */
+    void unschedulable(String profile) {
+        Allowance allowance = allowances.get(profile);
+        if (allowance != null) {
+            allowance.decrease(profile, "a pod is unschedulable");
+        }
+    }
+
+    private class Allowance {
+        private double value;
+        private int ceiling;
+        private long lastDecreasedAt = Long.MIN_VALUE;
+
+        Allowance(int initial) {
+            this.value = Math.max(1, initial);
+            this.ceiling = Math.max(1, initial);
+        }
+
+        synchronized int limit(int ceiling) {
+            this.ceiling = ceiling;
+            value = Math.min(value, ceiling);
+            return Math.max(1, (int) value);
+        }
+
+        synchronized void increase() {
+            value = Math.min(ceiling, value + 1 / value);
+        }
+
+        synchronized void decrease(String profile, String reason) {
+            long now = clock.now().getMillis();
+            if (lastDecreasedAt != Long.MIN_VALUE && now - lastDecreasedAt < targetMillis) {
+                return;
+            }
+
+            value = Math.max(1, value / 2);
+            lastDecreasedAt = now;
+            LOG.info(format("[adaptive-pending-pods] Pending pods allowance of profile {0} shrunk to {1}, {2}.", profile, (int) value, reason));
+        }
+    }
+}
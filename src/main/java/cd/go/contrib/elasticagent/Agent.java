@@ -86,6 +86,13 @@ public class Agent {
         return configState;
     }
 
+    /**
+     * @return this agent as the server reports it once it has been disabled
+     */
+    public Agent disabled() {
+        return new Agent(agentId, agentState, buildState, ConfigState.Disabled);
+    }
+
     @Override
     public String toString() {
         return "Agent{" +
@@ -18,6 +18,10 @@ package cd.go.contrib.elasticagent;
 
 import cd.go.contrib.elasticagent.executors.ServerPingRequestExecutor;
 import cd.go.contrib.elasticagent.requests.CreateAgentRequest;
+import cd.go.contrib.elasticagent.requests.ShouldAssignWorkRequest;
+
+import java.util.Collection;
+import java.util.List;
 
 
 /**
@@ -45,6 +49,41 @@ public interface AgentInstances<T> {
      */
     void terminate(String agentId, PluginSettings settings) throws Exception;
 
+    /**
+     * This message is sent when the plugin needs to terminate many agent instances at once. Implementations should
+     * terminate them in bulk rather than one instance after another.
+     *
+     * @param agentIds the elastic agent ids
+     * @param settings the plugin settings object
+     * @return the ids of the agents whose instances were terminated or did not exist
+     */
+    List<String> terminateAll(Collection<String> agentIds, PluginSettings settings) throws Exception;
+
+    /**
+     * This message is sent when the plugin settings change. The idle agent instances of every profile were created
+     * with the previous settings, so they are terminated and their agents deleted from the server; busy agents are
+     * left to finish their jobs.
+     *
+     * @param settings      the new plugin settings object
+     * @param pluginRequest the plugin request object
+     * @return the number of agent instances terminated
+     */
+    int drainIdleInstances(PluginSettings settings, PluginRequest pluginRequest) throws Exception;
+
+    /**
+     * This message is sent when the server offers a job to an idle agent that was created for another job. If the
+     * agent's profile allows reusing agents and the job needs the same profile and environment, the agent instance is
+     * bound to the job instead of being torn down. An instance that was already created for the job is terminated, and
+     * its agent is deleted from the server.
+     *
+     * @param agentId       the elastic agent id
+     * @param request       the should assign work request
+     * @param settings      the plugin settings object
+     * @param pluginRequest the plugin request object
+     * @return the instance bound to the job, or <code>null</code> if the agent can not be reused for the job
+     */
+    T reuse(String agentId, ShouldAssignWorkRequest request, PluginSettings settings, PluginRequest pluginRequest);
+
     /**
      * This message is sent from the {@link ServerPingRequestExecutor}
      * to terminate instances that did not register with the server after a timeout. The timeout may be configurable and
@@ -76,6 +115,16 @@ public interface AgentInstances<T> {
      */
     void refreshAll(PluginRequest pluginRequest) throws Exception;
 
+    /**
+     * Same as {@link #refreshAll(PluginRequest)}, but reuses previously refreshed instances as long as they are
+     * younger than the staleness budget configured for the given request type, see
+     * {@link PluginSettings#getMaxStaleness(Request)}.
+     *
+     * @param pluginRequest the plugin request object
+     * @param request       the request type the instances are refreshed for
+     */
+    void refreshAll(PluginRequest pluginRequest, Request request) throws Exception;
+
     /**
      * This
      * Returns an agent instance with the specified <code>id</code> or <code>null</code>, if the agent is not found.
@@ -83,5 +132,21 @@ public interface AgentInstances<T> {
      * @param agentId the elastic agent id
      */
     T find(String agentId);
+
+    /**
+     * Returns the agent instance created for the job with the specified <code>jobId</code> or <code>null</code>, if no
+     * agent was created for it.
+     *
+     * @param jobId the id of the job the agent was created for
+     */
+    T findByJobId(Long jobId);
+
+    /**
+     * Returns the namespace of the agent instance with the specified <code>id</code> or <code>null</code>, if the agent
+     * is not found.
+     *
+     * @param agentId the elastic agent id
+     */
+    String namespaceOf(String agentId);
 }
 
@@ -70,6 +70,20 @@ public class Agents {
         return FluentIterable.from(agents.values()).filter(AGENT_DISABLED_PREDICATE).toList();
     }
 
+    /**
+     * @return a copy of these agents in which the given agents are disabled, as the server would list them after
+     * disabling them
+     */
+    public Agents withDisabled(Collection<Agent> disabled) {
+        Agents agents = new Agents(agents());
+        for (Agent agent : disabled) {
+            if (agents.containsAgentWithId(agent.elasticAgentId())) {
+                agents.add(agent.disabled());
+            }
+        }
+        return agents;
+    }
+
     public Set<String> agentIds() {
         return new LinkedHashSet<>(agents.keySet());
     }
@@ -48,6 +48,11 @@ public interface Constants {
     String ENVIRONMENT_LABEL_KEY = "Elastic-Agent-Environment-Name";
     String JOB_ID_LABEL_KEY = "Elastic-Agent-Job-Id";
     String JOB_IDENTIFIER_LABEL_KEY = "Elastic-Agent-Job-Identifier";
+    String SERVER_ID_LABEL_KEY = "Elastic-Agent-Server-Id";
+    String STANDBY_LABEL_KEY = "Elastic-Agent-Standby";
+    String BOUND_AT_ANNOTATION_KEY = "Elastic-Agent-Bound-At";
+    String REAP_LABEL_KEY = "Elastic-Agent-Reap";
+    String JOBS_RUN_ANNOTATION_KEY = "Elastic-Agent-Jobs-Run";
 
     String KUBERNETES_POD_KIND_LABEL_KEY = "kind";
     String KUBERNETES_POD_KIND_LABEL_VALUE = "kubernetes-elastic-agent";
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import cd.go.contrib.elasticagent.model.InventoryStatus;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Refreshes the elastic agent pod inventory on a plugin-owned thread, so that GoCD request threads only read the last
+ * published inventory instead of waiting on the Kubernetes API. Refreshes are spread out by a random jitter and back
+ * off exponentially while the cluster cannot be reached.
+ */
+public class InventoryRefresher {
+    static final Period MAX_BACKOFF = Period.minutes(5);
+    private static final int STALE_AFTER_MISSED_REFRESHES = 3;
+
+    private final AgentInstances<KubernetesInstance> agentInstances;
+    private final PluginRequest pluginRequest;
+    private final ScheduledExecutorService executor;
+    private final Random random = new Random();
+    Clock clock = Clock.DEFAULT;
+
+    private volatile PluginSettings settings = new PluginSettings();
+    private volatile DateTime lastRefreshedAt;
+    private volatile int consecutiveFailures;
+
+    public InventoryRefresher(AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest) {
+        this(agentInstances, pluginRequest, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kubernetes-inventory-refresher");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    InventoryRefresher(AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest, ScheduledExecutorService executor) {
+        this.agentInstances = agentInstances;
+        this.pluginRequest = pluginRequest;
+        this.executor = executor;
+    }
+
+    public void start() {
+        schedule(0);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return whether the inventory has been refreshed at least once, after which request handlers can rely on it
+     */
+    public boolean hasRefreshed() {
+        return lastRefreshedAt != null;
+    }
+
+    /**
+     * @return whether the inventory missed several background refreshes in a row
+     */
+    public boolean isStale() {
+        DateTime refreshedAt = lastRefreshedAt;
+        Period staleAfter = settings.getBackgroundRefreshInterval().multipliedBy(STALE_AFTER_MISSED_REFRESHES);
+        return refreshedAt == null || clock.now().isAfter(refreshedAt.plus(staleAfter));
+    }
+
+    public InventoryStatus status() {
+        DateTime refreshedAt = lastRefreshedAt;
+        return new InventoryStatus(refreshedAt == null ? null : refreshedAt.toDate(), isStale(), consecutiveFailures);
+    }
+
+    /**
+     * Refreshes the inventory once.
+     *
+     * @return delay in milliseconds until the next refresh
+     */
+    long refresh() {
+        try {
+            settings = pluginRequest.getPluginSettings();
+            agentInstances.refreshAll(pluginRequest);
+            lastRefreshedAt = clock.now();
+            consecutiveFailures = 0;
+            return millis(settings.getBackgroundRefreshInterval()) + jitter();
+        } catch (Exception e) {
+            consecutiveFailures++;
+            long backoff = backoff();
+            LOG.warn(format("[inventory-refresh] Failed to refresh pod information ({0} consecutive failures), retrying in {1}ms.", consecutiveFailures, backoff), e);
+            if (isStale()) {
+                LOG.warn(format("[inventory-refresh] Pod information is stale, last refreshed at {0}.", lastRefreshedAt));
+            }
+            return backoff;
+        }
+    }
+
+    private void run() {
+        schedule(refresh());
+    }
+
+    private void schedule(long delay) {
+        try {
+            executor.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("[inventory-refresh] Refresher is stopped, not scheduling any more refreshes.");
+        }
+    }
+
+    private long backoff() {
+        long interval = millis(settings.getBackgroundRefreshInterval());
+        long backoff = interval << Math.min(consecutiveFailures, 16);
+        return Math.min(backoff, millis(MAX_BACKOFF)) + jitter();
+    }
+
+    private long jitter() {
+        long jitter = millis(settings.getBackgroundRefreshJitter());
+        return jitter <= 0 ? 0 : (long) (random.nextDouble() * jitter);
+    }
+
+    private static long millis(Period period) {
+        return period.toStandardDuration().getMillis();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import org.joda.time.DateTime;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Elastic agent pods of one namespace, along with the state of the list and watch that keep them current. Instances
+ * and counters are only updated by {@link KubernetesAgentInstances}, under its registry lock.
+ */
+class InventoryShard {
+    final String namespace;
+    final ProfilePodCounters podCounters = new ProfilePodCounters();
+    final AtomicInteger podsBeingCreated = new AtomicInteger();
+    final Object refreshLock = new Object();
+
+    volatile KubernetesInstanceSnapshot instances = KubernetesInstanceSnapshot.EMPTY;
+    volatile KubernetesPodWatcher podWatcher;
+    volatile KubernetesClient syncedClient;
+    volatile DateTime lastSyncedAt;
+    volatile String lastResourceVersion;
+    volatile String serverId;
+    Watch watch;
+    CompletableFuture<Boolean> inFlightRefresh;
+
+    volatile InventoryStore.StoredInventory restoredInventory;
+    KubernetesInstanceSnapshot storedInstances;
+
+    InventoryShard(String namespace) {
+        this.namespace = namespace;
+    }
+
+    /**
+     * @return number of pods in the namespace, including the ones being created right now
+     */
+    int load() {
+        return instances.size() + podsBeingCreated.get();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import org.joda.time.DateTime;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static cd.go.contrib.elasticagent.utils.Util.GSON;
+import static java.text.MessageFormat.format;
+
+/**
+ * Keeps a compact copy of the elastic agent pod inventory on local disk, so that a restarted plugin starts from the
+ * last known pods and only needs to catch up on changes since the stored resource version of each namespace.
+ */
+class InventoryStore {
+    private static final Type STORED_INVENTORIES = new TypeToken<List<StoredInventory>>() {
+    }.getType();
+
+    private final File file;
+
+    InventoryStore(File file) {
+        this.file = file;
+    }
+
+    static InventoryStore inTempDirectory(String serverId) {
+        return new InventoryStore(new File(System.getProperty("java.io.tmpdir"), Constants.PLUGIN_ID + "-" + serverId + "-inventory.json"));
+    }
+
+    void save(List<StoredInventory> inventories) {
+        try {
+            Path temp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+            Files.write(temp, GSON.toJson(inventories).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn(format("[inventory-store] Failed to save pod inventory to {0}.", file), e);
+        }
+    }
+
+    List<StoredInventory> load() {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+
+        try {
+            List<StoredInventory> inventories = GSON.fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), STORED_INVENTORIES);
+            return inventories == null ? Collections.emptyList() : inventories;
+        } catch (Exception e) {
+            LOG.warn(format("[inventory-store] Ignoring unreadable pod inventory in {0}.", file), e);
+            return Collections.emptyList();
+        }
+    }
+
+    static class StoredInventory {
+        @Expose
+        @SerializedName("cluster_url")
+        private String clusterUrl;
+
+        @Expose
+        @SerializedName("namespace")
+        private String namespace;
+
+        @Expose
+        @SerializedName("selector")
+        private Map<String, String> selector;
+
+        @Expose
+        @SerializedName("resource_version")
+        private String resourceVersion;
+
+        @Expose
+        @SerializedName("instances")
+        private List<StoredInstance> instances;
+
+        StoredInventory(String clusterUrl, String namespace, Map<String, String> selector, String resourceVersion, Collection<KubernetesInstance> instances) {
+            this.clusterUrl = clusterUrl;
+            this.namespace = namespace;
+            this.selector = selector;
+            this.resourceVersion = resourceVersion;
+            this.instances = new ArrayList<>();
+            for (KubernetesInstance instance : instances) {
+                this.instances.add(new StoredInstance(instance));
+            }
+        }
+
+        boolean isFor(String clusterUrl, String namespace, Map<String, String> selector) {
+            return Objects.equals(this.clusterUrl, clusterUrl) && Objects.equals(this.namespace, namespace) && Objects.equals(this.selector, selector);
+        }
+
+        String namespace() {
+            return namespace;
+        }
+
+        String resourceVersion() {
+            return resourceVersion;
+        }
+
+        List<KubernetesInstance> instances() {
+            List<KubernetesInstance> restored = new ArrayList<>();
+            if (instances != null) {
+                for (StoredInstance instance : instances) {
+                    restored.add(instance.toKubernetesInstance());
+                }
+            }
+            return restored;
+        }
+    }
+
+    private static class StoredInstance {
+        @Expose
+        @SerializedName("name")
+        private String name;
+
+        @Expose
+        @SerializedName("properties")
+        private Map<String, String> properties;
+
+        @Expose
+        @SerializedName("job_id")
+        private Long jobId;
+
+        @Expose
+        @SerializedName("profile")
+        private String profile;
+
+        @Expose
+        @SerializedName("environment")
+        private String environment;
+
+        @Expose
+        @SerializedName("state")
+        private PodState state;
+
+        @Expose
+        @SerializedName("created_at")
+        private long createdAt;
+
+        @Expose
+        @SerializedName("bound_at")
+        private Long boundAt;
+
+        StoredInstance(KubernetesInstance instance) {
+            this.name = instance.name();
+            this.properties = instance.getInstanceProperties();
+            this.jobId = instance.jobId();
+            this.profile = instance.profile();
+            this.environment = instance.environment();
+            this.state = instance.state();
+            this.createdAt = instance.createdAt().getMillis();
+            this.boundAt = instance.boundAt() == null ? null : instance.boundAt().getMillis();
+        }
+
+        KubernetesInstance toKubernetesInstance() {
+            return new KubernetesInstance(new DateTime(createdAt), environment, name,
+                    properties == null ? Collections.emptyMap() : properties, jobId, state == null ? PodState.Pending : state, profile,
+                    boundAt == null ? null : new DateTime(boundAt));
+        }
+    }
+}
@@ -18,32 +18,73 @@ package cd.go.contrib.elasticagent;
 
 import cd.go.contrib.elasticagent.model.JobIdentifier;
 import cd.go.contrib.elasticagent.requests.CreateAgentRequest;
+import cd.go.contrib.elasticagent.requests.ShouldAssignWorkRequest;
 import cd.go.contrib.elasticagent.utils.Util;
 import io.fabric8.kubernetes.api.model.Pod;
-import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.PodCondition;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
 
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static cd.go.contrib.elasticagent.executors.GetProfileMetadataExecutor.IDLE_AGENT_TIMEOUT;
+import static cd.go.contrib.elasticagent.executors.GetProfileMetadataExecutor.MAX_JOBS_PER_POD;
+import static cd.go.contrib.elasticagent.executors.GetProfileMetadataExecutor.POD_CREATION_BURST;
+import static cd.go.contrib.elasticagent.executors.GetProfileMetadataExecutor.POD_CREATION_RATE;
 import static cd.go.contrib.elasticagent.executors.GetProfileMetadataExecutor.SPECIFIED_USING_POD_CONFIGURATION;
-import static cd.go.contrib.elasticagent.utils.Util.getSimpleDateFormat;
+import static cd.go.contrib.elasticagent.executors.GetProfileMetadataExecutor.WARM_POOL_SIZE;
 import static java.text.MessageFormat.format;
 
 public class KubernetesAgentInstances implements AgentInstances<KubernetesInstance> {
-    private final ConcurrentHashMap<String, KubernetesInstance> instances = new ConcurrentHashMap<>();
+    private static final Period POD_WATCH_RESYNC_PERIOD = Period.minutes(5);
+    private static final ExecutorService SHARD_REFRESH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "kubernetes-inventory-shard-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ConcurrentMap<String, InventoryShard> shards = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Object> admissionLocks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> podsBeingCreated = new ConcurrentHashMap<>();
+    private final Set<Long> jobsBeingCreated = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, AtomicInteger> standbysBeingCreated = new ConcurrentHashMap<>();
+    private final Set<String> claimedStandbys = ConcurrentHashMap.newKeySet();
+    private final Set<String> supersededPods = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, DateTime> idleSince = new ConcurrentHashMap<>();
+    private final Object registryLock = new Object();
     public Clock clock = Clock.DEFAULT;
-    final Semaphore semaphore = new Semaphore(0, true);
+    final RefreshAgeMetrics refreshAgeMetrics = new RefreshAgeMetrics();
+    final PodCreationRateLimiter rateLimiter = new PodCreationRateLimiter();
+    final AdaptivePendingPodLimit pendingPodLimit = new AdaptivePendingPodLimit();
+    final PodStartupLatencies startupLatencies = PodStartupLatencies.instance();
 
     private KubernetesClientFactory factory;
     private KubernetesInstanceFactory kubernetesInstanceFactory;
+    private final KubernetesApiPolicy apiPolicy;
+
+    private final Object storeLock = new Object();
+    private volatile InventoryStore inventoryStore;
+    private volatile Function<String, InventoryStore> pendingInventoryStore;
 
     public KubernetesAgentInstances() {
         this(KubernetesClientFactory.instance(), new KubernetesInstanceFactory());
@@ -54,59 +95,354 @@ public class KubernetesAgentInstances implements AgentInstances<KubernetesInstan
     }
 
     public KubernetesAgentInstances(KubernetesClientFactory factory, KubernetesInstanceFactory kubernetesInstanceFactory) {
+        this(factory, kubernetesInstanceFactory, KubernetesApiPolicy.instance());
+    }
+
+    KubernetesAgentInstances(KubernetesClientFactory factory, KubernetesInstanceFactory kubernetesInstanceFactory, KubernetesApiPolicy apiPolicy) {
         this.factory = factory;
         this.kubernetesInstanceFactory = kubernetesInstanceFactory;
+        this.apiPolicy = apiPolicy;
     }
 
     @Override
     public KubernetesInstance create(CreateAgentRequest request, PluginSettings settings, PluginRequest pluginRequest) {
+        String agentProfile = request.properties().getOrDefault("Profile", "Unknown");
         // Use profile configuration
 //        final Integer maxAllowedContainers = settings.getMaxPendingPods();
-        final Integer maxAllowedContainers = getProfileMaxPendingPods(request, settings);
-        synchronized (instances) {
-            refreshAll(pluginRequest);
-            LOG.info(Util.GSON.toJson(request));
-            String agentProfile = request.properties().getOrDefault("Profile", "Unknown");
-            LOG.info("Requested Agent with profile: " + agentProfile);
-            doWithLockOnSemaphore(new SetupSemaphore(maxAllowedContainers, instances, semaphore, agentProfile));
-
-            if (semaphore.tryAcquire()) {
-                return createKubernetesInstance(request, settings, pluginRequest);
-            } else {
-                LOG.warn(format("Create Agent Request] The number of pending kubernetes pods is currently at the maximum permissible limit ({0}). Total kubernetes pods ({1}). Not creating any more containers.", maxAllowedContainers, instances.size()));
+        final Integer maxAllowedContainers = maxPendingPods(agentProfile, request, settings);
+        refreshAll(settings, pluginRequest, Request.REQUEST_CREATE_AGENT);
+        LOG.info(Util.GSON.toJson(request));
+        LOG.info("Requested Agent with profile: " + agentProfile);
+
+        JobIdentifier jobIdentifier = request.jobIdentifier();
+        final int warmPoolSize = getProfileWarmPoolSize(request);
+        boolean autoRegisterKeyUsed = false;
+        try {
+            KubernetesInstance standby = warmPoolSize > 0 ? bindStandby(agentProfile, request, settings) : null;
+            if (standby != null) {
+                return standby;
+            }
+
+            if (!admit(agentProfile, jobIdentifier, maxAllowedContainers)) {
                 return null;
             }
+
+            try {
+                autoRegisterKeyUsed = true;
+                return createKubernetesInstance(request, settings, pluginRequest);
+            } finally {
+                podsBeingCreatedFor(agentProfile).decrementAndGet();
+                jobsBeingCreated.remove(jobIdentifier.getJobId());
+            }
+        } finally {
+            if (warmPoolSize > 0 && !autoRegisterKeyUsed) {
+                refillWarmPool(agentProfile, request, settings, pluginRequest, warmPoolSize, maxAllowedContainers);
+            }
         }
     }
 
-    private void doWithLockOnSemaphore(Runnable runnable) {
-        synchronized (semaphore) {
-            runnable.run();
+    /**
+     * Binds the job to an idle standby pod of the profile's warm pool, if there is one for the job's environment.
+     *
+     * @return the bound instance, or null if the job needs a new pod
+     */
+    private KubernetesInstance bindStandby(String agentProfile, CreateAgentRequest request, PluginSettings settings) {
+        Long jobId = request.jobIdentifier().getJobId();
+        KubernetesInstance standby;
+        synchronized (admissionLock(agentProfile)) {
+            if (isAgentCreatedForJob(jobId) || jobsBeingCreated.contains(jobId)) {
+                return null;
+            }
+
+            standby = claimStandby(agentProfile, request.environment());
+            if (standby == null) {
+                return null;
+            }
+            jobsBeingCreated.add(jobId);
+        }
+
+        try {
+            InventoryShard shard = shardOf(standby.name());
+            KubernetesInstance bound = shard == null ? null : kubernetesInstanceFactory.bind(factory.client(settings, shard.namespace), standby.name(), request);
+            if (bound == null) {
+                LOG.warn(format("[warm-pool] Standby pod {0} is gone, creating a new pod for job {1}.", standby.name(), request.jobIdentifier()));
+                return null;
+            }
+
+            register(shard, bound);
+            startupLatencies.bound(bound.name());
+            LOG.info(format("[warm-pool] Bound job {0} to standby pod {1}.", request.jobIdentifier(), bound.name()));
+            return bound;
+        } catch (Exception e) {
+            LOG.warn(format("[warm-pool] Failed to bind standby pod {0}, creating a new pod for job {1}.", standby.name(), request.jobIdentifier()), e);
+            return null;
+        } finally {
+            claimedStandbys.remove(standby.name());
+            jobsBeingCreated.remove(jobId);
         }
     }
 
-    private KubernetesInstance createKubernetesInstance(CreateAgentRequest request, PluginSettings settings, PluginRequest pluginRequest) {
-        JobIdentifier jobIdentifier = request.jobIdentifier();
-        if (isAgentCreatedForJob(jobIdentifier.getJobId())) {
-            LOG.warn(format("[Create Agent Request] Request for creating an agent for Job Identifier [{0}] has already been scheduled. Skipping current request.", jobIdentifier));
+    @Override
+    public KubernetesInstance reuse(String agentId, ShouldAssignWorkRequest request, PluginSettings settings, PluginRequest pluginRequest) {
+        InventoryShard shard = shardOf(agentId);
+        KubernetesInstance instance = shard == null ? null : shard.instances.get(agentId);
+        if (instance == null || !isReusableFor(instance, request)) {
             return null;
         }
 
-        KubernetesClient client = factory.client(settings);
-        KubernetesInstance instance = kubernetesInstanceFactory.create(request, settings, client, pluginRequest, isUsingPodYaml(request));
-        register(instance);
+        Long jobId = request.jobIdentifier().getJobId();
+        if (!jobsBeingCreated.add(jobId)) {
+            return null;
+        }
+        if (!claimedStandbys.add(agentId)) {
+            jobsBeingCreated.remove(jobId);
+            return null;
+        }
 
-        return instance;
+        try {
+            KubernetesInstance superseded = findByJobId(jobId);
+            KubernetesClient client = factory.client(settings, shard.namespace);
+            KubernetesInstance bound = kubernetesInstanceFactory.bindToJob(client, agentId, request.jobIdentifier());
+            if (bound == null) {
+                return null;
+            }
+
+            register(shard, bound);
+            idleSince.remove(agentId);
+            LOG.info(format("[agent-reuse] Reusing idle agent {0} for job {1}, job {2} of {3} on this pod.",
+                    agentId, request.jobIdentifier(), bound.jobsRun(), maxJobsPerPod(bound)));
+
+            if (superseded != null && !superseded.name().equals(agentId)) {
+                supersededPods.add(superseded.name());
+                LOG.info(format("[agent-reuse] Pod {0} created for job {1} is served by a reused agent, it is removed on the next server ping.",
+                        superseded.name(), request.jobIdentifier()));
+            }
+            return bound;
+        } catch (Exception e) {
+            LOG.warn(format("[agent-reuse] Failed to reuse agent {0} for job {1}.", agentId, request.jobIdentifier()), e);
+            return null;
+        } finally {
+            claimedStandbys.remove(agentId);
+            jobsBeingCreated.remove(jobId);
+        }
     }
 
-    private boolean isAgentCreatedForJob(Long jobId) {
-        for (KubernetesInstance instance : instances.values()) {
-            if (instance.jobId().equals(jobId)) {
-                return true;
+    /**
+     * An agent may be reused when its profile opted in, it has jobs left, it is not superseded, it is idle and has not outlived its idle
+     * timeout, and it was created for the same profile configuration and environment as the job.
+     */
+    private boolean isReusableFor(KubernetesInstance instance, ShouldAssignWorkRequest request) {
+        int maxJobsPerPod = maxJobsPerPod(instance);
+        if (maxJobsPerPod <= 1 || instance.isStandby() || instance.jobsRun() >= maxJobsPerPod || supersededPods.contains(instance.name())) {
+            return false;
+        }
+
+        Agent agent = request.agent();
+        if (agent == null || agent.agentState() != Agent.AgentState.Idle || agent.configState() != Agent.ConfigState.Enabled) {
+            return false;
+        }
+
+        if (!StringUtils.defaultString(request.environment()).equals(StringUtils.defaultString(instance.environment()))) {
+            return false;
+        }
+
+        Map<String, String> podProperties = instance.getInstanceProperties();
+        for (Map.Entry<String, String> property : request.properties().entrySet()) {
+            if (podProperties == null || !StringUtils.defaultString(property.getValue()).equals(StringUtils.defaultString(podProperties.get(property.getKey())))) {
+                return false;
             }
         }
 
-        return false;
+        DateTime since = idleSince.get(instance.name());
+        return since == null || !clock.now().isAfter(since.plus(idleAgentTimeout(instance)));
+    }
+
+    private static int maxJobsPerPod(KubernetesInstance instance) {
+        return getProfileNumber(instance.getInstanceProperties(), MAX_JOBS_PER_POD.getKey(), 1);
+    }
+
+    private static Period idleAgentTimeout(KubernetesInstance instance) {
+        return Period.seconds(getProfileNumber(instance.getInstanceProperties(), IDLE_AGENT_TIMEOUT.getKey(), 300));
+    }
+
+    /**
+     * Claims a standby pod of the profile and environment, preferring pods that are already running. Must be called
+     * holding the profile's admission lock.
+     */
+    private KubernetesInstance claimStandby(String agentProfile, String environment) {
+        KubernetesInstance claimed = null;
+        for (InventoryShard shard : shards.values()) {
+            for (KubernetesInstance instance : shard.instances.instances()) {
+                if (!isStandbyOf(instance, agentProfile, environment) || claimedStandbys.contains(instance.name())) {
+                    continue;
+                }
+                if (claimed == null || (claimed.isPending() && !instance.isPending())) {
+                    claimed = instance;
+                }
+            }
+        }
+
+        if (claimed != null) {
+            claimedStandbys.add(claimed.name());
+        }
+        return claimed;
+    }
+
+    /**
+     * Adds a standby pod to the warm pool of the profile and environment if it is below its configured size. The
+     * server revokes an auto-register key once an agent registered with it, so a standby pod is only created with the
+     * key of a request that did not create a pod of its own: one that was bound to a standby pod, or a repeated
+     * request for a job that already has a pod. Standby pods count against the profile's pending pod limit like any
+     * other pod.
+     */
+    private void refillWarmPool(String agentProfile, CreateAgentRequest request, PluginSettings settings, PluginRequest pluginRequest, int warmPoolSize, Integer maxAllowedContainers) {
+        if (StringUtils.isBlank(request.autoRegisterKey())) {
+            return;
+        }
+
+        AtomicInteger standbysBeingCreated = standbysBeingCreated(agentProfile, request.environment());
+        if (!admitStandby(agentProfile, request.environment(), standbysBeingCreated, warmPoolSize, maxAllowedContainers)) {
+            return;
+        }
+
+        try {
+            KubernetesInstance standby = createKubernetesInstance(request.forStandby(), settings, pluginRequest);
+            LOG.info(format("[warm-pool] Created standby pod {0} for profile {1}.", standby.name(), agentProfile));
+        } catch (PodCreationThrottledException e) {
+            LOG.debug(format("[warm-pool] Not refilling warm pool for profile {0}: {1}", agentProfile, e.getMessage()));
+        } catch (Exception e) {
+            LOG.warn(format("[warm-pool] Failed to create standby pod for profile {0}.", agentProfile), e);
+        } finally {
+            podsBeingCreatedFor(agentProfile).decrementAndGet();
+            standbysBeingCreated.decrementAndGet();
+        }
+    }
+
+    private boolean admitStandby(String agentProfile, String environment, AtomicInteger standbysBeingCreated, int warmPoolSize, Integer maxAllowedContainers) {
+        synchronized (admissionLock(agentProfile)) {
+            if (standbyPods(agentProfile, environment) + standbysBeingCreated.get() >= warmPoolSize) {
+                return false;
+            }
+
+            AtomicInteger podsBeingCreated = podsBeingCreatedFor(agentProfile);
+            if (pendingPods(agentProfile) + podsBeingCreated.get() >= maxAllowedContainers) {
+                LOG.debug(format("[warm-pool] Pending pods for profile {0} are at the limit ({1}), not refilling warm pool.", agentProfile, maxAllowedContainers));
+                return false;
+            }
+
+            podsBeingCreated.incrementAndGet();
+            standbysBeingCreated.incrementAndGet();
+            return true;
+        }
+    }
+
+    int standbyPods(String agentProfile, String environment) {
+        int standby = 0;
+        for (InventoryShard shard : shards.values()) {
+            for (KubernetesInstance instance : shard.instances.instances()) {
+                if (isStandbyOf(instance, agentProfile, environment)) {
+                    standby++;
+                }
+            }
+        }
+        return standby;
+    }
+
+    private static boolean isStandbyOf(KubernetesInstance instance, String agentProfile, String environment) {
+        return instance.isStandby()
+                && agentProfile.equals(instance.profile())
+                && StringUtils.defaultString(environment).equals(StringUtils.defaultString(instance.environment()));
+    }
+
+    private AtomicInteger standbysBeingCreated(String agentProfile, String environment) {
+        return standbysBeingCreated.computeIfAbsent(agentProfile + "/" + StringUtils.defaultString(environment), key -> new AtomicInteger());
+    }
+
+    private Object admissionLock(String agentProfile) {
+        return admissionLocks.computeIfAbsent(agentProfile, profile -> new Object());
+    }
+
+    /**
+     * Reserves a pending pod slot of the profile for the job. Only admission is serialized, per profile; the pod
+     * itself is created after the lock is released and counts against the limit until it is registered.
+     */
+    private boolean admit(String agentProfile, JobIdentifier jobIdentifier, Integer maxAllowedContainers) {
+        synchronized (admissionLock(agentProfile)) {
+            if (isAgentCreatedForJob(jobIdentifier.getJobId()) || !jobsBeingCreated.add(jobIdentifier.getJobId())) {
+                LOG.warn(format("[Create Agent Request] Request for creating an agent for Job Identifier [{0}] has already been scheduled. Skipping current request.", jobIdentifier));
+                return false;
+            }
+
+            AtomicInteger podsBeingCreated = podsBeingCreatedFor(agentProfile);
+            if (pendingPods(agentProfile) + podsBeingCreated.get() >= maxAllowedContainers) {
+                jobsBeingCreated.remove(jobIdentifier.getJobId());
+                LOG.warn(format("Create Agent Request] The number of pending kubernetes pods for profile {0} is currently at the maximum permissible limit ({1}). Total kubernetes pods ({2}). Not creating any more containers.", agentProfile, maxAllowedContainers, size()));
+                return false;
+            }
+
+            podsBeingCreated.incrementAndGet();
+            return true;
+        }
+    }
+
+    private AtomicInteger podsBeingCreatedFor(String agentProfile) {
+        return podsBeingCreated.computeIfAbsent(agentProfile, profile -> new AtomicInteger());
+    }
+
+    private KubernetesInstance createKubernetesInstance(CreateAgentRequest request, PluginSettings settings, PluginRequest pluginRequest) {
+        DateTime requestedAt = clock.now();
+        throttle(request, settings);
+        InventoryShard shard = leastLoadedShard(settings);
+        try {
+            KubernetesClient client = factory.client(settings, shard.namespace);
+            KubernetesInstance instance = kubernetesInstanceFactory.create(request, settings, client, pluginRequest, isUsingPodYaml(request));
+            startupLatencies.created(instance.name(), instance.profile(), requestedAt);
+            register(shard, instance);
+            return instance;
+        } finally {
+            shard.podsBeingCreated.decrementAndGet();
+        }
+    }
+
+    /**
+     * Checks the global and the profile's pod creation rate limits without waiting for them. A rate limited create
+     * for a job reserves the next token for that job, which its retry claims; standby pods are created only when a
+     * token is available right away.
+     *
+     * @throws PodCreationThrottledException if the pod may not be created yet; the pending pod slot is released, and
+     *                                       the create has to be retried after the reported wait
+     */
+    private void throttle(CreateAgentRequest request, PluginSettings settings) {
+        String agentProfile = request.properties().getOrDefault("Profile", "Unknown");
+        PodCreationRateLimiter.Limit global = new PodCreationRateLimiter.Limit(settings.getPodCreationRate(), settings.getPodCreationBurst());
+        PodCreationRateLimiter.Limit perProfile = new PodCreationRateLimiter.Limit(getProfileNumber(request, POD_CREATION_RATE.getKey(), 0),
+                getProfileNumber(request, POD_CREATION_BURST.getKey(), settings.getPodCreationBurst()));
+        String reservation = request.jobIdentifier() == null ? null : String.valueOf(request.jobIdentifier().getJobId());
+        long waitMillis = rateLimiter.tryAcquire(reservation, agentProfile, global, perProfile);
+        if (waitMillis > 0) {
+            throw new PodCreationThrottledException(format("Pod creation for profile {0} is rate limited for {1}ms.", agentProfile, waitMillis), waitMillis);
+        }
+    }
+
+    /**
+     * Picks the namespace with the fewest agent pods for a new pod, and reserves a place in it until it is created.
+     */
+    private InventoryShard leastLoadedShard(PluginSettings settings) {
+        List<InventoryShard> shards = shardsFor(settings);
+        synchronized (registryLock) {
+            InventoryShard leastLoaded = null;
+            for (InventoryShard shard : shards) {
+                if (leastLoaded == null || shard.load() < leastLoaded.load()) {
+                    leastLoaded = shard;
+                }
+            }
+            leastLoaded.podsBeingCreated.incrementAndGet();
+            return leastLoaded;
+        }
+    }
+
+    private boolean isAgentCreatedForJob(Long jobId) {
+        return findByJobId(jobId) != null;
     }
 
     private boolean isUsingPodYaml(CreateAgentRequest request) {
@@ -115,94 +451,794 @@ public class KubernetesAgentInstances implements AgentInstances<KubernetesInstan
 
     @Override
     public void terminate(String agentId, PluginSettings settings) {
-        KubernetesInstance instance = instances.get(agentId);
+        InventoryShard shard = shardOf(agentId);
+        KubernetesInstance instance = shard == null ? null : shard.instances.get(agentId);
         if (instance != null) {
-            KubernetesClient client = factory.client(settings);
-            instance.terminate(client);
+            KubernetesClient client = factory.client(settings, shard.namespace);
+            apiPolicy.call("delete pod " + agentId, () -> {
+                instance.terminate(client);
+                return null;
+            });
+            markTerminating(shard, agentId, instance.profile());
         } else {
             LOG.warn(format("Requested to terminate an instance that does not exist {0}.", agentId));
         }
-        instances.remove(agentId);
     }
 
     @Override
     public void terminateUnregisteredInstances(PluginSettings settings, Agents agents) throws Exception {
-        KubernetesAgentInstances toTerminate = unregisteredAfterTimeout(settings, agents);
-        if (toTerminate.instances.isEmpty()) {
+        List<String> toTerminate = unregisteredAfterTimeout(settings, agents);
+        if (!toTerminate.isEmpty()) {
+            LOG.warn(format("Terminating instances that did not register {0}.", toTerminate));
+            terminateAll(toTerminate, settings);
+        }
+
+        terminateUnregisteredSuperseded(settings, agents);
+    }
+
+    /**
+     * Terminates the pods superseded by reused agents whose agents have not registered. Superseded pods whose agents
+     * registered are disabled and terminated with the agents to disable, see {@link #instancesCreatedAfterTimeout}.
+     */
+    private void terminateUnregisteredSuperseded(PluginSettings settings, Agents agents) {
+        supersededPods.removeIf(name -> find(name) == null);
+
+        List<String> unregistered = new ArrayList<>();
+        for (String name : supersededPods) {
+            if (!agents.containsAgentWithId(name)) {
+                unregistered.add(name);
+            }
+        }
+        if (unregistered.isEmpty()) {
             return;
         }
 
-        LOG.warn(format("Terminating instances that did not register {0}.", toTerminate.instances.keySet()));
-        for (String podName : toTerminate.instances.keySet()) {
-            terminate(podName, settings);
+        LOG.info(format("[agent-reuse] Terminating pods {0} superseded by reused agents.", unregistered));
+        supersededPods.removeAll(terminateAll(unregistered, settings));
+    }
+
+    /**
+     * Terminates the pods of the given agents with one collection delete per namespace instead of one delete per pod.
+     * The pods are labelled with a reap batch id first and then deleted by that label.
+     *
+     * @return the ids of the agents whose pods were terminated or did not exist
+     */
+    @Override
+    public List<String> terminateAll(Collection<String> agentIds, PluginSettings settings) {
+        List<String> terminated = new ArrayList<>();
+        Map<InventoryShard, List<KubernetesInstance>> instancesByShard = new LinkedHashMap<>();
+        for (String agentId : agentIds) {
+            InventoryShard shard = shardOf(agentId);
+            KubernetesInstance instance = shard == null ? null : shard.instances.get(agentId);
+            if (instance == null) {
+                LOG.warn(format("Requested to terminate an instance that does not exist {0}.", agentId));
+                terminated.add(agentId);
+            } else {
+                instancesByShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(instance);
+            }
+        }
+
+        String batch = UUID.randomUUID().toString();
+        for (Map.Entry<InventoryShard, List<KubernetesInstance>> entry : instancesByShard.entrySet()) {
+            terminated.addAll(reap(entry.getKey(), entry.getValue(), settings, batch));
+        }
+        return terminated;
+    }
+
+    private List<String> reap(InventoryShard shard, List<KubernetesInstance> instances, PluginSettings settings, String batch) {
+        KubernetesClient client = factory.client(settings, shard.namespace);
+        List<String> terminated = new ArrayList<>();
+        List<KubernetesInstance> marked = new ArrayList<>();
+        for (KubernetesInstance instance : instances) {
+            try {
+                if (kubernetesInstanceFactory.markForReaping(client, instance.name(), batch)) {
+                    marked.add(instance);
+                } else {
+                    deregister(shard, instance.name());
+                    terminated.add(instance.name());
+                }
+            } catch (RuntimeException e) {
+                LOG.error(format("[pod-termination] Failed to mark pod {0} for termination.", instance.name()), e);
+            }
+        }
+        if (marked.isEmpty()) {
+            return terminated;
+        }
+
+        Map<String, String> selector = new HashMap<>();
+        selector.put(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID);
+        selector.put(Constants.REAP_LABEL_KEY, batch);
+        try {
+            apiPolicy.call(format("delete {0} pods of namespace {1}", marked.size(), shard.namespace), () -> client.pods().withLabels(selector).delete());
+        } catch (RuntimeException e) {
+            LOG.error(format("[pod-termination] Failed to delete {0} pods of namespace {1}.", marked.size(), shard.namespace), e);
+            return terminated;
+        }
+
+        for (KubernetesInstance instance : marked) {
+            markTerminating(shard, instance.name(), instance.profile());
+            terminated.add(instance.name());
         }
+        LOG.info(format("[pod-termination] Deleted {0} pods of namespace {1} with one collection delete.", marked.size(), shard.namespace));
+        return terminated;
+    }
+
+    /**
+     * Removes every idle pod of the profile: the standby pods of its warm pool and the pods of its idle agents. The
+     * agents are disabled first, so that no work is assigned to them meanwhile, and are deleted from the server once
+     * their pods are gone.
+     *
+     * @return the number of pods removed
+     */
+    public int drainProfile(String profile, PluginSettings settings, PluginRequest pluginRequest) throws ServerRequestFailedException {
+        refreshAll(settings, pluginRequest, Request.REQUEST_SERVER_PING);
+        return drain(profile, pluginRequest.listAgents(), settings, pluginRequest);
+    }
+
+    /**
+     * Drains every profile that has pods, see {@link #drainProfile}.
+     */
+    @Override
+    public int drainIdleInstances(PluginSettings settings, PluginRequest pluginRequest) throws ServerRequestFailedException {
+        refreshAll(settings, pluginRequest, Request.REQUEST_SERVER_PING);
+        Agents agents = pluginRequest.listAgents();
+
+        Set<String> profiles = new TreeSet<>();
+        for (InventoryShard shard : shards.values()) {
+            for (KubernetesInstance instance : shard.instances.instances()) {
+                if (instance.profile() != null) {
+                    profiles.add(instance.profile());
+                }
+            }
+        }
+
+        int drained = 0;
+        for (String profile : profiles) {
+            drained += drain(profile, agents, settings, pluginRequest);
+        }
+        return drained;
+    }
+
+    private int drain(String profile, Agents agents, PluginSettings settings, PluginRequest pluginRequest) throws ServerRequestFailedException {
+        List<String> toDrain = new ArrayList<>();
+        synchronized (admissionLock(profile)) {
+            for (InventoryShard shard : shards.values()) {
+                for (KubernetesInstance instance : shard.instances.instances()) {
+                    if (profile.equals(instance.profile()) && instance.isStandby() && claimedStandbys.add(instance.name())) {
+                        toDrain.add(instance.name());
+                    }
+                }
+            }
+        }
+        List<String> claimed = new ArrayList<>(toDrain);
+
+        try {
+            for (Agent agent : agents.agents()) {
+                KubernetesInstance instance = find(agent.elasticAgentId());
+                if (instance != null && !instance.isStandby() && profile.equals(instance.profile()) && isIdle(agent)) {
+                    toDrain.add(instance.name());
+                }
+            }
+
+            List<Agent> registered = new ArrayList<>();
+            for (Agent agent : agents.agents()) {
+                if (toDrain.contains(agent.elasticAgentId())) {
+                    registered.add(agent);
+                }
+            }
+            pluginRequest.disableAgents(registered);
+
+            List<String> terminated = terminateAll(toDrain, settings);
+            List<Agent> toDelete = new ArrayList<>();
+            for (Agent agent : registered) {
+                if (terminated.contains(agent.elasticAgentId())) {
+                    toDelete.add(agent);
+                }
+            }
+            pluginRequest.deleteAgents(toDelete);
+
+            LOG.info(format("[pod-termination] Drained {0} of {1} idle pods of profile {2}.", terminated.size(), toDrain.size(), profile));
+            return terminated.size();
+        } finally {
+            claimedStandbys.removeAll(claimed);
+        }
+    }
+
+    private static boolean isIdle(Agent agent) {
+        Agent.AgentState state = agent.agentState();
+        return state == Agent.AgentState.Idle || state == Agent.AgentState.Missing || state == Agent.AgentState.LostContact;
     }
 
     @Override
     public Agents instancesCreatedAfterTimeout(PluginSettings settings, Agents agents) {
         ArrayList<Agent> oldAgents = new ArrayList<>();
         for (Agent agent : agents.agents()) {
-            KubernetesInstance instance = instances.get(agent.elasticAgentId());
-            if (instance == null) {
+            KubernetesInstance instance = find(agent.elasticAgentId());
+            if (instance == null || instance.isStandby()) {
                 continue;
             }
 
-            if (clock.now().isAfter(instance.createdAt().plus(settings.getAutoRegisterPeriod()))) {
+            if (supersededPods.contains(instance.name())) {
+                oldAgents.add(agent);
+                continue;
+            }
+
+            if (isKeptForReuse(instance, agent)) {
+                continue;
+            }
+
+            DateTime jobWaitingSince = instance.boundAt() != null ? instance.boundAt() : instance.createdAt();
+            if (clock.now().isAfter(jobWaitingSince.plus(settings.getAutoRegisterPeriod()))) {
                 oldAgents.add(agent);
             }
         }
         return new Agents(oldAgents);
     }
 
+    /**
+     * Keeps idle agents of profiles that reuse agents until their idle timeout runs out, so that they can be handed
+     * the next job of the profile.
+     */
+    private boolean isKeptForReuse(KubernetesInstance instance, Agent agent) {
+        int maxJobsPerPod = maxJobsPerPod(instance);
+        if (maxJobsPerPod <= 1 || instance.jobsRun() >= maxJobsPerPod) {
+            return false;
+        }
+
+        if (agent.agentState() != Agent.AgentState.Idle) {
+            idleSince.remove(instance.name());
+            return false;
+        }
+
+        DateTime since = idleSince.computeIfAbsent(instance.name(), name -> clock.now());
+        return !clock.now().isAfter(since.plus(idleAgentTimeout(instance)));
+    }
+
     @Override
     public void refreshAll(PluginRequest pluginRequest) {
-        LOG.debug("[Refresh Instances] Syncing k8s elastic agent pod information.");
-        KubernetesClient client = factory.client(pluginRequest.getPluginSettings());
-        PodList list = client.pods().list();
+        PluginSettings settings = pluginRequest.getPluginSettings();
+        refreshShards(settings, pluginRequest, shardsFor(settings), settings.getMinRefreshInterval());
+        saveInventory(settings, pluginRequest);
+    }
+
+    /**
+     * Restores the pod inventory saved by a previous run on the first refresh, once the id of the GoCD server, which
+     * names its store, can be looked up.
+     */
+    void restoreOnFirstRefresh(Function<String, InventoryStore> storeOfServer) {
+        pendingInventoryStore = storeOfServer;
+    }
+
+    private void restorePendingInventory(PluginRequest pluginRequest) {
+        if (pendingInventoryStore == null) {
+            return;
+        }
+        synchronized (storeLock) {
+            Function<String, InventoryStore> storeOfServer = pendingInventoryStore;
+            if (storeOfServer != null) {
+                pendingInventoryStore = null;
+                restoreFrom(storeOfServer.apply(pluginRequest.getServerId()));
+            }
+        }
+    }
 
-        instances.clear();
-        for (Pod pod : list.getItems()) {
-            Map<String, String> podLabels = pod.getMetadata().getLabels();
-            if (podLabels != null) {
-                if (StringUtils.equals(Constants.KUBERNETES_POD_KIND_LABEL_VALUE, podLabels.get(Constants.KUBERNETES_POD_KIND_LABEL_KEY))) {
-                    register(kubernetesInstanceFactory.fromKubernetesPod(pod));
+    /**
+     * Starts from the pod inventory saved by a previous run and keeps saving it to the given store. The restored
+     * pods are reconciled with the cluster on the next refresh, by watching changes since the saved resource version.
+     * They count as synced only once that watch delivers its first event; until then the next refresh lists pods.
+     */
+    void restoreFrom(InventoryStore store) {
+        List<InventoryStore.StoredInventory> stored = store.load();
+        synchronized (storeLock) {
+            inventoryStore = store;
+            for (InventoryStore.StoredInventory inventory : stored) {
+                InventoryShard shard = shard(inventory.namespace());
+                List<KubernetesInstance> restored = inventory.instances();
+                synchronized (registryLock) {
+                    shard.instances = KubernetesInstanceSnapshot.of(restored);
+                    shard.podCounters.reset(restored, Collections.emptyMap());
                 }
+                shard.storedInstances = shard.instances;
+                shard.restoredInventory = inventory;
             }
         }
+        LOG.info(format("[inventory-store] Restored {0} pods of {1} namespaces.", size(), stored.size()));
+    }
+
+    private void saveInventory(PluginSettings settings, PluginRequest pluginRequest) {
+        synchronized (storeLock) {
+            if (inventoryStore == null) {
+                return;
+            }
+
+            boolean changed = false;
+            Map<InventoryShard, KubernetesInstanceSnapshot> snapshots = new LinkedHashMap<>();
+            for (InventoryShard shard : shardsFor(settings)) {
+                if (factory.client(settings, shard.namespace) != shard.syncedClient) {
+                    return;
+                }
+                snapshots.put(shard, shard.instances);
+                changed |= shard.instances != shard.storedInstances;
+            }
+            if (!changed) {
+                return;
+            }
 
-        LOG.info(String.format("[refresh-pod-state] Pod information successfully synced. All(Running/Pending) pod count is %d.", instances.size()));
+            List<InventoryStore.StoredInventory> inventories = new ArrayList<>();
+            for (Map.Entry<InventoryShard, KubernetesInstanceSnapshot> entry : snapshots.entrySet()) {
+                InventoryShard shard = entry.getKey();
+                inventories.add(new InventoryStore.StoredInventory(String.valueOf(shard.syncedClient.getMasterUrl()), shard.namespace,
+                        agentPodSelector(), shard.lastResourceVersion, entry.getValue().instances()));
+            }
+            inventoryStore.save(inventories);
+            snapshots.forEach((shard, snapshot) -> shard.storedInstances = snapshot);
+        }
     }
 
     @Override
-    public KubernetesInstance find(String agentId) {
-        return instances.get(agentId);
+    public void refreshAll(PluginRequest pluginRequest, Request request) {
+        refreshAll(pluginRequest.getPluginSettings(), pluginRequest, request);
     }
 
-    private void register(KubernetesInstance instance) {
-        instances.put(instance.name(), instance);
+    private void refreshAll(PluginSettings settings, PluginRequest pluginRequest, Request request) {
+        List<InventoryShard> shards = shardsFor(settings);
+        long ageMillis = inventoryAgeMillis(settings, shards);
+        boolean refreshed;
+        try {
+            refreshed = refreshShards(settings, pluginRequest, shards, settings.getMaxStaleness(request));
+        } catch (CircuitOpenException e) {
+            LOG.warn(format("[Refresh Instances] {0} Using cached k8s elastic agent pod information.", e.getMessage()));
+            refreshed = false;
+        }
+        refreshAgeMetrics.record(request, ageMillis, refreshed);
+        if (request == Request.REQUEST_SERVER_PING) {
+            LOG.info(refreshAgeMetrics.summary());
+            LOG.info(rateLimiter.summary());
+            LOG.info(startupLatencies.summary());
+        }
     }
 
-    private KubernetesAgentInstances unregisteredAfterTimeout(PluginSettings settings, Agents knownAgents) throws Exception {
-        Period period = settings.getAutoRegisterPeriod();
-        KubernetesAgentInstances unregisteredInstances = new KubernetesAgentInstances();
-        KubernetesClient client = factory.client(settings);
+    /**
+     * Refreshes the pods of all namespaces, in parallel when pods are spread over several namespaces.
+     */
+    private boolean refreshShards(PluginSettings settings, PluginRequest pluginRequest, List<InventoryShard> shards, Period maxStaleness) {
+        restorePendingInventory(pluginRequest);
+        if (shards.size() == 1) {
+            InventoryShard shard = shards.get(0);
+            return refreshIfOlderThan(shard, factory.client(settings, shard.namespace), pluginRequest, maxStaleness);
+        }
+
+        List<CompletableFuture<Boolean>> refreshes = new ArrayList<>();
+        for (InventoryShard shard : shards) {
+            KubernetesClient client = factory.client(settings, shard.namespace);
+            refreshes.add(CompletableFuture.supplyAsync(() -> refreshIfOlderThan(shard, client, pluginRequest, maxStaleness), SHARD_REFRESH_EXECUTOR));
+        }
 
-        for (String instanceName : instances.keySet()) {
-            if (knownAgents.containsAgentWithId(instanceName)) {
-                continue;
+        boolean refreshed = false;
+        for (CompletableFuture<Boolean> refresh : refreshes) {
+            refreshed |= awaitRefresh(refresh);
+        }
+        return refreshed;
+    }
+
+    private boolean refreshIfOlderThan(InventoryShard shard, KubernetesClient client, PluginRequest pluginRequest, Period maxStaleness) {
+        if (isWatching(shard, client)) {
+            LOG.debug("[Refresh Instances] Pod watch is active, using cached k8s elastic agent pod information.");
+            return false;
+        }
+
+        if (isSyncedWithin(shard, client, maxStaleness)) {
+            LOG.debug("[Refresh Instances] Pods were synced recently, using cached k8s elastic agent pod information.");
+            return false;
+        }
+
+        CompletableFuture<Boolean> refresh;
+        boolean leader = false;
+        synchronized (shard.refreshLock) {
+            refresh = shard.inFlightRefresh;
+            if (refresh == null) {
+                refresh = shard.inFlightRefresh = new CompletableFuture<>();
+                leader = true;
+            }
+        }
+
+        if (!leader) {
+            LOG.debug("[Refresh Instances] Waiting for in-flight k8s elastic agent pod sync.");
+            return awaitRefresh(refresh);
+        }
+
+        try {
+            syncPods(shard, client, pluginRequest);
+            refresh.complete(true);
+            return true;
+        } catch (RuntimeException | Error e) {
+            refresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (shard.refreshLock) {
+                shard.inFlightRefresh = null;
+            }
+        }
+    }
+
+    private void syncPods(InventoryShard shard, KubernetesClient client, PluginRequest pluginRequest) {
+        LOG.debug(format("[Refresh Instances] Syncing k8s elastic agent pod information of namespace {0}.", shard.namespace));
+        stopWatching(shard);
+        shard.serverId = pluginRequest.getServerId();
+        Map<String, String> selector = agentPodSelector();
+        if (resumeRestoredInventory(shard, client, selector)) {
+            return;
+        }
+
+        List<KubernetesInstance> listed = new ArrayList<>();
+        Map<String, String> terminating = new HashMap<>();
+        String resourceVersion = apiPolicy.call("list pods of namespace " + shard.namespace, () -> {
+            listed.clear();
+            terminating.clear();
+            return new PodPager(client).forEach(selector, pod -> {
+                if (!isOwnedBy(pod, shard.serverId)) {
+                    return;
+                }
+                KubernetesInstance instance = kubernetesInstanceFactory.fromKubernetesPod(pod);
+                if (pod.getMetadata().getDeletionTimestamp() != null) {
+                    terminating.put(instance.name(), instance.profile());
+                } else {
+                    listed.add(instance);
+                    startupLatencies.observed(pod);
+                    if (isUnschedulable(pod)) {
+                        pendingPodLimit.unschedulable(instance.profile());
+                    }
+                }
+            });
+        });
+
+        KubernetesInstanceSnapshot previous;
+        synchronized (registryLock) {
+            previous = shard.instances;
+            shard.instances = KubernetesInstanceSnapshot.of(listed);
+            shard.podCounters.reset(listed, terminating);
+        }
+        for (KubernetesInstance instance : listed) {
+            observeScheduling(previous.get(instance.name()), instance);
+        }
+        shard.syncedClient = client;
+        shard.lastSyncedAt = clock.now();
+        shard.lastResourceVersion = resourceVersion;
+        startWatching(shard, client, selector, resourceVersion);
+        LOG.info(String.format("[refresh-pod-state] Pod information of namespace %s successfully synced. All(Running/Pending) pod count is %d.", shard.namespace, shard.instances.size()));
+    }
+
+    /**
+     * Catches the restored inventory up with the cluster by watching pod changes since it was saved. If the watch
+     * cannot be started, or the saved resource version is too old, pods are listed again. The saved resource version
+     * is only known to be current once the watch delivers an event, so the shard is not marked synced before that.
+     */
+    private boolean resumeRestoredInventory(InventoryShard shard, KubernetesClient client, Map<String, String> selector) {
+        InventoryStore.StoredInventory restored = shard.restoredInventory;
+        shard.restoredInventory = null;
+        if (restored == null || restored.resourceVersion() == null
+                || !restored.isFor(String.valueOf(client.getMasterUrl()), shard.namespace, selector)) {
+            return false;
+        }
+
+        startWatching(shard, client, selector, restored.resourceVersion());
+        if (shard.podWatcher == null) {
+            return false;
+        }
+
+        shard.syncedClient = client;
+        shard.lastSyncedAt = null;
+        shard.lastResourceVersion = restored.resourceVersion();
+        LOG.info(format("[refresh-pod-state] Resumed pod watch of namespace {0} from resource version {1} of restored pod information.", shard.namespace, restored.resourceVersion()));
+        return true;
+    }
+
+    private static <T> T awaitRefresh(CompletableFuture<T> refresh) {
+        try {
+            return refresh.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    void podChanged(KubernetesPodWatcher watcher, Pod pod) {
+        InventoryShard shard = watcher.shard;
+        if (watcher != shard.podWatcher) {
+            return;
+        }
+
+        trackResourceVersion(shard, pod);
+        confirmWatch(shard);
+        if (!isOwnedBy(pod, shard.serverId)) {
+            return;
+        }
+
+        KubernetesInstance instance = kubernetesInstanceFactory.fromKubernetesPod(pod);
+        if (pod.getMetadata().getDeletionTimestamp() != null) {
+            markTerminating(shard, instance.name(), instance.profile());
+        } else {
+            register(shard, instance);
+            startupLatencies.observed(pod);
+            if (isUnschedulable(pod)) {
+                pendingPodLimit.unschedulable(instance.profile());
             }
+        }
+    }
+
+    void podDeleted(KubernetesPodWatcher watcher, Pod pod) {
+        InventoryShard shard = watcher.shard;
+        if (watcher != shard.podWatcher) {
+            return;
+        }
+
+        String name = pod.getMetadata().getName();
+        trackResourceVersion(shard, pod);
+        confirmWatch(shard);
+        synchronized (registryLock) {
+            deregister(shard, name);
+            shard.podCounters.terminated(name);
+        }
+    }
 
-            Pod pod = getPod(client, instanceName);
-            if (pod == null) {
-                LOG.debug(String.format("[server-ping] Pod with name %s is already deleted.", instanceName));
+    private static void trackResourceVersion(InventoryShard shard, Pod pod) {
+        if (pod.getMetadata().getResourceVersion() != null) {
+            shard.lastResourceVersion = pod.getMetadata().getResourceVersion();
+        }
+    }
+
+    /**
+     * A watch resumed from a restored resource version that delivers events is current, so the shard is synced.
+     */
+    private void confirmWatch(InventoryShard shard) {
+        if (shard.lastSyncedAt == null) {
+            shard.lastSyncedAt = clock.now();
+        }
+    }
+
+    void watchClosed(KubernetesPodWatcher watcher) {
+        if (watcher == watcher.shard.podWatcher) {
+            watcher.shard.podWatcher = null;
+        }
+    }
+
+    private boolean isWatching(InventoryShard shard, KubernetesClient client) {
+        return shard.podWatcher != null && isSyncedWithin(shard, client, POD_WATCH_RESYNC_PERIOD);
+    }
+
+    /**
+     * Age of the oldest cached pod information in milliseconds: zero while pod watches keep it current, -1 if pods
+     * of a namespace were never listed using its current client.
+     */
+    private long inventoryAgeMillis(PluginSettings settings, List<InventoryShard> shards) {
+        long ageMillis = 0;
+        for (InventoryShard shard : shards) {
+            KubernetesClient client = factory.client(settings, shard.namespace);
+            if (isWatching(shard, client)) {
                 continue;
             }
+            DateTime syncedAt = shard.lastSyncedAt;
+            if (client != shard.syncedClient || syncedAt == null) {
+                return -1;
+            }
+            ageMillis = Math.max(ageMillis, clock.now().getMillis() - syncedAt.getMillis());
+        }
+        return ageMillis;
+    }
+
+    private boolean isSyncedWithin(InventoryShard shard, KubernetesClient client, Period period) {
+        DateTime syncedAt = shard.lastSyncedAt;
+        return client == shard.syncedClient && syncedAt != null && clock.now().isBefore(syncedAt.plus(period));
+    }
+
+    private void startWatching(InventoryShard shard, KubernetesClient client, Map<String, String> selector, String resourceVersion) {
+        KubernetesPodWatcher watcher = new KubernetesPodWatcher(this, shard);
+        shard.podWatcher = watcher;
+        try {
+            shard.watch = client.pods().withLabels(selector).watch(resourceVersion, watcher);
+        } catch (Exception e) {
+            shard.podWatcher = null;
+            LOG.warn(format("[refresh-pod-state] Failed to start pod watch of namespace {0}, pods will be listed on every refresh.", shard.namespace), e);
+        }
+    }
+
+    private static void stopWatching(InventoryShard shard) {
+        shard.podWatcher = null;
+        if (shard.watch != null) {
+            try {
+                shard.watch.close();
+            } catch (Exception e) {
+                LOG.warn("[refresh-pod-state] Failed to close pod watch.", e);
+            }
+            shard.watch = null;
+        }
+    }
+
+    /**
+     * Selects the agent pods of this plugin. Pods are not selected by server id, because pods created by plugin
+     * versions that did not label them with it would never be seen again, see {@link #isOwnedBy(Pod, String)}.
+     */
+    private static Map<String, String> agentPodSelector() {
+        Map<String, String> selector = new HashMap<>();
+        selector.put(Constants.KUBERNETES_POD_KIND_LABEL_KEY, Constants.KUBERNETES_POD_KIND_LABEL_VALUE);
+        selector.put(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID);
+        return selector;
+    }
+
+    /**
+     * A pod belongs to this server unless it is labelled with the id of another server. Pods without the label were
+     * created before pods were labelled and are treated as owned, so that they are still counted and reaped.
+     */
+    private static boolean isOwnedBy(Pod pod, String serverId) {
+        Map<String, String> labels = pod.getMetadata().getLabels();
+        String podServerId = labels == null ? null : labels.get(Constants.SERVER_ID_LABEL_KEY);
+        return StringUtils.isBlank(serverId) || StringUtils.isBlank(podServerId) || serverId.equals(podServerId);
+    }
 
-            Date createdAt = getSimpleDateFormat().parse(pod.getMetadata().getCreationTimestamp());
-            DateTime dateTimeCreated = new DateTime(createdAt);
+    private InventoryShard shard(String namespace) {
+        return shards.computeIfAbsent(namespace, InventoryShard::new);
+    }
 
-            if (clock.now().isAfter(dateTimeCreated.plus(period))) {
-                unregisteredInstances.register(kubernetesInstanceFactory.fromKubernetesPod(pod));
+    /**
+     * @return shards of the configured namespaces, in configured order. Shards of namespaces that are no longer
+     * configured are dropped along with their pods.
+     */
+    private List<InventoryShard> shardsFor(PluginSettings settings) {
+        List<String> namespaces = settings.getNamespaces();
+        for (InventoryShard shard : shards.values()) {
+            if (!namespaces.contains(shard.namespace) && shards.remove(shard.namespace, shard)) {
+                LOG.info(format("[refresh-pod-state] Namespace {0} is no longer configured, forgetting its {1} pods.", shard.namespace, shard.instances.size()));
+                stopWatching(shard);
+            }
+        }
+
+        List<InventoryShard> configured = new ArrayList<>();
+        for (String namespace : namespaces) {
+            configured.add(shard(namespace));
+        }
+        return configured;
+    }
+
+    private InventoryShard shardOf(String name) {
+        for (InventoryShard shard : shards.values()) {
+            if (shard.instances.get(name) != null) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public KubernetesInstance find(String agentId) {
+        InventoryShard shard = shardOf(agentId);
+        return shard == null ? null : shard.instances.get(agentId);
+    }
+
+    @Override
+    public KubernetesInstance findByJobId(Long jobId) {
+        for (InventoryShard shard : shards.values()) {
+            KubernetesInstance instance = shard.instances.getByJobId(jobId);
+            if (instance != null) {
+                return instance;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String namespaceOf(String agentId) {
+        InventoryShard shard = shardOf(agentId);
+        return shard == null ? null : shard.namespace;
+    }
+
+    int size() {
+        int size = 0;
+        for (InventoryShard shard : shards.values()) {
+            size += shard.instances.size();
+        }
+        return size;
+    }
+
+    int pendingPods(String profile) {
+        int pending = 0;
+        for (InventoryShard shard : shards.values()) {
+            pending += shard.podCounters.pending(profile);
+        }
+        return pending;
+    }
+
+    int runningPods(String profile) {
+        int running = 0;
+        for (InventoryShard shard : shards.values()) {
+            running += shard.podCounters.running(profile);
+        }
+        return running;
+    }
+
+    int terminatingPods(String profile) {
+        int terminating = 0;
+        for (InventoryShard shard : shards.values()) {
+            terminating += shard.podCounters.terminating(profile);
+        }
+        return terminating;
+    }
+
+    private void register(InventoryShard shard, KubernetesInstance instance) {
+        KubernetesInstance replaced;
+        synchronized (registryLock) {
+            replaced = shard.instances.get(instance.name());
+            shard.instances = shard.instances.with(instance);
+            shard.podCounters.added(instance, replaced);
+        }
+        observeScheduling(replaced, instance);
+    }
+
+    /**
+     * Feeds how long pods stay pending to the adaptive pending pods allowance.
+     */
+    private void observeScheduling(KubernetesInstance previous, KubernetesInstance current) {
+        long pendingMillis = clock.now().getMillis() - current.createdAt().getMillis();
+        if (current.isPending()) {
+            pendingPodLimit.pending(current.profile(), pendingMillis);
+        } else if (previous != null && previous.isPending()) {
+            pendingPodLimit.scheduled(current.profile(), pendingMillis);
+        }
+    }
+
+    private static boolean isUnschedulable(Pod pod) {
+        if (pod.getStatus() == null || pod.getStatus().getConditions() == null) {
+            return false;
+        }
+
+        for (PodCondition condition : pod.getStatus().getConditions()) {
+            if ("PodScheduled".equals(condition.getType()) && "False".equals(condition.getStatus()) && "Unschedulable".equals(condition.getReason())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deregister(InventoryShard shard, String name) {
+        synchronized (registryLock) {
+            KubernetesInstance removed = shard.instances.get(name);
+            shard.instances = shard.instances.without(name);
+            shard.podCounters.removed(removed);
+        }
+        startupLatencies.forget(name);
+        idleSince.remove(name);
+    }
+
+    private void markTerminating(InventoryShard shard, String name, String profile) {
+        synchronized (registryLock) {
+            deregister(shard, name);
+            shard.podCounters.terminating(name, profile);
+        }
+    }
+
+    /**
+     * Finds the pods whose agent has not registered within the auto-register period from the pod information in
+     * memory, and only asks the cluster whether those candidates still exist.
+     */
+    private List<String> unregisteredAfterTimeout(PluginSettings settings, Agents knownAgents) {
+        DateTime registerDeadline = clock.now().minus(settings.getAutoRegisterPeriod());
+        List<String> unregisteredInstances = new ArrayList<>();
+
+        for (InventoryShard shard : shardsFor(settings)) {
+            KubernetesClient client = null;
+            for (KubernetesInstance instance : shard.instances.instances()) {
+                if (knownAgents.containsAgentWithId(instance.name()) || !instance.createdAt().isBefore(registerDeadline)) {
+                    continue;
+                }
+
+                if (client == null) {
+                    client = factory.client(settings, shard.namespace);
+                }
+                Pod pod = getPod(client, instance.name());
+                if (pod == null || pod.getMetadata().getDeletionTimestamp() != null) {
+                    LOG.debug(String.format("[server-ping] Pod with name %s is already deleted.", instance.name()));
+                    continue;
+                }
+
+                unregisteredInstances.add(instance.name());
             }
         }
         return unregisteredInstances;
@@ -210,7 +1246,7 @@ public class KubernetesAgentInstances implements AgentInstances<KubernetesInstan
 
     private Pod getPod(KubernetesClient client, String instanceName) {
         try {
-            return client.pods().withName(instanceName).get();
+            return apiPolicy.call("get pod " + instanceName, () -> client.pods().withName(instanceName).get());
         } catch (Exception e) {
             LOG.warn(String.format("[server-ping] Failed to fetch pod[%s] information:", instanceName), e);
             return null;
@@ -218,7 +1254,44 @@ public class KubernetesAgentInstances implements AgentInstances<KubernetesInstan
     }
 
     public boolean instanceExists(KubernetesInstance instance) {
-        return instances.contains(instance);
+        InventoryShard shard = shardOf(instance.name());
+        return shard != null && shard.instances.contains(instance);
+    }
+
+    private int getProfileWarmPoolSize(CreateAgentRequest createAgentRequest) {
+        return getProfileNumber(createAgentRequest, WARM_POOL_SIZE.getKey(), 0);
+    }
+
+    private int getProfileNumber(CreateAgentRequest createAgentRequest, String key, int defaultValue) {
+        return getProfileNumber(createAgentRequest.properties(), key, defaultValue);
+    }
+
+    private static int getProfileNumber(Map<String, String> properties, String key, int defaultValue) {
+        String value = properties == null ? null : properties.get(key);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            LOG.error(e.getMessage(), e);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * The configured maximum pending pods of the profile, or the adaptive allowance when adaptive mode is enabled.
+     */
+    private int maxPendingPods(String agentProfile, CreateAgentRequest request, PluginSettings settings) {
+        int configured = getProfileMaxPendingPods(request, settings);
+        int ceiling = settings.getAdaptiveMaxPendingPods();
+        if (ceiling <= 0) {
+            return configured;
+        }
+
+        pendingPodLimit.setTarget(settings.getPendingLatencyTarget());
+        return pendingPodLimit.limit(agentProfile, configured, ceiling);
     }
 
     private Integer getProfileMaxPendingPods(CreateAgentRequest createAgentRequest, PluginSettings settings) {
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Policy around Kubernetes API calls. Calls that fail because the API server is unreachable or overloaded are retried
+ * with jittered exponential backoff. Once several calls in a row have failed that way the circuit opens, and calls fail
+ * fast with {@link CircuitOpenException} for a while, so that a struggling API server is not hit by a retry storm.
+ * After that a single trial call decides whether the circuit closes again.
+ */
+public class KubernetesApiPolicy {
+    static final int MAX_ATTEMPTS = 3;
+    static final long BASE_BACKOFF_MILLIS = 200;
+    static final long MAX_BACKOFF_MILLIS = 2000;
+    static final int FAILURE_THRESHOLD = 5;
+    static final Period OPEN_PERIOD = Period.seconds(30);
+
+    private static final KubernetesApiPolicy POLICY = new KubernetesApiPolicy();
+
+    private final Random random = new Random();
+    Clock clock = Clock.DEFAULT;
+
+    private int consecutiveFailures;
+    private DateTime openUntil;
+    private boolean trialInFlight;
+
+    public static KubernetesApiPolicy instance() {
+        return POLICY;
+    }
+
+    public <T> T call(String operation, Callable<T> call) {
+        boolean trial = admit(operation);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = call.call();
+                succeeded(trial);
+                return result;
+            } catch (Exception e) {
+                if (!isTransient(e)) {
+                    succeeded(trial);
+                    throw propagate(e);
+                }
+
+                if (trial || attempt >= MAX_ATTEMPTS) {
+                    failed(operation, trial);
+                    throw propagate(e);
+                }
+
+                long backoff = backoff(attempt);
+                LOG.warn(format("[kubernetes-api] Failed to {0} (attempt {1} of {2}), retrying in {3}ms: {4}", operation, attempt, MAX_ATTEMPTS, backoff, e.getMessage()));
+                sleep(backoff);
+            }
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return openUntil != null && (trialInFlight || clock.now().isBefore(openUntil));
+    }
+
+    private synchronized boolean admit(String operation) {
+        if (openUntil == null) {
+            return false;
+        }
+
+        if (trialInFlight || clock.now().isBefore(openUntil)) {
+            throw new CircuitOpenException(format("Kubernetes API circuit is open until {0}, not trying to {1}.", openUntil, operation));
+        }
+
+        trialInFlight = true;
+        return true;
+    }
+
+    private synchronized void succeeded(boolean trial) {
+        if (trial) {
+            LOG.info("[kubernetes-api] Kubernetes API is reachable again, closing circuit.");
+            trialInFlight = false;
+        }
+        if (trial || openUntil == null) {
+            consecutiveFailures = 0;
+            openUntil = null;
+        }
+    }
+
+    private synchronized void failed(String operation, boolean trial) {
+        if (trial) {
+            trialInFlight = false;
+        }
+
+        consecutiveFailures++;
+        if (trial || consecutiveFailures >= FAILURE_THRESHOLD) {
+            openUntil = clock.now().plus(OPEN_PERIOD);
+            LOG.warn(format("[kubernetes-api] Failed to {0}, {1} failed calls in a row. Opening circuit until {2}.", operation, consecutiveFailures, openUntil));
+        }
+    }
+
+    private long backoff(int attempt) {
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        return backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+    }
+
+    void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return whether the call failed because the API server could not be reached or was overloaded
+     */
+    static boolean isTransient(Throwable e) {
+        if (e instanceof KubernetesClientException) {
+            int code = ((KubernetesClientException) e).getCode();
+            if (code == 429 || code >= 500) {
+                return true;
+            }
+        }
+
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static RuntimeException propagate(Exception e) {
+        return e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+    }
+}
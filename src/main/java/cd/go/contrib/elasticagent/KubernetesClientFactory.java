@@ -20,6 +20,10 @@ import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
 import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
 import static java.text.MessageFormat.format;
 
@@ -27,30 +31,66 @@ public class KubernetesClientFactory {
     private static final KubernetesClientFactory KUBERNETES_CLIENT_FACTORY = new KubernetesClientFactory();
     private KubernetesClient client;
     private PluginSettings pluginSettings;
+    private final Map<String, KubernetesClient> namespacedClients = new HashMap<>();
 
     public static KubernetesClientFactory instance() {
         return KUBERNETES_CLIENT_FACTORY;
     }
 
     public synchronized KubernetesClient client(PluginSettings pluginSettings) {
-        if (pluginSettings.equals(this.pluginSettings) && this.client != null) {
+        if (this.client != null && connectsAlike(pluginSettings, this.pluginSettings)) {
             LOG.debug("Using previously created client.");
             return this.client;
         }
 
-        LOG.debug(format("Creating a new client because {0}.", (client == null) ? "client is null" : "plugin setting is changed"));
+        LOG.debug(format("Creating a new client because {0}.", (client == null) ? "client is null" : "cluster connection settings changed"));
         this.pluginSettings = pluginSettings;
-        this.client = createClientFor(pluginSettings);
+        this.client = createClientFor(pluginSettings, pluginSettings.getNamespace());
+        closeNamespacedClients();
         LOG.debug("New client is created.");
         return this.client;
     }
 
-    private KubernetesClient createClientFor(PluginSettings pluginSettings) {
+    /**
+     * @return client bound to the given namespace, sharing the connection settings of the plugin's client
+     */
+    public synchronized KubernetesClient client(PluginSettings pluginSettings, String namespace) {
+        KubernetesClient client = client(pluginSettings);
+        if (namespace.equals(pluginSettings.getNamespace())) {
+            return client;
+        }
+        return namespacedClients.computeIfAbsent(namespace, ns -> createClientFor(pluginSettings, ns));
+    }
+
+    /**
+     * Only settings the client connects with matter; tuning settings such as refresh intervals or pod creation
+     * limits can change without rebuilding clients, which would also make the agent inventory list pods again.
+     */
+    private static boolean connectsAlike(PluginSettings pluginSettings, PluginSettings previous) {
+        return previous != null
+                && Objects.equals(pluginSettings.getClusterUrl(), previous.getClusterUrl())
+                && Objects.equals(pluginSettings.getSecurityToken(), previous.getSecurityToken())
+                && Objects.equals(pluginSettings.getCaCertData(), previous.getCaCertData())
+                && Objects.equals(pluginSettings.getNamespace(), previous.getNamespace());
+    }
+
+    private void closeNamespacedClients() {
+        for (KubernetesClient namespacedClient : namespacedClients.values()) {
+            try {
+                namespacedClient.close();
+            } catch (Exception e) {
+                LOG.warn("Failed to close client of previous plugin settings.", e);
+            }
+        }
+        namespacedClients.clear();
+    }
+
+    private KubernetesClient createClientFor(PluginSettings pluginSettings, String namespace) {
         final ConfigBuilder configBuilder = new ConfigBuilder()
                 .withOauthToken(pluginSettings.getSecurityToken())
                 .withMasterUrl(pluginSettings.getClusterUrl())
                 .withCaCertData(pluginSettings.getCaCertData())
-                .withNamespace(pluginSettings.getNamespace());
+                .withNamespace(namespace);
 
         return new DefaultKubernetesClient(configBuilder.build());
     }
@@ -30,9 +30,15 @@ public class KubernetesInstance {
     private final Long jobId;
     private final PodState state;
     private final String profile;
+    private final DateTime boundAt;
 
     public KubernetesInstance(DateTime createdAt, String environment, String name, Map<String, String> properties, Long jobId, PodState state, String profile) {
+        this(createdAt, environment, name, properties, jobId, state, profile, null);
+    }
+
+    public KubernetesInstance(DateTime createdAt, String environment, String name, Map<String, String> properties, Long jobId, PodState state, String profile, DateTime boundAt) {
         this.createdAt = createdAt.withZone(DateTimeZone.UTC);
+        this.boundAt = boundAt == null ? null : boundAt.withZone(DateTimeZone.UTC);
         this.environment = environment;
         this.name = name;
         this.properties = properties;
@@ -53,6 +59,14 @@ public class KubernetesInstance {
         return createdAt;
     }
 
+    /**
+     * @return when the pod was bound to its current job after being created as a standby or reused, or null if it
+     * was created for its job
+     */
+    public DateTime boundAt() {
+        return boundAt;
+    }
+
     public String environment() {
         return environment;
     }
@@ -65,6 +79,10 @@ public class KubernetesInstance {
         return jobId;
     }
 
+    public PodState state() {
+        return state;
+    }
+
     public boolean isPending() {
         return this.state.equals(PodState.Pending);
     }
@@ -72,4 +90,26 @@ public class KubernetesInstance {
     public String profile() {
         return profile;
     }
+
+    /**
+     * @return whether this is a warm pool pod that is not bound to a job yet
+     */
+    public boolean isStandby() {
+        return jobId == null;
+    }
+
+    /**
+     * @return the number of jobs the pod has been bound to, including its current job
+     */
+    public int jobsRun() {
+        String jobsRun = properties == null ? null : properties.get(Constants.JOBS_RUN_ANNOTATION_KEY);
+        if (jobsRun != null) {
+            try {
+                return Integer.parseInt(jobsRun);
+            } catch (NumberFormatException e) {
+                // counted as a pod that ran a single job
+            }
+        }
+        return isStandby() ? 0 : 1;
+    }
 }
@@ -16,20 +16,20 @@
 
 package cd.go.contrib.elasticagent;
 
+import cd.go.contrib.elasticagent.model.JobIdentifier;
 import cd.go.contrib.elasticagent.requests.CreateAgentRequest;
 import cd.go.contrib.elasticagent.utils.Size;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
 import com.github.mustachejava.MustacheFactory;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.PodResource;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
-import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.text.ParseException;
@@ -46,6 +46,17 @@ import static java.text.MessageFormat.format;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 public class KubernetesInstanceFactory {
+    private final PodTemplateCache podTemplates = new PodTemplateCache();
+    private final KubernetesApiPolicy apiPolicy;
+
+    public KubernetesInstanceFactory() {
+        this(KubernetesApiPolicy.instance());
+    }
+
+    KubernetesInstanceFactory(KubernetesApiPolicy apiPolicy) {
+        this.apiPolicy = apiPolicy;
+    }
+
     public KubernetesInstance create(CreateAgentRequest request, PluginSettings settings, KubernetesClient client, PluginRequest pluginRequest, Boolean usesPodYaml) {
         if (usesPodYaml) {
             return createUsingPodYaml(request, settings, client, pluginRequest);
@@ -56,7 +67,8 @@ public class KubernetesInstanceFactory {
 
     private KubernetesInstance create(CreateAgentRequest request, PluginSettings settings, KubernetesClient client, PluginRequest pluginRequest) {
 //        String containerName = format("{0}-{1}", KUBERNETES_POD_NAME_PREFIX, UUID.randomUUID().toString());
-        String containerName = format("{0}-{1}", settings.getNamespace(), UUID.randomUUID().toString());
+        String namespace = namespace(settings, client);
+        String containerName = format("{0}-{1}", namespace, UUID.randomUUID().toString());
 
         Container container = new Container();
         container.setName(containerName);
@@ -68,7 +80,7 @@ public class KubernetesInstanceFactory {
 
         ObjectMeta podMetadata = new ObjectMeta();
         podMetadata.setName(containerName);
-        podMetadata.setNamespace(settings.getNamespace());
+        podMetadata.setNamespace(namespace);
 
         PodSpec podSpec = new PodSpec();
         podSpec.setContainers(Arrays.asList(container));
@@ -80,6 +92,13 @@ public class KubernetesInstanceFactory {
         return createKubernetesPod(client, elasticAgentPod);
     }
 
+    /**
+     * Agent pods are created in the namespace of the client, which is picked among the configured namespaces.
+     */
+    private static String namespace(PluginSettings settings, KubernetesClient client) {
+        return StringUtils.isNotBlank(client.getNamespace()) ? client.getNamespace() : settings.getNamespace();
+    }
+
     private Boolean privileged(CreateAgentRequest request) {
         final String privilegedMode = request.properties().get(PRIVILEGED.getKey());
         if (StringUtils.isBlank(privilegedMode)) {
@@ -93,7 +112,7 @@ public class KubernetesInstanceFactory {
 
         setContainerEnvVariables(elasticAgentPod, request, settings, pluginRequest);
         setAnnotations(elasticAgentPod, request);
-        setLabels(elasticAgentPod, request);
+        setLabels(elasticAgentPod, request, pluginRequest.getServerId());
     }
 
     private ResourceRequirements getPodResources(CreateAgentRequest request) {
@@ -118,25 +137,114 @@ public class KubernetesInstanceFactory {
         return resources;
     }
 
-    private static void setLabels(Pod pod, CreateAgentRequest request) {
+    private static void setLabels(Pod pod, CreateAgentRequest request, String serverId) {
         Map<String, String> existingLabels = (pod.getMetadata().getLabels() != null) ? pod.getMetadata().getLabels() : new HashMap<>();
-        existingLabels.putAll(labelsFrom(request));
+        existingLabels.putAll(labelsFrom(request, serverId));
         pod.getMetadata().setLabels(existingLabels);
     }
 
     private static void setAnnotations(Pod pod, CreateAgentRequest request) {
         Map<String, String> existingAnnotations = (pod.getMetadata().getAnnotations() != null) ? pod.getMetadata().getAnnotations() : new HashMap<>();
         existingAnnotations.putAll(request.properties());
-        existingAnnotations.put(JOB_IDENTIFIER_LABEL_KEY, request.jobIdentifier().toJson());
+        if (request.jobIdentifier() != null) {
+            existingAnnotations.put(JOB_IDENTIFIER_LABEL_KEY, request.jobIdentifier().toJson());
+        }
         pod.getMetadata().setAnnotations(existingAnnotations);
     }
 
+    /**
+     * Binds a standby pod of the warm pool to the job of the given request by relabeling it, so that the already
+     * registered agent is assigned the job instead of a new pod being created.
+     *
+     * @return the bound instance, or null if the pod is gone or being deleted
+     */
+    public KubernetesInstance bind(KubernetesClient client, String podName, CreateAgentRequest request) {
+        return bindToJob(client, podName, request.jobIdentifier());
+    }
+
+    /**
+     * Binds the pod to the given job by relabeling it, and counts the job towards the jobs run by the pod. Used for
+     * standby pods and for idle agents that are reused for another job.
+     *
+     * @return the bound instance, or null if the pod is gone or being deleted
+     */
+    public KubernetesInstance bindToJob(KubernetesClient client, String podName, JobIdentifier jobIdentifier) {
+        PodResource<Pod, DoneablePod> resource = client.pods().withName(podName);
+        Pod pod = apiPolicy.call("get pod " + podName, resource::get);
+        if (pod == null || pod.getMetadata().getDeletionTimestamp() != null) {
+            return null;
+        }
+
+        Map<String, String> labels = new HashMap<>(pod.getMetadata().getLabels());
+        labels.remove(STANDBY_LABEL_KEY);
+        labels.put(JOB_ID_LABEL_KEY, valueOf(jobIdentifier.getJobId()));
+        pod.getMetadata().setLabels(labels);
+
+        int jobsRun = fromKubernetesPod(pod).jobsRun();
+        Map<String, String> annotations = pod.getMetadata().getAnnotations() != null ? new HashMap<>(pod.getMetadata().getAnnotations()) : new HashMap<>();
+        annotations.put(JOB_IDENTIFIER_LABEL_KEY, jobIdentifier.toJson());
+        annotations.put(BOUND_AT_ANNOTATION_KEY, getSimpleDateFormat().format(new Date()));
+        annotations.put(JOBS_RUN_ANNOTATION_KEY, valueOf(jobsRun + 1));
+        pod.getMetadata().setAnnotations(annotations);
+
+        LOG.info(format("[Create Agent] Binding pod {0} to job {1}.", podName, jobIdentifier));
+        return fromKubernetesPod(apiPolicy.call("patch pod " + podName, () -> resource.patch(pod)));
+    }
+
+    /**
+     * Labels the pod as part of the given reap batch, so that all pods of the batch can be deleted by one collection
+     * delete.
+     *
+     * @return false if the pod is gone or already being deleted
+     */
+    public boolean markForReaping(KubernetesClient client, String podName, String batch) {
+        PodResource<Pod, DoneablePod> resource = client.pods().withName(podName);
+        Pod pod = apiPolicy.call("get pod " + podName, resource::get);
+        if (pod == null || pod.getMetadata().getDeletionTimestamp() != null) {
+            return false;
+        }
+
+        Map<String, String> labels = new HashMap<>(pod.getMetadata().getLabels());
+        labels.put(REAP_LABEL_KEY, batch);
+        pod.getMetadata().setLabels(labels);
+        apiPolicy.call("patch pod " + podName, () -> resource.patch(pod));
+        return true;
+    }
+
     private KubernetesInstance createKubernetesPod(KubernetesClient client, Pod elasticAgentPod) {
         LOG.info(format("[Create Agent] Creating K8s pod with spec: {0}.", elasticAgentPod.toString()));
-        Pod pod = client.pods().create(elasticAgentPod);
+        Pod pod = apiPolicy.call("create pod " + elasticAgentPod.getMetadata().getName(), () -> createOrAdopt(client, elasticAgentPod));
         return fromKubernetesPod(pod);
     }
 
+    /**
+     * Creates the pod. If the pod already exists because an earlier attempt reached the API server before failing,
+     * the existing pod is used instead of failing the retried create.
+     */
+    private static Pod createOrAdopt(KubernetesClient client, Pod elasticAgentPod) {
+        try {
+            return client.pods().create(elasticAgentPod);
+        } catch (KubernetesClientException e) {
+            if (e.getCode() != 409) {
+                throw e;
+            }
+
+            Pod existing = client.pods().withName(elasticAgentPod.getMetadata().getName()).get();
+            if (existing == null || !isSameAgent(existing, elasticAgentPod)) {
+                throw e;
+            }
+            LOG.info(format("[Create Agent] Pod {0} was already created by an earlier attempt.", existing.getMetadata().getName()));
+            return existing;
+        }
+    }
+
+    private static boolean isSameAgent(Pod existing, Pod elasticAgentPod) {
+        Map<String, String> labels = existing.getMetadata().getLabels() == null ? Collections.emptyMap() : existing.getMetadata().getLabels();
+        Map<String, String> annotations = existing.getMetadata().getAnnotations() == null ? Collections.emptyMap() : existing.getMetadata().getAnnotations();
+        return Objects.equals(labels.get(KUBERNETES_POD_AGENT_PROFILE), elasticAgentPod.getMetadata().getLabels().get(KUBERNETES_POD_AGENT_PROFILE))
+                && Objects.equals(annotations.get(JOB_IDENTIFIER_LABEL_KEY), elasticAgentPod.getMetadata().getAnnotations().get(JOB_IDENTIFIER_LABEL_KEY));
+    }
+
     public KubernetesInstance fromKubernetesPod(Pod elasticAgentPod) {
         KubernetesInstance kubernetesInstance;
         try {
@@ -145,10 +253,13 @@ public class KubernetesInstanceFactory {
             if (StringUtils.isNotBlank(metadata.getCreationTimestamp())) {
                 createdAt = new DateTime(getSimpleDateFormat().parse(metadata.getCreationTimestamp())).withZone(DateTimeZone.UTC);
             }
+            String boundAtAnnotation = metadata.getAnnotations() == null ? null : metadata.getAnnotations().get(BOUND_AT_ANNOTATION_KEY);
+            DateTime boundAt = StringUtils.isBlank(boundAtAnnotation) ? null : new DateTime(getSimpleDateFormat().parse(boundAtAnnotation)).withZone(DateTimeZone.UTC);
             String environment = metadata.getLabels().get(ENVIRONMENT_LABEL_KEY);
             String profile = metadata.getLabels().get(KUBERNETES_POD_AGENT_PROFILE);
-            Long jobId = Long.valueOf(metadata.getLabels().get(JOB_ID_LABEL_KEY));
-            kubernetesInstance = new KubernetesInstance(createdAt, environment, metadata.getName(), metadata.getAnnotations(), jobId, PodState.fromPod(elasticAgentPod), profile);
+            String jobIdLabel = metadata.getLabels().get(JOB_ID_LABEL_KEY);
+            Long jobId = StringUtils.isBlank(jobIdLabel) ? null : Long.valueOf(jobIdLabel);
+            kubernetesInstance = new KubernetesInstance(createdAt, environment, metadata.getName(), metadata.getAnnotations(), jobId, PodState.fromPod(elasticAgentPod), profile, boundAt);
         } catch (ParseException e) {
             throw new RuntimeException(e);
         }
@@ -186,11 +297,19 @@ public class KubernetesInstanceFactory {
         return envVars;
     }
 
-    private static HashMap<String, String> labelsFrom(CreateAgentRequest request) {
+    private static HashMap<String, String> labelsFrom(CreateAgentRequest request, String serverId) {
         HashMap<String, String> labels = new HashMap<>();
 
         labels.put(CREATED_BY_LABEL_KEY, PLUGIN_ID);
-        labels.put(JOB_ID_LABEL_KEY, valueOf(request.jobIdentifier().getJobId()));
+        if (request.jobIdentifier() == null) {
+            labels.put(STANDBY_LABEL_KEY, "true");
+        } else {
+            labels.put(JOB_ID_LABEL_KEY, valueOf(request.jobIdentifier().getJobId()));
+        }
+
+        if (StringUtils.isNotBlank(serverId)) {
+            labels.put(SERVER_ID_LABEL_KEY, serverId);
+        }
 
         if (StringUtils.isNotBlank(request.environment())) {
             labels.put(ENVIRONMENT_LABEL_KEY, request.environment());
@@ -221,18 +340,11 @@ public class KubernetesInstanceFactory {
             podYaml = catFile(podYaml);
         }
 
-        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-        String templatizedPodYaml = getTemplatizedPodYamlString(podYaml);
-
-        Pod elasticAgentPod = new Pod();
-        try {
-            elasticAgentPod = mapper.readValue(templatizedPodYaml, Pod.class);
-        } catch (IOException e) {
-            //ignore error here, handle this inside validate profile!
-            LOG.error(e.getMessage());
-        }
-
+        Pod elasticAgentPod = podTemplates.newPod(request.properties().get("Profile"), podYaml);
         setGoCDMetadata(request, settings, pluginRequest, elasticAgentPod);
+        if (StringUtils.isNotBlank(client.getNamespace())) {
+            elasticAgentPod.getMetadata().setNamespace(client.getNamespace());
+        }
         return createKubernetesPod(client, elasticAgentPod);
     }
 
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable view of the elastic agent pods known to the plugin. Every change produces a new snapshot, so a reader
+ * holding one never observes a partially refreshed inventory. Instances are indexed by pod name and by job id; both
+ * indexes are replaced together. The indexes share structure with the previous snapshot, so a pod event costs a
+ * handful of small copies instead of a copy of the whole inventory.
+ */
+final class KubernetesInstanceSnapshot {
+    static final KubernetesInstanceSnapshot EMPTY = new KubernetesInstanceSnapshot(PersistentHashMap.empty(), PersistentHashMap.empty());
+
+    private final PersistentHashMap<String, KubernetesInstance> instances;
+    // usually one instance per job, unless another pod was created for the same job
+    private final PersistentHashMap<Long, List<KubernetesInstance>> instancesByJobId;
+
+    private KubernetesInstanceSnapshot(PersistentHashMap<String, KubernetesInstance> instances, PersistentHashMap<Long, List<KubernetesInstance>> instancesByJobId) {
+        this.instances = instances;
+        this.instancesByJobId = instancesByJobId;
+    }
+
+    static KubernetesInstanceSnapshot of(Collection<KubernetesInstance> instances) {
+        KubernetesInstanceSnapshot snapshot = EMPTY;
+        for (KubernetesInstance instance : instances) {
+            snapshot = snapshot.with(instance);
+        }
+        return snapshot;
+    }
+
+    KubernetesInstanceSnapshot with(KubernetesInstance instance) {
+        PersistentHashMap<Long, List<KubernetesInstance>> byJobId = instancesByJobId;
+        KubernetesInstance replaced = instances.get(instance.name());
+        if (replaced != null) {
+            byJobId = unindexByJobId(byJobId, replaced);
+        }
+        return new KubernetesInstanceSnapshot(instances.plus(instance.name(), instance), indexByJobId(byJobId, instance));
+    }
+
+    KubernetesInstanceSnapshot without(String name) {
+        KubernetesInstance removed = instances.get(name);
+        if (removed == null) {
+            return this;
+        }
+
+        return new KubernetesInstanceSnapshot(instances.minus(name), unindexByJobId(instancesByJobId, removed));
+    }
+
+    KubernetesInstance get(String name) {
+        return instances.get(name);
+    }
+
+    KubernetesInstance getByJobId(Long jobId) {
+        List<KubernetesInstance> forJob = instancesByJobId.get(jobId);
+        return forJob == null ? null : forJob.get(forJob.size() - 1);
+    }
+
+    boolean contains(KubernetesInstance instance) {
+        return instance != null && instance.equals(instances.get(instance.name()));
+    }
+
+    Collection<KubernetesInstance> instances() {
+        return instances.values();
+    }
+
+    Set<String> names() {
+        return instances.keySet();
+    }
+
+    int size() {
+        return instances.size();
+    }
+
+    boolean isEmpty() {
+        return instances.isEmpty();
+    }
+
+    private static PersistentHashMap<Long, List<KubernetesInstance>> indexByJobId(PersistentHashMap<Long, List<KubernetesInstance>> byJobId, KubernetesInstance instance) {
+        if (instance.jobId() == null) {
+            return byJobId;
+        }
+
+        List<KubernetesInstance> forJob = byJobId.get(instance.jobId());
+        List<KubernetesInstance> updated = forJob == null ? new ArrayList<>(1) : new ArrayList<>(forJob);
+        updated.add(instance);
+        return byJobId.plus(instance.jobId(), Collections.unmodifiableList(updated));
+    }
+
+    // another pod may have been created for the same job, keep it reachable once this one is gone
+    private static PersistentHashMap<Long, List<KubernetesInstance>> unindexByJobId(PersistentHashMap<Long, List<KubernetesInstance>> byJobId, KubernetesInstance instance) {
+        List<KubernetesInstance> forJob = instance.jobId() == null ? null : byJobId.get(instance.jobId());
+        if (forJob == null) {
+            return byJobId;
+        }
+
+        List<KubernetesInstance> updated = new ArrayList<>(forJob);
+        updated.removeIf(indexed -> indexed.name().equals(instance.name()));
+        return updated.isEmpty() ? byJobId.minus(instance.jobId()) : byJobId.plus(instance.jobId(), Collections.unmodifiableList(updated));
+    }
+}
@@ -17,6 +17,7 @@
 package cd.go.contrib.elasticagent;
 
 import cd.go.contrib.elasticagent.executors.*;
+import cd.go.contrib.elasticagent.model.KubernetesCluster;
 import cd.go.contrib.elasticagent.requests.*;
 import cd.go.contrib.elasticagent.utils.Util;
 import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
@@ -31,6 +32,8 @@ import com.thoughtworks.go.plugin.api.request.GoPluginApiRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import static cd.go.contrib.elasticagent.Constants.PLUGIN_IDENTIFIER;
 
 @Extension
@@ -39,11 +42,30 @@ public class KubernetesPlugin implements GoPlugin {
 
     private PluginRequest pluginRequest;
     private AgentInstances<KubernetesInstance> agentInstances;
+    private InventoryRefresher inventoryRefresher;
+    private PodCreationQueue podCreationQueue;
+    private PodTerminator podTerminator;
+    private final AtomicReference<KubernetesCluster> lastKnownCluster = new AtomicReference<>();
 
     @Override
     public void initializeGoApplicationAccessor(GoApplicationAccessor accessor) {
+        if (inventoryRefresher != null) {
+            inventoryRefresher.stop();
+        }
+        if (podCreationQueue != null) {
+            podCreationQueue.stop();
+        }
+        if (podTerminator != null) {
+            podTerminator.stop();
+        }
         pluginRequest = new PluginRequest(accessor);
-        agentInstances = new KubernetesAgentInstances();
+        KubernetesAgentInstances kubernetesAgentInstances = new KubernetesAgentInstances();
+        kubernetesAgentInstances.restoreOnFirstRefresh(InventoryStore::inTempDirectory);
+        agentInstances = kubernetesAgentInstances;
+        inventoryRefresher = new InventoryRefresher(agentInstances, pluginRequest);
+        inventoryRefresher.start();
+        podCreationQueue = new PodCreationQueue(agentInstances);
+        podTerminator = new PodTerminator(agentInstances);
     }
 
     @Load
@@ -54,7 +76,8 @@ public class KubernetesPlugin implements GoPlugin {
     @Override
     public GoPluginApiResponse handle(GoPluginApiRequest request) {
         try {
-            switch (Request.fromString(request.requestName())) {
+            Request requestType = Request.fromString(request.requestName());
+            switch (requestType) {
                 case REQUEST_GET_CAPABILITIES:
                     return new GetCapabilitiesExecutor().execute();
                 case PLUGIN_SETTINGS_GET_ICON:
@@ -64,7 +87,13 @@ public class KubernetesPlugin implements GoPlugin {
                 case PLUGIN_SETTINGS_GET_VIEW:
                     return new GetViewRequestExecutor().execute();
                 case PLUGIN_SETTINGS_VALIDATE_CONFIGURATION:
+                    pluginRequest.pluginSettingsValidated();
                     return ValidatePluginSettingsRequest.fromJSON(request.requestBody()).executor(pluginRequest).execute();
+                case PLUGIN_SETTINGS_CHANGED:
+                    PluginSettings previousSettings = pluginRequest.pluginSettingsBeforeChange();
+                    pluginRequest.invalidateCache();
+                    podTerminator.drainIdleInstancesCreatedWith(previousSettings, pluginRequest);
+                    return DefaultGoPluginApiResponse.success("");
                 case REQUEST_GET_PROFILE_METADATA:
                     return new GetProfileMetadataExecutor().execute();
                 case REQUEST_GET_PROFILE_VIEW:
@@ -72,19 +101,20 @@ public class KubernetesPlugin implements GoPlugin {
                 case REQUEST_VALIDATE_PROFILE:
                     return ProfileValidateRequest.fromJSON(request.requestBody()).executor().execute();
                 case REQUEST_CREATE_AGENT:
-                    return CreateAgentRequest.fromJSON(request.requestBody()).executor(agentInstances, pluginRequest).execute();
+                    return CreateAgentRequest.fromJSON(request.requestBody()).executor(podCreationQueue, pluginRequest).execute();
                 case REQUEST_SHOULD_ASSIGN_WORK:
-                    refreshInstances();
-                    return ShouldAssignWorkRequest.fromJSON(request.requestBody()).executor(agentInstances).execute();
+                    refreshInstances(requestType);
+                    return ShouldAssignWorkRequest.fromJSON(request.requestBody()).executor(agentInstances, pluginRequest).execute();
                 case REQUEST_SERVER_PING:
-                    refreshInstances();
-                    return new ServerPingRequestExecutor(agentInstances, pluginRequest).execute();
+                    refreshInstances(requestType);
+                    LOG.info(podCreationQueue.summary());
+                    return new ServerPingRequestExecutor(agentInstances, pluginRequest, podTerminator).execute();
                 case REQUEST_STATUS_REPORT:
-                    refreshInstances();
-                    return new StatusReportExecutor(pluginRequest).execute();
+                    refreshInstances(requestType);
+                    return new StatusReportExecutor(pluginRequest, inventoryRefresher, lastKnownCluster).execute();
                 case REQUEST_ELASTIC_AGENT_STATUS_REPORT:
-                    refreshInstances();
-                    return AgentStatusReportRequest.fromJSON(request.requestBody()).executor(pluginRequest).execute();
+                    refreshInstances(requestType);
+                    return AgentStatusReportRequest.fromJSON(request.requestBody()).executor(pluginRequest, agentInstances).execute();
                 default:
                     throw new UnhandledRequestTypeException(request.requestName());
             }
@@ -94,9 +124,18 @@ public class KubernetesPlugin implements GoPlugin {
         }
     }
 
-    private void refreshInstances() {
+    /**
+     * Refreshes the pod inventory if it is older than the staleness budget of the request type. The background
+     * refresher keeps the inventory young enough that this usually does not call the Kubernetes API, but when it falls
+     * behind the request refreshes the pods itself, joining any refresh already in flight.
+     */
+    private void refreshInstances(Request requestType) {
+        if (inventoryRefresher.hasRefreshed() && inventoryRefresher.isStale()) {
+            LOG.warn("[Refresh Instances] Background pod refresh is falling behind, refreshing pod information for the request.");
+        }
+
         try {
-            agentInstances.refreshAll(pluginRequest);
+            agentInstances.refreshAll(pluginRequest, requestType);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watcher;
+
+import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Keeps {@link KubernetesAgentInstances} current by applying pod events received from a Kubernetes watch.
+ */
+class KubernetesPodWatcher implements Watcher<Pod> {
+    private final KubernetesAgentInstances agentInstances;
+    final InventoryShard shard;
+
+    KubernetesPodWatcher(KubernetesAgentInstances agentInstances, InventoryShard shard) {
+        this.agentInstances = agentInstances;
+        this.shard = shard;
+    }
+
+    @Override
+    public void eventReceived(Action action, Pod pod) {
+        try {
+            switch (action) {
+                case ADDED:
+                case MODIFIED:
+                    agentInstances.podChanged(this, pod);
+                    break;
+                case DELETED:
+                    agentInstances.podDeleted(this, pod);
+                    break;
+                default:
+                    LOG.warn(format("[pod-watch] Received {0} event from pod watch.", action));
+            }
+        } catch (Exception e) {
+            LOG.error(format("[pod-watch] Failed to apply {0} event for pod {1}.", action, pod.getMetadata().getName()), e);
+        }
+    }
+
+    @Override
+    public void onClose(KubernetesClientException cause) {
+        if (cause != null) {
+            LOG.warn("[pod-watch] Pod watch closed unexpectedly, pods will be re-listed on next refresh.", cause);
+        }
+        agentInstances.watchClosed(this);
+    }
+}
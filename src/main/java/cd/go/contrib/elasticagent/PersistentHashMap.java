@@ -0,0 +1,263 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable hash map that shares structure between versions. It is a trie on the key hash with 32 slots per level,
+ * so adding or removing a key copies one path of at most seven small nodes instead of the whole map. Keys with the
+ * same hash are kept in a chain at the end of the path. The key and value views walk the trie itself, so reading a
+ * new version does not copy it either.
+ */
+final class PersistentHashMap<K, V> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Object root;
+    private final int size;
+
+    private PersistentHashMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    V get(K key) {
+        int hash = hash(key);
+        Object node = root;
+        for (int shift = 0; node instanceof Object[]; shift += BITS) {
+            node = ((Object[]) node)[(hash >>> shift) & MASK];
+        }
+        for (Entry entry = (Entry) node; entry != null; entry = entry.next) {
+            if (entry.hash == hash && Objects.equals(entry.key, key)) {
+                return value(entry);
+            }
+        }
+        return null;
+    }
+
+    boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    PersistentHashMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(value);
+        boolean added = !containsKey(key);
+        return new PersistentHashMap<>(put(root, 0, hash(key), key, value), added ? size + 1 : size);
+    }
+
+    PersistentHashMap<K, V> minus(K key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        return new PersistentHashMap<>(remove(root, 0, hash(key), key), size - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return an unmodifiable view of the keys of this version
+     */
+    Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return new EntryIterator<K>(root) {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    K element(Entry entry) {
+                        return (K) entry.key;
+                    }
+                };
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object key) {
+                return containsKey((K) key);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return an unmodifiable view of the values of this version
+     */
+    Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new EntryIterator<V>(root) {
+                    @Override
+                    V element(Entry entry) {
+                        return value(entry);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static Object put(Object node, int shift, int hash, Object key, Object value) {
+        if (node == null) {
+            return new Entry(hash, key, value, null);
+        }
+
+        if (node instanceof Object[]) {
+            Object[] branch = ((Object[]) node).clone();
+            int slot = (hash >>> shift) & MASK;
+            branch[slot] = put(branch[slot], shift + BITS, hash, key, value);
+            return branch;
+        }
+
+        Entry entry = (Entry) node;
+        if (entry.hash == hash) {
+            return new Entry(hash, key, value, without(entry, key));
+        }
+
+        Object[] branch = new Object[WIDTH];
+        branch[(entry.hash >>> shift) & MASK] = entry;
+        return put(branch, shift, hash, key, value);
+    }
+
+    private static Object remove(Object node, int shift, int hash, Object key) {
+        if (node instanceof Object[]) {
+            Object[] branch = ((Object[]) node).clone();
+            int slot = (hash >>> shift) & MASK;
+            branch[slot] = remove(branch[slot], shift + BITS, hash, key);
+            for (Object child : branch) {
+                if (child != null) {
+                    return branch;
+                }
+            }
+            return null;
+        }
+        return without((Entry) node, key);
+    }
+
+    private static Entry without(Entry chain, Object key) {
+        if (chain == null) {
+            return null;
+        }
+        if (Objects.equals(chain.key, key)) {
+            return chain.next;
+        }
+        return new Entry(chain.hash, chain.key, chain.value, without(chain.next, key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(Entry entry) {
+        return (V) entry.value;
+    }
+
+    private static int hash(Object key) {
+        return key == null ? 0 : key.hashCode();
+    }
+
+    // depth first over the branches, then along each collision chain
+    private abstract static class EntryIterator<E> implements Iterator<E> {
+        private final Deque<Object> pending = new ArrayDeque<>();
+        private Entry next;
+
+        EntryIterator(Object root) {
+            if (root != null) {
+                pending.push(root);
+            }
+            advance();
+        }
+
+        abstract E element(Entry entry);
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry current = next;
+            next = current.next;
+            if (next == null) {
+                advance();
+            }
+            return element(current);
+        }
+
+        private void advance() {
+            while (!pending.isEmpty()) {
+                Object node = pending.pop();
+                if (node instanceof Object[]) {
+                    for (Object child : (Object[]) node) {
+                        if (child != null) {
+                            pending.push(child);
+                        }
+                    }
+                } else {
+                    next = (Entry) node;
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+        private final Entry next;
+
+        Entry(int hash, Object key, Object value, Entry next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
@@ -21,6 +21,8 @@ import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
 import com.thoughtworks.go.plugin.api.request.DefaultGoApiRequest;
 import com.thoughtworks.go.plugin.api.response.GoApiResponse;
 import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
 
 import java.util.Collection;
 
@@ -29,14 +31,85 @@ import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
 import static cd.go.contrib.elasticagent.utils.Util.catFile;
 import static java.text.MessageFormat.format;
 
+/**
+ * Requests made to the GoCD server. Plugin settings and server info are cached for a short while, since they are
+ * needed on almost every request but rarely change; {@link #invalidateCache()} drops them when settings change, and
+ * {@link #pluginSettingsValidated()} keeps them only briefly while new settings may be about to be saved.
+ */
 public class PluginRequest {
+    static final Period PLUGIN_SETTINGS_TTL = Period.seconds(30);
+    static final Period SERVER_INFO_TTL = Period.minutes(5);
+    static final Period UNSAVED_PLUGIN_SETTINGS_TTL = Period.seconds(2);
+
     private final GoApplicationAccessor accessor;
+    private volatile String serverId;
+    private volatile Cached<PluginSettings> pluginSettings;
+    private volatile Cached<ServerInfo> serverInfo;
+    private volatile DateTime settingsValidatedAt;
+    private volatile PluginSettings settingsBeforeValidation;
+    Clock clock = Clock.DEFAULT;
 
     public PluginRequest(GoApplicationAccessor accessor) {
         this.accessor = accessor;
     }
 
+    /**
+     * Drops the cached plugin settings and server info, so that the next lookup goes to the GoCD server.
+     */
+    public void invalidateCache() {
+        pluginSettings = null;
+        serverInfo = null;
+        settingsBeforeValidation = null;
+    }
+
+    /**
+     * Called when the server validates new plugin settings. The server saves them only after validation and older
+     * servers never say when that happened, so for a while settings are cached for {@link #UNSAVED_PLUGIN_SETTINGS_TTL}
+     * only, which bounds how long settings from before the save can be served.
+     */
+    public void pluginSettingsValidated() {
+        DateTime now = clock.now();
+        settingsValidatedAt = now;
+
+        Cached<PluginSettings> cached = pluginSettings;
+        if (cached != null && settingsBeforeValidation == null) {
+            settingsBeforeValidation = cached.value;
+        }
+        DateTime unsavedExpiry = now.plus(UNSAVED_PLUGIN_SETTINGS_TTL);
+        if (cached != null && cached.expiresAt.isAfter(unsavedExpiry)) {
+            pluginSettings = new Cached<>(cached.value, unsavedExpiry);
+        }
+    }
+
+    /**
+     * @return the plugin settings looked up before new settings were validated, or the last ones looked up; null if
+     * none were looked up since the cache was last invalidated
+     */
+    public PluginSettings pluginSettingsBeforeChange() {
+        PluginSettings before = settingsBeforeValidation;
+        Cached<PluginSettings> cached = pluginSettings;
+        return before != null ? before : cached == null ? null : cached.value;
+    }
+
+    public String getServerId() throws ServerRequestFailedException {
+        if (serverId == null) {
+            serverId = getSeverInfo().getServerId();
+        }
+        return serverId;
+    }
+
     public ServerInfo getSeverInfo() throws ServerRequestFailedException {
+        Cached<ServerInfo> cached = serverInfo;
+        if (cached != null && cached.isFresh(clock)) {
+            return cached.value;
+        }
+
+        ServerInfo info = fetchServerInfo();
+        serverInfo = new Cached<>(info, clock.now().plus(SERVER_INFO_TTL));
+        return info;
+    }
+
+    private ServerInfo fetchServerInfo() throws ServerRequestFailedException {
         DefaultGoApiRequest request = new DefaultGoApiRequest(Constants.REQUEST_SERVER_INFO, SERVER_INFO_API_VERSION, PLUGIN_IDENTIFIER);
         GoApiResponse response = accessor.submit(request);
 
@@ -48,6 +121,25 @@ public class PluginRequest {
     }
 
     public PluginSettings getPluginSettings() throws ServerRequestFailedException {
+        Cached<PluginSettings> cached = pluginSettings;
+        if (cached != null && cached.isFresh(clock)) {
+            return cached.value;
+        }
+
+        PluginSettings settings = fetchPluginSettings();
+        pluginSettings = new Cached<>(settings, clock.now().plus(pluginSettingsTtl()));
+        return settings;
+    }
+
+    private Period pluginSettingsTtl() {
+        DateTime validatedAt = settingsValidatedAt;
+        if (validatedAt != null && clock.now().isBefore(validatedAt.plus(PLUGIN_SETTINGS_TTL))) {
+            return UNSAVED_PLUGIN_SETTINGS_TTL;
+        }
+        return PLUGIN_SETTINGS_TTL;
+    }
+
+    private PluginSettings fetchPluginSettings() throws ServerRequestFailedException {
         DefaultGoApiRequest request = new DefaultGoApiRequest(Constants.REQUEST_SERVER_GET_PLUGIN_SETTINGS, PROCESSOR_API_VERSION, PLUGIN_IDENTIFIER);
         GoApiResponse response = accessor.submit(request);
 
@@ -147,4 +239,18 @@ public class PluginRequest {
             throw ServerRequestFailedException.deleteAgents(response);
         }
     }
+
+    private static class Cached<T> {
+        private final T value;
+        private final DateTime expiresAt;
+
+        Cached(T value, DateTime expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh(Clock clock) {
+            return clock.now().isBefore(expiresAt);
+        }
+    }
 }
@@ -23,6 +23,10 @@ import com.google.gson.annotations.SerializedName;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.Period;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
 import static cd.go.contrib.elasticagent.utils.Util.BooleanTypeAdapter;
 import static cd.go.contrib.elasticagent.utils.Util.IntTypeAdapter;
 
@@ -59,6 +63,62 @@ public class PluginSettings {
     @SerializedName("namespace")
     private String namespace;
 
+    @Expose
+    @SerializedName("min_refresh_interval")
+    private Integer minRefreshInterval;
+
+    @Expose
+    @SerializedName("create_agent_max_staleness")
+    private Integer createAgentMaxStaleness;
+
+    @Expose
+    @SerializedName("should_assign_work_max_staleness")
+    private Integer shouldAssignWorkMaxStaleness;
+
+    @Expose
+    @SerializedName("server_ping_max_staleness")
+    private Integer serverPingMaxStaleness;
+
+    @Expose
+    @SerializedName("status_report_max_staleness")
+    private Integer statusReportMaxStaleness;
+
+    @Expose
+    @SerializedName("background_refresh_interval")
+    private Integer backgroundRefreshInterval;
+
+    @Expose
+    @SerializedName("background_refresh_jitter")
+    private Integer backgroundRefreshJitter;
+
+    @Expose
+    @SerializedName("pod_creation_workers")
+    private Integer podCreationWorkers;
+
+    @Expose
+    @SerializedName("pod_creation_queue_size")
+    private Integer podCreationQueueSize;
+
+    @Expose
+    @SerializedName("pod_creation_rate")
+    private Integer podCreationRate;
+
+    @Expose
+    @SerializedName("pod_creation_burst")
+    private Integer podCreationBurst;
+
+    @Expose
+    @SerializedName("adaptive_max_pending_pods")
+    private Integer adaptiveMaxPendingPods;
+
+    @Expose
+    @SerializedName("pending_latency_target")
+    private Integer pendingLatencyTarget;
+
+    @Expose
+    @SerializedName("pod_termination_concurrency")
+    private Integer podTerminationConcurrency;
+
     private Period autoRegisterPeriod;
 
     public PluginSettings() {
@@ -102,6 +162,44 @@ public class PluginSettings {
         return getOrDefault(this.maxPendingPods, 10);
     }
 
+    public Period getMinRefreshInterval() {
+        return Period.seconds(getOrDefault(this.minRefreshInterval, 5));
+    }
+
+    public Period getBackgroundRefreshInterval() {
+        return Period.seconds(getOrDefault(this.backgroundRefreshInterval, 30));
+    }
+
+    public Period getBackgroundRefreshJitter() {
+        return Period.seconds(getOrDefault(this.backgroundRefreshJitter, 5));
+    }
+
+    /**
+     * How old the cached pod information may be when serving the given request type before pods are listed again.
+     * Never less than {@link #getMinRefreshInterval()}.
+     */
+    public Period getMaxStaleness(Request request) {
+        int seconds;
+        switch (request) {
+            case REQUEST_CREATE_AGENT:
+                seconds = getOrDefault(this.createAgentMaxStaleness, 5);
+                break;
+            case REQUEST_SHOULD_ASSIGN_WORK:
+                seconds = getOrDefault(this.shouldAssignWorkMaxStaleness, 60);
+                break;
+            case REQUEST_SERVER_PING:
+                seconds = getOrDefault(this.serverPingMaxStaleness, 30);
+                break;
+            case REQUEST_STATUS_REPORT:
+            case REQUEST_ELASTIC_AGENT_STATUS_REPORT:
+                seconds = getOrDefault(this.statusReportMaxStaleness, 10);
+                break;
+            default:
+                seconds = 0;
+        }
+        return Period.seconds(Math.max(seconds, getOrDefault(this.minRefreshInterval, 5)));
+    }
+
     public String getGoServerUrl() {
         return goServerUrl;
     }
@@ -118,8 +216,55 @@ public class PluginSettings {
         return clusterCACertData;
     }
 
+    /**
+     * @return the namespace of the plugin's own client, which is the first of the configured namespaces
+     */
     public String getNamespace() {
-        return getOrDefault(this.namespace, "default");
+        return getNamespaces().get(0);
+    }
+
+    /**
+     * @return the namespaces agent pods are placed in, configured as a comma separated list
+     */
+    public List<String> getNamespaces() {
+        List<String> namespaces = new ArrayList<>();
+        for (String namespace : getOrDefault(this.namespace, "default").split(",")) {
+            if (StringUtils.isNotBlank(namespace) && !namespaces.contains(namespace.trim())) {
+                namespaces.add(namespace.trim());
+            }
+        }
+        if (namespaces.isEmpty()) {
+            namespaces.add("default");
+        }
+        return namespaces;
+    }
+
+    public Integer getPodCreationWorkers() {
+        return getOrDefault(this.podCreationWorkers, 4);
+    }
+
+    public Integer getPodCreationQueueSize() {
+        return getOrDefault(this.podCreationQueueSize, 500);
+    }
+
+    public Integer getPodCreationRate() {
+        return getOrDefault(this.podCreationRate, 0);
+    }
+
+    public Integer getPodCreationBurst() {
+        return getOrDefault(this.podCreationBurst, 10);
+    }
+
+    public Integer getAdaptiveMaxPendingPods() {
+        return getOrDefault(this.adaptiveMaxPendingPods, 0);
+    }
+
+    public Period getPendingLatencyTarget() {
+        return Period.seconds(getOrDefault(this.pendingLatencyTarget, 60));
+    }
+
+    public Integer getPodTerminationConcurrency() {
+        return getOrDefault(this.podTerminationConcurrency, 10);
     }
 
     private <T> T getOrDefault(T t, T defaultValue) {
@@ -134,6 +279,18 @@ public class PluginSettings {
         return t;
     }
 
+    /**
+     * @return whether pods are created alike with both settings: in the same cluster and namespaces, using the same
+     * credentials, and registering with the same GoCD server
+     */
+    public boolean createsPodsLike(PluginSettings other) {
+        return Objects.equals(goServerUrl, other.goServerUrl)
+                && Objects.equals(clusterUrl, other.clusterUrl)
+                && Objects.equals(securityToken, other.securityToken)
+                && Objects.equals(clusterCACertData, other.clusterCACertData)
+                && getNamespaces().equals(other.getNamespaces());
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -150,6 +307,34 @@ public class PluginSettings {
         if (securityToken != null ? !securityToken.equals(that.securityToken) : that.securityToken != null) return false;
         if (clusterCACertData != null ? !clusterCACertData.equals(that.clusterCACertData) : that.clusterCACertData != null)
             return false;
+        if (minRefreshInterval != null ? !minRefreshInterval.equals(that.minRefreshInterval) : that.minRefreshInterval != null)
+            return false;
+        if (createAgentMaxStaleness != null ? !createAgentMaxStaleness.equals(that.createAgentMaxStaleness) : that.createAgentMaxStaleness != null)
+            return false;
+        if (shouldAssignWorkMaxStaleness != null ? !shouldAssignWorkMaxStaleness.equals(that.shouldAssignWorkMaxStaleness) : that.shouldAssignWorkMaxStaleness != null)
+            return false;
+        if (serverPingMaxStaleness != null ? !serverPingMaxStaleness.equals(that.serverPingMaxStaleness) : that.serverPingMaxStaleness != null)
+            return false;
+        if (statusReportMaxStaleness != null ? !statusReportMaxStaleness.equals(that.statusReportMaxStaleness) : that.statusReportMaxStaleness != null)
+            return false;
+        if (backgroundRefreshInterval != null ? !backgroundRefreshInterval.equals(that.backgroundRefreshInterval) : that.backgroundRefreshInterval != null)
+            return false;
+        if (backgroundRefreshJitter != null ? !backgroundRefreshJitter.equals(that.backgroundRefreshJitter) : that.backgroundRefreshJitter != null)
+            return false;
+        if (podCreationWorkers != null ? !podCreationWorkers.equals(that.podCreationWorkers) : that.podCreationWorkers != null)
+            return false;
+        if (podCreationQueueSize != null ? !podCreationQueueSize.equals(that.podCreationQueueSize) : that.podCreationQueueSize != null)
+            return false;
+        if (podCreationRate != null ? !podCreationRate.equals(that.podCreationRate) : that.podCreationRate != null)
+            return false;
+        if (podCreationBurst != null ? !podCreationBurst.equals(that.podCreationBurst) : that.podCreationBurst != null)
+            return false;
+        if (adaptiveMaxPendingPods != null ? !adaptiveMaxPendingPods.equals(that.adaptiveMaxPendingPods) : that.adaptiveMaxPendingPods != null)
+            return false;
+        if (pendingLatencyTarget != null ? !pendingLatencyTarget.equals(that.pendingLatencyTarget) : that.pendingLatencyTarget != null)
+            return false;
+        if (podTerminationConcurrency != null ? !podTerminationConcurrency.equals(that.podTerminationConcurrency) : that.podTerminationConcurrency != null)
+            return false;
         return namespace != null ? namespace.equals(that.namespace) : that.namespace == null;
     }
 
@@ -162,6 +347,20 @@ public class PluginSettings {
         result = 31 * result + (securityToken != null ? securityToken.hashCode() : 0);
         result = 31 * result + (clusterCACertData != null ? clusterCACertData.hashCode() : 0);
         result = 31 * result + (namespace != null ? namespace.hashCode() : 0);
+        result = 31 * result + (minRefreshInterval != null ? minRefreshInterval.hashCode() : 0);
+        result = 31 * result + (createAgentMaxStaleness != null ? createAgentMaxStaleness.hashCode() : 0);
+        result = 31 * result + (shouldAssignWorkMaxStaleness != null ? shouldAssignWorkMaxStaleness.hashCode() : 0);
+        result = 31 * result + (serverPingMaxStaleness != null ? serverPingMaxStaleness.hashCode() : 0);
+        result = 31 * result + (statusReportMaxStaleness != null ? statusReportMaxStaleness.hashCode() : 0);
+        result = 31 * result + (backgroundRefreshInterval != null ? backgroundRefreshInterval.hashCode() : 0);
+        result = 31 * result + (backgroundRefreshJitter != null ? backgroundRefreshJitter.hashCode() : 0);
+        result = 31 * result + (podCreationWorkers != null ? podCreationWorkers.hashCode() : 0);
+        result = 31 * result + (podCreationQueueSize != null ? podCreationQueueSize.hashCode() : 0);
+        result = 31 * result + (podCreationRate != null ? podCreationRate.hashCode() : 0);
+        result = 31 * result + (podCreationBurst != null ? podCreationBurst.hashCode() : 0);
+        result = 31 * result + (adaptiveMaxPendingPods != null ? adaptiveMaxPendingPods.hashCode() : 0);
+        result = 31 * result + (pendingLatencyTarget != null ? pendingLatencyTarget.hashCode() : 0);
+        result = 31 * result + (podTerminationConcurrency != null ? podTerminationConcurrency.hashCode() : 0);
         return result;
     }
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import cd.go.contrib.elasticagent.requests.CreateAgentRequest;
+import org.joda.time.DateTime;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Creates agent pods on a pool of plugin-owned workers, so that create agent requests are acknowledged without
+ * waiting on the Kubernetes API. Requests are queued once per job; pending pod limits are applied by
+ * {@link AgentInstances#create} when a worker picks the request up. A create that is rate limited does not hold its
+ * worker: it is handed back to the workers once its wait is over.
+ */
+public class PodCreationQueue {
+    private final AgentInstances<KubernetesInstance> agentInstances;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService scheduler;
+    private final Set<Long> queuedJobs = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger depth = new AtomicInteger();
+    final Metrics metrics = new Metrics();
+    Clock clock = Clock.DEFAULT;
+
+    public PodCreationQueue(AgentInstances<KubernetesInstance> agentInstances) {
+        this(agentInstances, new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kubernetes-pod-creator");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    PodCreationQueue(AgentInstances<KubernetesInstance> agentInstances, ThreadPoolExecutor executor) {
+        this(agentInstances, executor, new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "kubernetes-pod-creation-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    PodCreationQueue(AgentInstances<KubernetesInstance> agentInstances, ThreadPoolExecutor executor, ScheduledExecutorService scheduler) {
+        this.agentInstances = agentInstances;
+        this.executor = executor;
+        this.executor.allowCoreThreadTimeOut(true);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Queues creation of an agent pod for the job of the request.
+     *
+     * @return whether the job is queued, false if the request was dropped because the queue is full or stopped
+     */
+    public boolean submit(CreateAgentRequest request, PluginRequest pluginRequest) {
+        PluginSettings settings = pluginRequest.getPluginSettings();
+        Long jobId = request.jobIdentifier().getJobId();
+        if (!queuedJobs.add(jobId)) {
+            metrics.deduplicated.incrementAndGet();
+            LOG.info(format("[pod-creation] Agent creation for job {0} is already queued, skipping current request.", request.jobIdentifier()));
+            return true;
+        }
+
+        if (depth.incrementAndGet() > settings.getPodCreationQueueSize()) {
+            reject(jobId);
+            LOG.warn(format("[pod-creation] Queue is full ({0} requests), dropping agent creation for job {1}.", settings.getPodCreationQueueSize(), request.jobIdentifier()));
+            return false;
+        }
+
+        resize(Math.max(1, settings.getPodCreationWorkers()));
+        if (!execute(request, pluginRequest)) {
+            return false;
+        }
+        metrics.queued.incrementAndGet();
+        return true;
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    public int depth() {
+        return depth.get();
+    }
+
+    public String summary() {
+        return format("[pod-creation] depth: {0}, {1}", depth(), metrics);
+    }
+
+    private boolean execute(CreateAgentRequest request, PluginRequest pluginRequest) {
+        DateTime queuedAt = clock.now();
+        try {
+            executor.execute(() -> create(request, pluginRequest, queuedAt));
+            return true;
+        } catch (RejectedExecutionException e) {
+            reject(request.jobIdentifier().getJobId());
+            LOG.warn(format("[pod-creation] Pod creation is stopped, dropping agent creation for job {0}.", request.jobIdentifier()));
+            return false;
+        }
+    }
+
+    private void create(CreateAgentRequest request, PluginRequest pluginRequest, DateTime queuedAt) {
+        depth.decrementAndGet();
+        DateTime startedAt = clock.now();
+        metrics.waited(startedAt.getMillis() - queuedAt.getMillis());
+        boolean done = true;
+        try {
+            KubernetesInstance instance = agentInstances.create(request, pluginRequest.getPluginSettings(), pluginRequest);
+            metrics.created(clock.now().getMillis() - startedAt.getMillis(), instance != null);
+        } catch (PodCreationThrottledException e) {
+            done = !defer(request, pluginRequest, e.waitMillis());
+        } catch (Exception e) {
+            metrics.failed.incrementAndGet();
+            LOG.error(format("[pod-creation] Failed to create agent pod for job {0}.", request.jobIdentifier()), e);
+        } finally {
+            if (done) {
+                queuedJobs.remove(request.jobIdentifier().getJobId());
+            }
+        }
+    }
+
+    /**
+     * Hands the request back to the workers once the token the rate limiter reserved for it is due. The job stays
+     * queued meanwhile, so repeated create agent requests for it are still deduplicated.
+     */
+    private boolean defer(CreateAgentRequest request, PluginRequest pluginRequest, long waitMillis) {
+        try {
+            scheduler.schedule(() -> {
+                depth.incrementAndGet();
+                execute(request, pluginRequest);
+            }, waitMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.warn(format("[pod-creation] Pod creation is stopped, dropping agent creation for job {0}.", request.jobIdentifier()));
+            return false;
+        }
+        metrics.deferred.incrementAndGet();
+        LOG.debug(format("[pod-creation] Pod creation for job {0} is rate limited, retrying in {1}ms.", request.jobIdentifier(), waitMillis));
+        return true;
+    }
+
+    private void reject(Long jobId) {
+        depth.decrementAndGet();
+        queuedJobs.remove(jobId);
+        metrics.rejected.incrementAndGet();
+    }
+
+    private synchronized void resize(int workers) {
+        if (workers == executor.getCorePoolSize()) {
+            return;
+        }
+        if (workers > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(workers);
+            executor.setCorePoolSize(workers);
+        } else {
+            executor.setCorePoolSize(workers);
+            executor.setMaximumPoolSize(workers);
+        }
+    }
+
+    static class Metrics {
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong deduplicated = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong created = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong deferred = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicLong totalWaitMillis = new AtomicLong();
+        private final LongAccumulator maxWaitMillis = new LongAccumulator(Math::max, 0);
+        private final AtomicLong totalCreateMillis = new AtomicLong();
+        private final LongAccumulator maxCreateMillis = new LongAccumulator(Math::max, 0);
+
+        private void waited(long waitMillis) {
+            started.incrementAndGet();
+            totalWaitMillis.addAndGet(waitMillis);
+            maxWaitMillis.accumulate(waitMillis);
+        }
+
+        private void created(long createMillis, boolean created) {
+            (created ? this.created : skipped).incrementAndGet();
+            totalCreateMillis.addAndGet(createMillis);
+            maxCreateMillis.accumulate(createMillis);
+        }
+
+        long queued() {
+            return queued.get();
+        }
+
+        long deduplicated() {
+            return deduplicated.get();
+        }
+
+        long rejected() {
+            return rejected.get();
+        }
+
+        long created() {
+            return created.get();
+        }
+
+        long skipped() {
+            return skipped.get();
+        }
+
+        long failed() {
+            return failed.get();
+        }
+
+        long deferred() {
+            return deferred.get();
+        }
+
+        long averageWaitMillis() {
+            long count = started.get();
+            return count == 0 ? 0 : totalWaitMillis.get() / count;
+        }
+
+        long maxWaitMillis() {
+            return maxWaitMillis.get();
+        }
+
+        long averageCreateMillis() {
+            long count = created.get() + skipped.get();
+            return count == 0 ? 0 : totalCreateMillis.get() / count;
+        }
+
+        long maxCreateMillis() {
+            return maxCreateMillis.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{queued: %d, deduplicated: %d, rejected: %d, created: %d, skipped: %d, failed: %d, deferred: %d, avg wait: %dms, max wait: %dms, avg create: %dms, max create: %dms}",
+                    queued(), deduplicated(), rejected(), created(), skipped(), failed(), deferred(), averageWaitMillis(), maxWaitMillis(), averageCreateMillis(), maxCreateMillis());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Token bucket limits on the rate of pod creation, one across all profiles and one per profile. The limiter never
+ * blocks: a create that finds a bucket empty reserves the next token and is told how long to wait for it, so that
+ * the caller can retry it at that time without holding a thread. Reserved tokens are taken right away, so buckets may
+ * go negative and every further create queues up behind the reservations already made. A rate of zero means no limit.
+ */
+class PodCreationRateLimiter {
+    static final long RESERVATION_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private final ConcurrentMap<String, TokenBucket> profileBuckets = new ConcurrentHashMap<>();
+    private final Map<String, Long> reservations = new HashMap<>();
+    private TokenBucket globalBucket;
+    private final Metrics metrics = new Metrics();
+    Clock clock = Clock.DEFAULT;
+
+    /**
+     * Takes a token from both the global and the profile's bucket. If a bucket is empty and a reservation key is
+     * given, the token is reserved for that key and a later call with the same key claims it once it is due. Without
+     * a reservation key nothing is taken unless both buckets have a token right now.
+     *
+     * @param reservation identifies the create across retries, or null if it will not be retried
+     * @return 0 if the pod may be created now, otherwise milliseconds until the reserved or the next token is available
+     */
+    synchronized long tryAcquire(String reservation, String profile, Limit global, Limit perProfile) {
+        long now = clock.now().getMillis();
+        expireReservations(now);
+
+        Long dueAt = reservation == null ? null : reservations.get(reservation);
+        if (dueAt != null) {
+            if (dueAt > now) {
+                return dueAt - now;
+            }
+            reservations.remove(reservation);
+            metrics.acquired();
+            return 0;
+        }
+
+        TokenBucket globalTokens = global.isUnlimited() ? null : globalBucket(global, now);
+        TokenBucket profileTokens = null;
+        if (perProfile.isUnlimited()) {
+            profileBuckets.remove(profile);
+        } else {
+            profileTokens = profileBuckets.compute(profile, (p, existing) ->
+                    existing == null || !existing.limit.equals(perProfile) ? new TokenBucket(perProfile, now) : existing);
+            profileTokens.refill(now);
+        }
+
+        long waitMillis = Math.max(waitMillis(globalTokens), waitMillis(profileTokens));
+        if (waitMillis > 0 && reservation == null) {
+            LOG.debug(format("[pod-creation] Pod creation for profile {0} is rate limited for {1}ms.", profile, waitMillis));
+            return waitMillis;
+        }
+
+        take(globalTokens);
+        take(profileTokens);
+        if (waitMillis > 0) {
+            reservations.put(reservation, now + waitMillis);
+            metrics.deferred(waitMillis);
+            LOG.debug(format("[pod-creation] Pod creation for profile {0} is rate limited, reserved a token in {1}ms.", profile, waitMillis));
+            return waitMillis;
+        }
+
+        metrics.acquired();
+        return 0;
+    }
+
+    // reservations of creates that were given up, e.g. because their job got an agent meanwhile
+    private void expireReservations(long now) {
+        reservations.values().removeIf(dueAt -> dueAt + RESERVATION_TIMEOUT_MILLIS < now);
+    }
+
+    private static long waitMillis(TokenBucket bucket) {
+        return bucket == null ? 0 : bucket.waitMillis();
+    }
+
+    private static void take(TokenBucket bucket) {
+        if (bucket != null) {
+            bucket.take();
+        }
+    }
+
+    private TokenBucket globalBucket(Limit global, long now) {
+        if (globalBucket == null || !globalBucket.limit.equals(global)) {
+            globalBucket = new TokenBucket(global, now);
+        }
+        globalBucket.refill(now);
+        return globalBucket;
+    }
+
+    String summary() {
+        return metrics.summary();
+    }
+
+    static class Limit {
+        private final int rate;
+        private final int burst;
+
+        Limit(int rate, int burst) {
+            this.rate = Math.max(0, rate);
+            this.burst = Math.max(1, burst);
+        }
+
+        boolean isUnlimited() {
+            return rate == 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Limit limit = (Limit) o;
+            return rate == limit.rate && burst == limit.burst;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * rate + burst;
+        }
+    }
+
+    private static class TokenBucket {
+        private final Limit limit;
+        private double tokens;
+        private long updatedAt;
+
+        TokenBucket(Limit limit, long now) {
+            this.limit = limit;
+            this.tokens = limit.burst;
+            this.updatedAt = now;
+        }
+
+        void refill(long now) {
+            tokens = Math.min(limit.burst, tokens + Math.max(0, now - updatedAt) * limit.rate / 1000.0);
+            updatedAt = Math.max(updatedAt, now);
+        }
+
+        long waitMillis() {
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1000.0 / limit.rate);
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+    }
+
+    private static class Metrics {
+        private final AtomicLong acquired = new AtomicLong();
+        private final AtomicLong deferred = new AtomicLong();
+        private final AtomicLong totalWaitMillis = new AtomicLong();
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+
+        void acquired() {
+            acquired.incrementAndGet();
+        }
+
+        void deferred(long waitMillis) {
+            deferred.incrementAndGet();
+            totalWaitMillis.addAndGet(waitMillis);
+            maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        }
+
+        String summary() {
+            long deferredCount = deferred.get();
+            long avgWait = deferredCount == 0 ? 0 : totalWaitMillis.get() / deferredCount;
+            return format("[pod-creation] rate limit: {0} creates, {1} deferred, avg/max deferral {2}/{3}ms",
+                    acquired.get(), deferredCount, avgWait, maxWaitMillis.get());
+        }
+    }
+}
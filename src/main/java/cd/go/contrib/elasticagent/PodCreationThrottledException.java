@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+/**
+ * Thrown when a pod can not be created yet because of the pod creation rate limits. The create should be retried
+ * once {@link #waitMillis()} have passed.
+ */
+public class PodCreationThrottledException extends RuntimeException {
+    private final long waitMillis;
+
+    public PodCreationThrottledException(String message, long waitMillis) {
+        super(message);
+        this.waitMillis = waitMillis;
+    }
+
+    public long waitMillis() {
+        return waitMillis;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Lists pods in pages using the Kubernetes <code>limit</code>/<code>continue</code> list parameters and hands them to a
+ * consumer one at a time, so at most one page of pods is held in memory. The bundled kubernetes-client does not
+ * support chunked lists, so pages are requested over the client's own HTTP connection. Clients that do not expose
+ * it fall back to a single list call.
+ */
+public class PodPager {
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final KubernetesClient client;
+    private final int pageSize;
+
+    public PodPager(KubernetesClient client) {
+        this(client, DEFAULT_PAGE_SIZE);
+    }
+
+    public PodPager(KubernetesClient client, int pageSize) {
+        this.client = client;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the resource version of the listed pods, to start a watch from
+     */
+    public String forEach(Map<String, String> labels, Consumer<Pod> consumer) {
+        if (!(client instanceof HttpClientAware)) {
+            PodList list = client.pods().withLabels(labels).list();
+            list.getItems().forEach(consumer);
+            return list.getMetadata() != null ? list.getMetadata().getResourceVersion() : null;
+        }
+
+        String resourceVersion = null;
+        String continueToken = null;
+        do {
+            JsonNode page = fetchPage(labels, continueToken);
+            JsonNode metadata = page.path("metadata");
+            if (resourceVersion == null) {
+                resourceVersion = metadata.path("resourceVersion").asText(null);
+            }
+            for (JsonNode item : page.path("items")) {
+                consumer.accept(toPod(item));
+            }
+            continueToken = metadata.path("continue").asText(null);
+        } while (StringUtils.isNotBlank(continueToken));
+
+        return resourceVersion;
+    }
+
+    private JsonNode fetchPage(Map<String, String> labels, String continueToken) {
+        HttpUrl.Builder url = HttpUrl.parse(client.getMasterUrl().toString()).newBuilder()
+                .addPathSegment("api")
+                .addPathSegment("v1")
+                .addPathSegment("namespaces")
+                .addPathSegment(client.getNamespace())
+                .addPathSegment("pods")
+                .addQueryParameter("limit", String.valueOf(pageSize));
+        if (!labels.isEmpty()) {
+            url.addQueryParameter("labelSelector", labels.entrySet().stream()
+                    .map(label -> label.getKey() + "=" + label.getValue())
+                    .collect(Collectors.joining(",")));
+        }
+        if (continueToken != null) {
+            url.addQueryParameter("continue", continueToken);
+        }
+
+        Request request = new Request.Builder().get().url(url.build()).build();
+        try (Response response = ((HttpClientAware) client).getHttpClient().newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new KubernetesClientException(format("Failed to list pods from {0}: {1} {2}", request.url(), response.code(), response.message()), response.code(), null);
+            }
+            try (InputStream stream = body.byteStream()) {
+                return MAPPER.readTree(stream);
+            }
+        } catch (IOException e) {
+            throw new KubernetesClientException(format("Failed to list pods from {0}", request.url()), e);
+        }
+    }
+
+    private static Pod toPod(JsonNode item) {
+        try {
+            return MAPPER.treeToValue(item, Pod.class);
+        } catch (IOException e) {
+            throw new KubernetesClientException("Failed to read pod from list response", e);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import cd.go.contrib.elasticagent.model.ProfileStartupLatencies;
+import io.fabric8.kubernetes.api.model.Pod;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Tracks how long the pods created by the plugin take from the create request until the agent is assigned its job,
+ * and aggregates the time spent in each stage into per-profile histograms for the status report. Timestamps are taken
+ * when the plugin observes a change, so they are only as accurate as the pod watch and the server ping interval.
+ */
+public class PodStartupLatencies {
+    static final Period MAX_TRACKED = Period.hours(1);
+
+    private static final PodStartupLatencies LATENCIES = new PodStartupLatencies();
+
+    private final ConcurrentMap<String, Startup> startups = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<Stage, Histogram>> histograms = new ConcurrentHashMap<>();
+    Clock clock = Clock.DEFAULT;
+
+    public static PodStartupLatencies instance() {
+        return LATENCIES;
+    }
+
+    public enum Stage {
+        CREATE("Create requested to pod created"),
+        SCHEDULING("Pod created to scheduled"),
+        CONTAINER_START("Scheduled to running"),
+        REGISTRATION("Running to agent registered"),
+        ASSIGNMENT("Agent registered to work assigned"),
+        TOTAL("Create requested to work assigned");
+
+        private final String description;
+
+        Stage(String description) {
+            this.description = description;
+        }
+
+        public String description() {
+            return description;
+        }
+    }
+
+    /**
+     * The pod was created for a create request made at the given time.
+     */
+    void created(String podName, String profile, DateTime requestedAt) {
+        DateTime now = clock.now();
+        forgetStartupsBefore(now.minus(MAX_TRACKED));
+        startups.put(podName, new Startup(profile, requestedAt, now));
+        record(profile, Stage.CREATE, requestedAt, now);
+    }
+
+    /**
+     * Notes when a tracked pod is first seen scheduled to a node and running.
+     */
+    void observed(Pod pod) {
+        Startup startup = startups.get(pod.getMetadata().getName());
+        if (startup == null) {
+            return;
+        }
+
+        synchronized (startup) {
+            DateTime now = clock.now();
+            boolean scheduled = pod.getSpec() != null && pod.getSpec().getNodeName() != null;
+            boolean running = PodState.fromPod(pod) == PodState.Running;
+            if ((scheduled || running) && startup.scheduledAt == null) {
+                startup.scheduledAt = now;
+                record(startup.profile, Stage.SCHEDULING, startup.createdAt, now);
+            }
+            if (running && startup.runningAt == null) {
+                startup.runningAt = now;
+                record(startup.profile, Stage.CONTAINER_START, startup.scheduledAt, now);
+            }
+        }
+    }
+
+    /**
+     * A standby pod was bound to a job, its job waits from now on.
+     */
+    void bound(String podName) {
+        Startup startup = startups.get(podName);
+        if (startup != null) {
+            synchronized (startup) {
+                startup.boundAt = clock.now();
+            }
+        }
+    }
+
+    /**
+     * The agent of the pod is known to the server.
+     */
+    public void registered(String agentId) {
+        Startup startup = startups.get(agentId);
+        if (startup == null) {
+            return;
+        }
+
+        synchronized (startup) {
+            if (startup.registeredAt == null) {
+                startup.registeredAt = clock.now();
+                record(startup.profile, Stage.REGISTRATION, startup.runningAt, startup.registeredAt);
+            }
+        }
+    }
+
+    /**
+     * The server was allowed to assign the job to the agent of the pod, which completes its startup.
+     */
+    public void assigned(String agentId) {
+        Startup startup = startups.get(agentId);
+        if (startup == null || (startup.boundAt == null && startup.registeredAt == null)) {
+            return;
+        }
+
+        startups.remove(agentId);
+        synchronized (startup) {
+            DateTime now = clock.now();
+            DateTime jobWaitingSince = startup.boundAt != null ? startup.boundAt : startup.requestedAt;
+            record(startup.profile, Stage.ASSIGNMENT, latest(startup.registeredAt, startup.boundAt), now);
+            record(startup.profile, Stage.TOTAL, jobWaitingSince, now);
+        }
+    }
+
+    void forget(String podName) {
+        startups.remove(podName);
+    }
+
+    Histogram histogram(String profile, Stage stage) {
+        Map<Stage, Histogram> stages = histograms.get(profile);
+        return stages == null ? null : stages.get(stage);
+    }
+
+    public List<ProfileStartupLatencies> report() {
+        List<ProfileStartupLatencies> report = new ArrayList<>();
+        for (Map.Entry<String, Map<Stage, Histogram>> entry : new TreeMap<>(histograms).entrySet()) {
+            report.add(new ProfileStartupLatencies(entry.getKey(), new ArrayList<>(entry.getValue().values())));
+        }
+        return report;
+    }
+
+    String summary() {
+        StringBuilder summary = new StringBuilder("[startup-latency]");
+        for (ProfileStartupLatencies profile : report()) {
+            Histogram total = histogram(profile.getProfile(), Stage.TOTAL);
+            if (total != null) {
+                summary.append(format(" {0}=p50 {1}ms/p90 {2}ms/max {3}ms over {4} pods",
+                        profile.getProfile(), total.getP50(), total.getP90(), total.getMax(), total.getCount()));
+            }
+        }
+        return summary.toString();
+    }
+
+    private void record(String profile, Stage stage, DateTime from, DateTime to) {
+        if (from == null) {
+            return;
+        }
+
+        Map<Stage, Histogram> stages = histograms.computeIfAbsent(profile, p -> {
+            Map<Stage, Histogram> byStage = new EnumMap<>(Stage.class);
+            for (Stage s : Stage.values()) {
+                byStage.put(s, new Histogram(s));
+            }
+            return byStage;
+        });
+        stages.get(stage).record(Math.max(0, to.getMillis() - from.getMillis()));
+    }
+
+    private void forgetStartupsBefore(DateTime cutoff) {
+        startups.values().removeIf(startup -> startup.createdAt.isBefore(cutoff));
+    }
+
+    private static DateTime latest(DateTime first, DateTime second) {
+        if (first == null || (second != null && second.isAfter(first))) {
+            return second;
+        }
+        return first;
+    }
+
+    private static class Startup {
+        private final String profile;
+        private final DateTime requestedAt;
+        private final DateTime createdAt;
+        private DateTime scheduledAt;
+        private DateTime runningAt;
+        private DateTime registeredAt;
+        private DateTime boundAt;
+
+        Startup(String profile, DateTime requestedAt, DateTime createdAt) {
+            this.profile = profile;
+            this.requestedAt = requestedAt;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Latencies of one stage, counted in buckets of increasing size. Percentiles are the upper bound of the bucket they
+     * fall in, which is precise enough to tell a slow image pull from a slow node pool.
+     */
+    public static class Histogram {
+        static final long[] BUCKET_BOUNDS_MILLIS = {1000, 2000, 5000, 10000, 20000, 30000, 60000, 120000, 300000, 600000};
+
+        private final Stage stage;
+        private final long[] buckets = new long[BUCKET_BOUNDS_MILLIS.length + 1];
+        private long count;
+        private long totalMillis;
+        private long maxMillis;
+
+        Histogram(Stage stage) {
+            this.stage = stage;
+        }
+
+        synchronized void record(long millis) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            count++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        public String getStage() {
+            return stage.description();
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getAverage() {
+            return count == 0 ? 0 : totalMillis / count;
+        }
+
+        public synchronized long getMax() {
+            return maxMillis;
+        }
+
+        public long getP50() {
+            return percentile(50);
+        }
+
+        public long getP90() {
+            return percentile(90);
+        }
+
+        public long getP99() {
+            return percentile(99);
+        }
+
+        synchronized long percentile(int percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (count * percentile + 99) / 100;
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_BOUNDS_MILLIS.length; bucket++) {
+                seen += buckets[bucket];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS_MILLIS[bucket], maxMillis);
+                }
+            }
+            return maxMillis;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import io.fabric8.kubernetes.api.model.Pod;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import static cd.go.contrib.elasticagent.Constants.CONTAINER_POSTFIX;
+import static cd.go.contrib.elasticagent.Constants.POD_POSTFIX;
+import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Pod templates of profiles specified using pod YAML, compiled and parsed once per template content. Templates are
+ * keyed by the hash of their content, as profiles do not carry a usable name, and the least recently used ones are
+ * evicted. Every pod is a copy of the parsed template with fresh pod and container postfixes filled in.
+ */
+class PodTemplateCache {
+    static final int MAX_TEMPLATES = 100;
+    private static final String POD_POSTFIX_MARKER = "pod-postfix-6d0f3b1e8a0c4c6f";
+    private static final String CONTAINER_POSTFIX_MARKER = "container-postfix-2b9e7a4c5d1f4e08";
+
+    private final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+    private final Cache<String, PodTemplate> templates = CacheBuilder.newBuilder()
+            .maximumSize(MAX_TEMPLATES)
+            .recordStats()
+            .build();
+
+    Pod newPod(String profile, String podYaml) {
+        String hash = Hashing.sha256().hashString(podYaml, StandardCharsets.UTF_8).toString();
+        try {
+            return templates.get(hash, () -> compile(profile, podYaml)).newPod();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    CacheStats stats() {
+        return templates.stats();
+    }
+
+    private PodTemplate compile(String profile, String podYaml) {
+        LOG.debug(format("[pod-template] Compiling pod template of profile {0}.", profile));
+        Map<String, String> context = KubernetesInstanceFactory.getJinJavaContext();
+        context.put(POD_POSTFIX, POD_POSTFIX_MARKER);
+        context.put(CONTAINER_POSTFIX, CONTAINER_POSTFIX_MARKER);
+
+        StringWriter writer = new StringWriter();
+        Mustache mustache = new DefaultMustacheFactory().compile(new StringReader(podYaml), "templatePod");
+        mustache.execute(writer, context);
+
+        try {
+            return new PodTemplate(mapper.readTree(writer.toString()));
+        } catch (IOException e) {
+            //ignore error here, handle this inside validate profile!
+            LOG.error(e.getMessage());
+            return new PodTemplate(null);
+        }
+    }
+
+    private class PodTemplate {
+        private final JsonNode base;
+
+        PodTemplate(JsonNode base) {
+            this.base = base;
+        }
+
+        Pod newPod() {
+            if (base == null) {
+                return new Pod();
+            }
+
+            try {
+                JsonNode pod = fill(base, UUID.randomUUID().toString(), UUID.randomUUID().toString());
+                return mapper.treeToValue(pod, Pod.class);
+            } catch (IOException e) {
+                LOG.error(e.getMessage());
+                return new Pod();
+            }
+        }
+    }
+
+    // copies the node, replacing postfix markers in names and values
+    private static JsonNode fill(JsonNode node, String podPostfix, String containerPostfix) {
+        if (node.isTextual()) {
+            return TextNode.valueOf(fill(node.textValue(), podPostfix, containerPostfix));
+        }
+
+        if (node.isArray()) {
+            ArrayNode array = JsonNodeFactory.instance.arrayNode();
+            for (JsonNode element : node) {
+                array.add(fill(element, podPostfix, containerPostfix));
+            }
+            return array;
+        }
+
+        if (node.isObject()) {
+            ObjectNode object = JsonNodeFactory.instance.objectNode();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                object.set(fill(field.getKey(), podPostfix, containerPostfix), fill(field.getValue(), podPostfix, containerPostfix));
+            }
+            return object;
+        }
+
+        return node;
+    }
+
+    private static String fill(String value, String podPostfix, String containerPostfix) {
+        if (value == null || (!value.contains(POD_POSTFIX_MARKER) && !value.contains(CONTAINER_POSTFIX_MARKER))) {
+            return value;
+        }
+        return value.replace(POD_POSTFIX_MARKER, podPostfix).replace(CONTAINER_POSTFIX_MARKER, containerPostfix);
+    }
+}
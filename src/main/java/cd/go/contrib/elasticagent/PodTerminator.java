@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.text.MessageFormat.format;
+
+/**
+ * Terminates the pods of agents on a pool of plugin-owned workers, so that cleaning up hundreds of idle agents does
+ * not take one Kubernetes API round trip after another. The agents are split into at most
+ * {@link PluginSettings#getPodTerminationConcurrency()} batches, and each batch is terminated in bulk by
+ * {@link AgentInstances#terminateAll} on its own worker.
+ */
+public class PodTerminator {
+    private final AgentInstances<KubernetesInstance> agentInstances;
+    private final ThreadPoolExecutor executor;
+    Clock clock = Clock.DEFAULT;
+
+    public PodTerminator(AgentInstances<KubernetesInstance> agentInstances) {
+        this(agentInstances, new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kubernetes-pod-terminator");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    PodTerminator(AgentInstances<KubernetesInstance> agentInstances, ThreadPoolExecutor executor) {
+        this.agentInstances = agentInstances;
+        this.executor = executor;
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Terminates the pods of the agents and waits for all of them.
+     *
+     * @return the agents whose pods were terminated, in the given order
+     */
+    public List<Agent> terminate(Collection<Agent> agents, PluginSettings settings) {
+        if (agents.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int concurrency = Math.max(1, settings.getPodTerminationConcurrency());
+        resize(concurrency);
+        long startedAt = clock.now().getMillis();
+        List<List<String>> batches = batches(agents, concurrency);
+        List<CompletableFuture<List<String>>> terminations = new ArrayList<>();
+        for (List<String> batch : batches) {
+            terminations.add(CompletableFuture.supplyAsync(() -> terminateAll(batch, settings), executor));
+        }
+
+        Set<String> terminatedIds = new HashSet<>();
+        List<String> failed = new ArrayList<>();
+        for (int i = 0; i < batches.size(); i++) {
+            try {
+                terminatedIds.addAll(terminations.get(i).join());
+            } catch (CompletionException e) {
+                failed.addAll(batches.get(i));
+                LOG.error(format("[pod-termination] Failed to terminate pods of agents {0}.", batches.get(i)), e.getCause());
+            }
+        }
+
+        List<Agent> terminated = new ArrayList<>();
+        for (Agent agent : agents) {
+            if (terminatedIds.contains(agent.elasticAgentId())) {
+                terminated.add(agent);
+            } else if (!failed.contains(agent.elasticAgentId())) {
+                failed.add(agent.elasticAgentId());
+            }
+        }
+
+        LOG.info(format("[pod-termination] Terminated {0} of {1} pods in {2}ms.", terminated.size(), agents.size(), clock.now().getMillis() - startedAt));
+        if (!failed.isEmpty()) {
+            LOG.warn(format("[pod-termination] Pods of agents {0} could not be terminated, keeping the agents for the next server ping.", failed));
+        }
+        return terminated;
+    }
+
+    /**
+     * Removes the idle pods of every profile on a worker if the current plugin settings no longer create pods like the
+     * previous ones did, without making the caller wait for the Kubernetes API. Failures are only logged, since the
+     * idle pods can still run jobs.
+     */
+    public void drainIdleInstancesCreatedWith(PluginSettings previous, PluginRequest pluginRequest) {
+        if (previous == null) {
+            LOG.debug("[pod-termination] Plugin settings were not looked up before they changed, keeping idle pods.");
+            return;
+        }
+
+        try {
+            executor.execute(() -> drainIdleInstances(previous, pluginRequest));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("[pod-termination] Pod termination is stopped, not removing idle pods created with the previous plugin settings.");
+        }
+    }
+
+    private void drainIdleInstances(PluginSettings previous, PluginRequest pluginRequest) {
+        try {
+            PluginSettings settings = pluginRequest.getPluginSettings();
+            if (settings.createsPodsLike(previous)) {
+                LOG.debug("[pod-termination] Plugin settings changed without affecting how pods are created, keeping idle pods.");
+                return;
+            }
+            int drained = agentInstances.drainIdleInstances(settings, pluginRequest);
+            LOG.info(format("[pod-termination] Removed {0} idle pods created with the previous plugin settings.", drained));
+        } catch (Exception e) {
+            LOG.warn("[pod-termination] Failed to remove idle pods created with the previous plugin settings.", e);
+        }
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private List<String> terminateAll(List<String> agentIds, PluginSettings settings) {
+        try {
+            return agentInstances.terminateAll(agentIds, settings);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static List<List<String>> batches(Collection<Agent> agents, int count) {
+        int batchSize = (agents.size() + count - 1) / count;
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        for (Agent agent : agents) {
+            batch.add(agent.elasticAgentId());
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private synchronized void resize(int workers) {
+        if (workers == executor.getCorePoolSize()) {
+            return;
+        }
+        if (workers > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(workers);
+            executor.setCorePoolSize(workers);
+        } else {
+            executor.setCorePoolSize(workers);
+            executor.setMaximumPoolSize(workers);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of pending, running and terminating elastic agent pods per profile, maintained as pods change state so that
+ * admission checks do not have to walk all instances. Updates must be serialized by the caller; reads need no lock.
+ */
+class ProfilePodCounters {
+    private volatile ConcurrentMap<String, Counts> countsByProfile = new ConcurrentHashMap<>();
+    private final Map<String, String> terminatingPods = new HashMap<>();
+
+    void reset(Collection<KubernetesInstance> instances, Map<String, String> terminating) {
+        ConcurrentMap<String, Counts> counts = new ConcurrentHashMap<>();
+        for (KubernetesInstance instance : instances) {
+            countsFor(counts, instance.profile()).of(instance).incrementAndGet();
+        }
+        for (String profile : terminating.values()) {
+            countsFor(counts, profile).terminating.incrementAndGet();
+        }
+
+        terminatingPods.clear();
+        terminatingPods.putAll(terminating);
+        countsByProfile = counts;
+    }
+
+    void added(KubernetesInstance instance, KubernetesInstance replaced) {
+        removed(replaced);
+        countsFor(countsByProfile, instance.profile()).of(instance).incrementAndGet();
+    }
+
+    void removed(KubernetesInstance instance) {
+        if (instance != null) {
+            countsFor(countsByProfile, instance.profile()).of(instance).decrementAndGet();
+        }
+    }
+
+    void terminating(String name, String profile) {
+        if (!terminatingPods.containsKey(name)) {
+            terminatingPods.put(name, profile);
+            countsFor(countsByProfile, profile).terminating.incrementAndGet();
+        }
+    }
+
+    void terminated(String name) {
+        if (terminatingPods.containsKey(name)) {
+            countsFor(countsByProfile, terminatingPods.remove(name)).terminating.decrementAndGet();
+        }
+    }
+
+    int pending(String profile) {
+        Counts counts = countsByProfile.get(key(profile));
+        return counts == null ? 0 : counts.pending.get();
+    }
+
+    int running(String profile) {
+        Counts counts = countsByProfile.get(key(profile));
+        return counts == null ? 0 : counts.running.get();
+    }
+
+    int terminating(String profile) {
+        Counts counts = countsByProfile.get(key(profile));
+        return counts == null ? 0 : counts.terminating.get();
+    }
+
+    private static Counts countsFor(ConcurrentMap<String, Counts> counts, String profile) {
+        return counts.computeIfAbsent(key(profile), p -> new Counts());
+    }
+
+    private static String key(String profile) {
+        return profile == null ? "" : profile;
+    }
+
+    private static class Counts {
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger terminating = new AtomicInteger();
+
+        AtomicInteger of(KubernetesInstance instance) {
+            return instance.isPending() ? pending : running;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Records, per request type, how old the cached pod information was when a request read it and how often the
+ * staleness budget forced pods to be listed again. Used to tune {@link PluginSettings#getMaxStaleness(Request)}.
+ */
+class RefreshAgeMetrics {
+    private final ConcurrentMap<Request, Stats> stats = new ConcurrentHashMap<>();
+
+    void record(Request request, long ageMillis, boolean refreshed) {
+        stats.computeIfAbsent(request, r -> new Stats()).record(ageMillis, refreshed);
+    }
+
+    Stats get(Request request) {
+        return stats.get(request);
+    }
+
+    String summary() {
+        StringBuilder summary = new StringBuilder("[refresh-metrics]");
+        for (Map.Entry<Request, Stats> entry : stats.entrySet()) {
+            summary.append(' ').append(entry.getKey().name()).append('=').append(entry.getValue());
+        }
+        return summary.toString();
+    }
+
+    static class Stats {
+        private final AtomicLong reads = new AtomicLong();
+        private final AtomicLong refreshes = new AtomicLong();
+        private final AtomicLong agedReads = new AtomicLong();
+        private final AtomicLong totalAgeMillis = new AtomicLong();
+        private final LongAccumulator maxAgeMillis = new LongAccumulator(Math::max, 0);
+
+        void record(long ageMillis, boolean refreshed) {
+            reads.incrementAndGet();
+            if (refreshed) {
+                refreshes.incrementAndGet();
+            }
+            if (ageMillis >= 0) {
+                agedReads.incrementAndGet();
+                totalAgeMillis.addAndGet(ageMillis);
+                maxAgeMillis.accumulate(ageMillis);
+            }
+        }
+
+        long reads() {
+            return reads.get();
+        }
+
+        long refreshes() {
+            return refreshes.get();
+        }
+
+        long averageAgeMillis() {
+            long count = agedReads.get();
+            return count == 0 ? 0 : totalAgeMillis.get() / count;
+        }
+
+        long maxAgeMillis() {
+            return maxAgeMillis.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{reads: %d, refreshes: %d, avg age: %dms, max age: %dms}", reads(), refreshes(), averageAgeMillis(), maxAgeMillis());
+        }
+    }
+}
@@ -16,9 +16,14 @@
 
 package cd.go.contrib.elasticagent.executors;
 
+import cd.go.contrib.elasticagent.AgentInstances;
+import cd.go.contrib.elasticagent.CircuitOpenException;
 import cd.go.contrib.elasticagent.Constants;
+import cd.go.contrib.elasticagent.KubernetesApiPolicy;
 import cd.go.contrib.elasticagent.KubernetesClientFactory;
+import cd.go.contrib.elasticagent.KubernetesInstance;
 import cd.go.contrib.elasticagent.PluginRequest;
+import cd.go.contrib.elasticagent.PluginSettings;
 import cd.go.contrib.elasticagent.builders.PluginStatusReportViewBuilder;
 import cd.go.contrib.elasticagent.model.JobIdentifier;
 import cd.go.contrib.elasticagent.model.reports.agent.KubernetesElasticAgent;
@@ -32,6 +37,7 @@ import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.Collections;
 import java.util.List;
 
 import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
@@ -40,34 +46,44 @@ import static java.text.MessageFormat.format;
 public class AgentStatusReportExecutor {
     private final AgentStatusReportRequest request;
     private final PluginRequest pluginRequest;
+    private final AgentInstances<KubernetesInstance> agentInstances;
     private final KubernetesClientFactory factory;
     private final PluginStatusReportViewBuilder statusReportViewBuilder;
+    private final KubernetesApiPolicy apiPolicy;
 
-    public AgentStatusReportExecutor(AgentStatusReportRequest request, PluginRequest pluginRequest) {
-        this(request, pluginRequest, KubernetesClientFactory.instance(), PluginStatusReportViewBuilder.instance());
+    public AgentStatusReportExecutor(AgentStatusReportRequest request, PluginRequest pluginRequest, AgentInstances<KubernetesInstance> agentInstances) {
+        this(request, pluginRequest, agentInstances, KubernetesClientFactory.instance(), PluginStatusReportViewBuilder.instance());
     }
 
-    AgentStatusReportExecutor(AgentStatusReportRequest request, PluginRequest pluginRequest, KubernetesClientFactory kubernetesClientFactory, PluginStatusReportViewBuilder builder) {
+    AgentStatusReportExecutor(AgentStatusReportRequest request, PluginRequest pluginRequest, AgentInstances<KubernetesInstance> agentInstances, KubernetesClientFactory kubernetesClientFactory, PluginStatusReportViewBuilder builder) {
+        this(request, pluginRequest, agentInstances, kubernetesClientFactory, builder, KubernetesApiPolicy.instance());
+    }
+
+    AgentStatusReportExecutor(AgentStatusReportRequest request, PluginRequest pluginRequest, AgentInstances<KubernetesInstance> agentInstances, KubernetesClientFactory kubernetesClientFactory, PluginStatusReportViewBuilder builder, KubernetesApiPolicy apiPolicy) {
         this.request = request;
         this.pluginRequest = pluginRequest;
+        this.agentInstances = agentInstances;
         this.factory = kubernetesClientFactory;
         this.statusReportViewBuilder = builder;
+        this.apiPolicy = apiPolicy;
     }
 
     public GoPluginApiResponse execute() {
         String elasticAgentId = request.getElasticAgentId();
         JobIdentifier jobIdentifier = request.getJobIdentifier();
         LOG.info(format("[status-report] Generating status report for agent: {0} with job: {1}", elasticAgentId, jobIdentifier));
-        KubernetesClient client = factory.client(pluginRequest.getPluginSettings());
+        PluginSettings settings = pluginRequest.getPluginSettings();
 
         try {
             Pod pod;
             if (StringUtils.isNotBlank(elasticAgentId)) {
-                pod = findPodUsingElasticAgentId(elasticAgentId, client);
+                pod = findPodUsingElasticAgentId(elasticAgentId, settings);
             } else {
-                pod = findPodUsingJobIdentifier(jobIdentifier, client);
+                pod = findPodUsingJobIdentifier(jobIdentifier, settings);
             }
 
+            String namespace = pod.getMetadata().getNamespace();
+            KubernetesClient client = factory.client(settings, StringUtils.isBlank(namespace) ? settings.getNamespace() : namespace);
             KubernetesElasticAgent elasticAgent = KubernetesElasticAgent.fromPod(client, pod, jobIdentifier);
 
             final String statusReportView = statusReportViewBuilder.build(statusReportViewBuilder.getTemplate("agent-status-report.template.ftlh"), elasticAgent);
@@ -81,24 +97,43 @@ public class AgentStatusReportExecutor {
         }
     }
 
-    private Pod findPodUsingJobIdentifier(JobIdentifier jobIdentifier, KubernetesClient client) {
+    private Pod findPodUsingJobIdentifier(JobIdentifier jobIdentifier, PluginSettings settings) {
+        KubernetesInstance instance = agentInstances.findByJobId(jobIdentifier.getJobId());
+        if (instance != null) {
+            return findPodUsingElasticAgentId(instance.name(), settings);
+        }
+
         try {
-            return client.pods()
-                    .withLabel(Constants.JOB_ID_LABEL_KEY, String.valueOf(jobIdentifier.getJobId()))
-                    .list().getItems().get(0);
+            for (String namespace : settings.getNamespaces()) {
+                KubernetesClient client = factory.client(settings, namespace);
+                List<Pod> pods = apiPolicy.call("list pods of job " + jobIdentifier.getJobId(), () -> client.pods()
+                        .withLabel(Constants.JOB_ID_LABEL_KEY, String.valueOf(jobIdentifier.getJobId()))
+                        .list().getItems());
+                if (!pods.isEmpty()) {
+                    return pods.get(0);
+                }
+            }
+        } catch (CircuitOpenException e) {
+            throw e;
         } catch (Exception e) {
-            throw StatusReportGenerationException.noRunningPod(jobIdentifier);
+            LOG.debug(format("[status-report] Failed to find pod of job {0}.", jobIdentifier), e);
         }
+        throw StatusReportGenerationException.noRunningPod(jobIdentifier);
     }
 
-    private Pod findPodUsingElasticAgentId(String elasticAgentId, KubernetesClient client) {
-        List<Pod> pods = client.pods().list().getItems();
-        for (Pod pod : pods) {
-            if (pod.getMetadata().getName().equals(elasticAgentId)) {
+    /**
+     * Looks the pod up in its namespace when the agent is known to the plugin, and in every namespace otherwise.
+     */
+    private Pod findPodUsingElasticAgentId(String elasticAgentId, PluginSettings settings) {
+        String knownNamespace = agentInstances.namespaceOf(elasticAgentId);
+        List<String> namespaces = knownNamespace != null ? Collections.singletonList(knownNamespace) : settings.getNamespaces();
+        for (String namespace : namespaces) {
+            KubernetesClient client = factory.client(settings, namespace);
+            Pod pod = apiPolicy.call("get pod " + elasticAgentId, () -> client.pods().withName(elasticAgentId).get());
+            if (pod != null) {
                 return pod;
             }
         }
-
         throw StatusReportGenerationException.noRunningPod(elasticAgentId);
     }
 }
@@ -19,6 +19,7 @@ package cd.go.contrib.elasticagent.executors;
 import cd.go.contrib.elasticagent.AgentInstances;
 import cd.go.contrib.elasticagent.KubernetesInstance;
 import cd.go.contrib.elasticagent.PluginRequest;
+import cd.go.contrib.elasticagent.PodCreationQueue;
 import cd.go.contrib.elasticagent.RequestExecutor;
 import cd.go.contrib.elasticagent.requests.CreateAgentRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
@@ -29,17 +30,35 @@ import static java.text.MessageFormat.format;
 
 public class CreateAgentRequestExecutor implements RequestExecutor {
     private final AgentInstances<KubernetesInstance> agentInstances;
+    private final PodCreationQueue podCreationQueue;
     private final PluginRequest pluginRequest;
     private final CreateAgentRequest request;
 
     public CreateAgentRequestExecutor(CreateAgentRequest request, AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest) {
+        this(request, agentInstances, null, pluginRequest);
+    }
+
+    public CreateAgentRequestExecutor(CreateAgentRequest request, PodCreationQueue podCreationQueue, PluginRequest pluginRequest) {
+        this(request, null, podCreationQueue, pluginRequest);
+    }
+
+    private CreateAgentRequestExecutor(CreateAgentRequest request, AgentInstances<KubernetesInstance> agentInstances, PodCreationQueue podCreationQueue, PluginRequest pluginRequest) {
         this.request = request;
         this.agentInstances = agentInstances;
+        this.podCreationQueue = podCreationQueue;
         this.pluginRequest = pluginRequest;
     }
 
     @Override
     public GoPluginApiResponse execute() throws Exception {
+        if (podCreationQueue != null) {
+            LOG.debug(format("[Create Agent] queueing creation of elastic agent for profile {0}", request.properties()));
+            if (!podCreationQueue.submit(request, pluginRequest)) {
+                return DefaultGoPluginApiResponse.error(format("Pod creation queue is full, dropped agent creation for job {0}.", request.jobIdentifier()));
+            }
+            return new DefaultGoPluginApiResponse(200);
+        }
+
         LOG.debug(format("[Create Agent] creating elastic agent for profile {0}", request.properties()));
         agentInstances.create(request, pluginRequest.getPluginSettings(), pluginRequest);
         return new DefaultGoPluginApiResponse(200);
@@ -36,6 +36,20 @@ public class GetPluginConfigurationExecutor implements RequestExecutor {
     public static final Field SECURITY_TOKEN = new NonBlankField("security_token", "Security token", true, "6");
     public static final Field CLUSTER_CA_CERT = new Field("kubernetes_cluster_ca_cert", "Cluster ca certificate", null, false, true, "7");
     public static final Field USE_PROFILE_PENDING_PODS_COUNT = new Field("use_profile_pending_pods_count", "Use Profile pending pods count", "true", true, false, "4");
+    public static final Field MIN_REFRESH_INTERVAL = new NonNegativeNumberField("min_refresh_interval", "Minimum pod refresh interval (in seconds)", "5", false, false, "8");
+    public static final Field CREATE_AGENT_MAX_STALENESS = new NonNegativeNumberField("create_agent_max_staleness", "Pod information staleness for create agent (in seconds)", "5", false, false, "9");
+    public static final Field SHOULD_ASSIGN_WORK_MAX_STALENESS = new NonNegativeNumberField("should_assign_work_max_staleness", "Pod information staleness for should assign work (in seconds)", "60", false, false, "10");
+    public static final Field SERVER_PING_MAX_STALENESS = new NonNegativeNumberField("server_ping_max_staleness", "Pod information staleness for server ping (in seconds)", "30", false, false, "11");
+    public static final Field STATUS_REPORT_MAX_STALENESS = new NonNegativeNumberField("status_report_max_staleness", "Pod information staleness for status reports (in seconds)", "10", false, false, "12");
+    public static final Field BACKGROUND_REFRESH_INTERVAL = new PositiveNumberField("background_refresh_interval", "Background pod refresh interval (in seconds)", "30", false, false, "13");
+    public static final Field BACKGROUND_REFRESH_JITTER = new NonNegativeNumberField("background_refresh_jitter", "Background pod refresh jitter (in seconds)", "5", false, false, "14");
+    public static final Field POD_CREATION_WORKERS = new PositiveNumberField("pod_creation_workers", "Pod creation workers", "4", false, false, "15");
+    public static final Field POD_CREATION_QUEUE_SIZE = new PositiveNumberField("pod_creation_queue_size", "Pod creation queue size", "500", false, false, "16");
+    public static final Field POD_CREATION_RATE = new NonNegativeNumberField("pod_creation_rate", "Pod creation rate (pods per second)", "0", false, false, "17");
+    public static final Field POD_CREATION_BURST = new PositiveNumberField("pod_creation_burst", "Pod creation burst", "10", false, false, "18");
+    public static final Field ADAPTIVE_MAX_PENDING_PODS = new NonNegativeNumberField("adaptive_max_pending_pods", "Adaptive maximum pending pods", "0", false, false, "19");
+    public static final Field PENDING_LATENCY_TARGET = new PositiveNumberField("pending_latency_target", "Pod scheduling latency target (in seconds)", "60", false, false, "20");
+    public static final Field POD_TERMINATION_CONCURRENCY = new PositiveNumberField("pod_termination_concurrency", "Pod termination concurrency", "10", false, false, "21");
 
     static {
         FIELDS.put(GO_SERVER_URL.key(), GO_SERVER_URL);
@@ -46,6 +60,20 @@ public class GetPluginConfigurationExecutor implements RequestExecutor {
         FIELDS.put(SECURITY_TOKEN.key(), SECURITY_TOKEN);
         FIELDS.put(NAMESPACE.key(), NAMESPACE);
         FIELDS.put(USE_PROFILE_PENDING_PODS_COUNT.key(), NAMESPACE);
+        FIELDS.put(MIN_REFRESH_INTERVAL.key(), MIN_REFRESH_INTERVAL);
+        FIELDS.put(CREATE_AGENT_MAX_STALENESS.key(), CREATE_AGENT_MAX_STALENESS);
+        FIELDS.put(SHOULD_ASSIGN_WORK_MAX_STALENESS.key(), SHOULD_ASSIGN_WORK_MAX_STALENESS);
+        FIELDS.put(SERVER_PING_MAX_STALENESS.key(), SERVER_PING_MAX_STALENESS);
+        FIELDS.put(STATUS_REPORT_MAX_STALENESS.key(), STATUS_REPORT_MAX_STALENESS);
+        FIELDS.put(BACKGROUND_REFRESH_INTERVAL.key(), BACKGROUND_REFRESH_INTERVAL);
+        FIELDS.put(BACKGROUND_REFRESH_JITTER.key(), BACKGROUND_REFRESH_JITTER);
+        FIELDS.put(POD_CREATION_WORKERS.key(), POD_CREATION_WORKERS);
+        FIELDS.put(POD_CREATION_QUEUE_SIZE.key(), POD_CREATION_QUEUE_SIZE);
+        FIELDS.put(POD_CREATION_RATE.key(), POD_CREATION_RATE);
+        FIELDS.put(POD_CREATION_BURST.key(), POD_CREATION_BURST);
+        FIELDS.put(ADAPTIVE_MAX_PENDING_PODS.key(), ADAPTIVE_MAX_PENDING_PODS);
+        FIELDS.put(PENDING_LATENCY_TARGET.key(), PENDING_LATENCY_TARGET);
+        FIELDS.put(POD_TERMINATION_CONCURRENCY.key(), POD_TERMINATION_CONCURRENCY);
     }
 
     public GoPluginApiResponse execute() {
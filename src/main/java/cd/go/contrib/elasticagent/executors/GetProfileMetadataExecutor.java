@@ -36,6 +36,11 @@ public class GetProfileMetadataExecutor implements RequestExecutor {
     public static final Metadata SPECIFIED_USING_POD_CONFIGURATION = new Metadata("SpecifiedUsingPodConfiguration", true, false);
     public static final Metadata PRIVILEGED = new Metadata("Privileged", false, false);
     public static final Metadata MAX_PENDING_PODS_COUNT = new Metadata("MaxPendingPods", false, false);
+    public static final Metadata WARM_POOL_SIZE = new Metadata("WarmPoolSize", false, false);
+    public static final Metadata POD_CREATION_RATE = new Metadata("PodCreationRate", false, false);
+    public static final Metadata POD_CREATION_BURST = new Metadata("PodCreationBurst", false, false);
+    public static final Metadata MAX_JOBS_PER_POD = new Metadata("MaxJobsPerPod", false, false);
+    public static final Metadata IDLE_AGENT_TIMEOUT = new Metadata("IdleAgentTimeout", false, false);
     public static final List<Metadata> FIELDS = new ArrayList<>();
 
     static {
@@ -47,6 +52,11 @@ public class GetProfileMetadataExecutor implements RequestExecutor {
         FIELDS.add(SPECIFIED_USING_POD_CONFIGURATION);
         FIELDS.add(PRIVILEGED);
         FIELDS.add(MAX_PENDING_PODS_COUNT);
+        FIELDS.add(WARM_POOL_SIZE);
+        FIELDS.add(POD_CREATION_RATE);
+        FIELDS.add(POD_CREATION_BURST);
+        FIELDS.add(MAX_JOBS_PER_POD);
+        FIELDS.add(IDLE_AGENT_TIMEOUT);
     }
 
     @Override
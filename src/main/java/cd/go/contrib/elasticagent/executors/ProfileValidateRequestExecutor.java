@@ -77,6 +77,11 @@ public class ProfileValidateRequestExecutor implements RequestExecutor {
         } else {
             validateConfigPropertiesYaml(new HashMap<>(request.getProperties()), result);
         }
+        validateNonNegativeNumber(new HashMap<>(request.getProperties()), WARM_POOL_SIZE.getKey(), "Warm pool size", result);
+        validateNonNegativeNumber(new HashMap<>(request.getProperties()), POD_CREATION_RATE.getKey(), "Pod creation rate", result);
+        validateNonNegativeNumber(new HashMap<>(request.getProperties()), POD_CREATION_BURST.getKey(), "Pod creation burst", result);
+        validateNonNegativeNumber(new HashMap<>(request.getProperties()), MAX_JOBS_PER_POD.getKey(), "Maximum jobs per pod", result);
+        validateNonNegativeNumber(new HashMap<>(request.getProperties()), IDLE_AGENT_TIMEOUT.getKey(), "Idle agent timeout", result);
 
         return DefaultGoPluginApiResponse.success(GSON.toJson(result));
     }
@@ -104,6 +109,22 @@ public class ProfileValidateRequestExecutor implements RequestExecutor {
         }
     }
 
+    private void validateNonNegativeNumber(HashMap<String, String> properties, String key, String name, ArrayList<Map<String, String>> result) {
+        String value = properties.get(key);
+        if (StringUtils.isBlank(value)) {
+            return;
+        }
+
+        try {
+            if (Integer.parseInt(value) >= 0) {
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        addError(result, key, name + " must be a non-negative number.");
+    }
+
     private void addNotBlankError(ArrayList<Map<String, String>> result, String key, String value) {
         addError(result, key, format("{0} must not be blank.", value));
     }
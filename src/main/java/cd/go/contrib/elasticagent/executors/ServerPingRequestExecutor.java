@@ -29,10 +29,22 @@ public class ServerPingRequestExecutor implements RequestExecutor {
 
     private final AgentInstances<KubernetesInstance> agentInstances;
     private final PluginRequest pluginRequest;
+    private final PodTerminator podTerminator;
+    private final PodStartupLatencies startupLatencies;
 
     public ServerPingRequestExecutor(AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest) {
+        this(agentInstances, pluginRequest, new PodTerminator(agentInstances));
+    }
+
+    public ServerPingRequestExecutor(AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest, PodTerminator podTerminator) {
+        this(agentInstances, pluginRequest, podTerminator, PodStartupLatencies.instance());
+    }
+
+    ServerPingRequestExecutor(AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest, PodTerminator podTerminator, PodStartupLatencies startupLatencies) {
         this.agentInstances = agentInstances;
         this.pluginRequest = pluginRequest;
+        this.podTerminator = podTerminator;
+        this.startupLatencies = startupLatencies;
     }
 
     @Override
@@ -43,6 +55,7 @@ public class ServerPingRequestExecutor implements RequestExecutor {
         Agents missingAgents = new Agents();
 
         for (Agent agent : allAgents.agents()) {
+            startupLatencies.registered(agent.elasticAgentId());
             if (agentInstances.find(agent.elasticAgentId()) == null) {
                 LOG.warn(format("Was expecting a container with name {0}, but it was missing!", agent.elasticAgentId()));
                 missingAgents.add(agent);
@@ -54,9 +67,9 @@ public class ServerPingRequestExecutor implements RequestExecutor {
         LOG.debug(format("[Server Ping] Agent Created After Timeout:{0}", agentsToDisable.agentIds()));
         agentsToDisable.addAll(missingAgents);
 
-        disableIdleAgents(agentsToDisable);
+        Collection<Agent> disabled = disableIdleAgents(agentsToDisable);
 
-        allAgents = pluginRequest.listAgents();
+        allAgents = allAgents.withDisabled(disabled);
         terminateDisabledAgents(allAgents, pluginSettings);
 
         agentInstances.terminateUnregisteredInstances(pluginSettings, allAgents);
@@ -64,18 +77,17 @@ public class ServerPingRequestExecutor implements RequestExecutor {
         return DefaultGoPluginApiResponse.success("");
     }
 
-    private void disableIdleAgents(Agents agents) throws ServerRequestFailedException {
-        pluginRequest.disableAgents(agents.findInstancesToDisable());
+    private Collection<Agent> disableIdleAgents(Agents agents) throws ServerRequestFailedException {
+        Collection<Agent> toDisable = agents.findInstancesToDisable();
+        pluginRequest.disableAgents(toDisable);
+        return toDisable;
     }
 
     private void terminateDisabledAgents(Agents agents, PluginSettings pluginSettings) throws Exception {
         Collection<Agent> toBeDeleted = agents.findInstancesToTerminate();
+        Collection<Agent> terminated = podTerminator.terminate(toBeDeleted, pluginSettings);
 
-        for (Agent agent : toBeDeleted) {
-            agentInstances.terminate(agent.elasticAgentId(), pluginSettings);
-        }
-
-        pluginRequest.deleteAgents(toBeDeleted);
+        pluginRequest.deleteAgents(terminated);
     }
 
 }
@@ -20,6 +20,8 @@ package cd.go.contrib.elasticagent.executors;
 import cd.go.contrib.elasticagent.Agent;
 import cd.go.contrib.elasticagent.AgentInstances;
 import cd.go.contrib.elasticagent.KubernetesInstance;
+import cd.go.contrib.elasticagent.PluginRequest;
+import cd.go.contrib.elasticagent.PodStartupLatencies;
 import cd.go.contrib.elasticagent.RequestExecutor;
 import cd.go.contrib.elasticagent.requests.ShouldAssignWorkRequest;
 import com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse;
@@ -32,20 +34,36 @@ import static org.apache.commons.lang3.StringUtils.stripToEmpty;
 public class ShouldAssignWorkRequestExecutor implements RequestExecutor {
     private final AgentInstances<KubernetesInstance> agentInstances;
     private final ShouldAssignWorkRequest request;
+    private final PluginRequest pluginRequest;
+    private final PodStartupLatencies startupLatencies;
 
     public ShouldAssignWorkRequestExecutor(ShouldAssignWorkRequest request,
             AgentInstances<KubernetesInstance> agentInstances) {
+        this(request, agentInstances, null);
+    }
+
+    public ShouldAssignWorkRequestExecutor(ShouldAssignWorkRequest request,
+            AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest) {
+        this(request, agentInstances, pluginRequest, PodStartupLatencies.instance());
+    }
+
+    ShouldAssignWorkRequestExecutor(ShouldAssignWorkRequest request,
+            AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest, PodStartupLatencies startupLatencies) {
         this.request = request;
         this.agentInstances = agentInstances;
+        this.pluginRequest = pluginRequest;
+        this.startupLatencies = startupLatencies;
     }
 
     @Override
-    public GoPluginApiResponse execute() {
+    public GoPluginApiResponse execute() throws Exception {
         KubernetesInstance pod = agentInstances.find(request.agent().elasticAgentId());
 
         if (pod == null) {
             return DefaultGoPluginApiResponse.success("false");
         }
+        // the server only asks about agents registered with it, which may be before the next server ping lists them
+        startupLatencies.registered(pod.name());
 //        Agent.AgentState agentState = request.agent().agentState();
 //        boolean isAgentIdle = request.agent().configState().equals(Agent.ConfigState.Enabled)
 //                && (agentState.equals(Agent.AgentState.Idle) || agentState.equals(Agent.AgentState.Missing)
@@ -54,9 +72,22 @@ public class ShouldAssignWorkRequestExecutor implements RequestExecutor {
 //        boolean isRunningAgentIsHavingCorrectProfile = stripToEmpty(pod.profile())
 //                .equals(request.properties().getOrDefault("Profile", "Unknown"));
 
+        if (pod.isStandby()) {
+            LOG.debug(format("[should-assign-work] Agent {0} is a standby pod waiting to be bound to a job, not assigning job {1}.",
+                    pod.name(), request.jobIdentifier()));
+            return DefaultGoPluginApiResponse.success("false");
+        }
+
         if (request.jobIdentifier().getJobId().equals(pod.jobId())) {
             LOG.debug(format("[should-assign-work] Job with identifier {0} can be assigned to an agent {1}.",
                     request.jobIdentifier(), pod.name()));
+            startupLatencies.assigned(pod.name());
+            return DefaultGoPluginApiResponse.success("true");
+        }
+
+        if (pluginRequest != null && agentInstances.reuse(pod.name(), request, pluginRequest.getPluginSettings(), pluginRequest) != null) {
+            LOG.debug(format("[should-assign-work] Job with identifier {0} is assigned to reused agent {1}.",
+                    request.jobIdentifier(), pod.name()));
             return DefaultGoPluginApiResponse.success("true");
         }
 
@@ -16,8 +16,13 @@
 
 package cd.go.contrib.elasticagent.executors;
 
+import cd.go.contrib.elasticagent.CircuitOpenException;
+import cd.go.contrib.elasticagent.InventoryRefresher;
+import cd.go.contrib.elasticagent.KubernetesApiPolicy;
 import cd.go.contrib.elasticagent.KubernetesClientFactory;
 import cd.go.contrib.elasticagent.PluginRequest;
+import cd.go.contrib.elasticagent.PluginSettings;
+import cd.go.contrib.elasticagent.PodStartupLatencies;
 import cd.go.contrib.elasticagent.builders.PluginStatusReportViewBuilder;
 import cd.go.contrib.elasticagent.model.KubernetesCluster;
 import cd.go.contrib.elasticagent.reports.StatusReportGenerationErrorHandler;
@@ -27,29 +32,62 @@ import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import freemarker.template.Template;
 import io.fabric8.kubernetes.client.KubernetesClient;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.text.MessageFormat.format;
 
 public class StatusReportExecutor {
     private final PluginRequest pluginRequest;
+    private final InventoryRefresher inventoryRefresher;
     private final KubernetesClientFactory factory;
     private final PluginStatusReportViewBuilder statusReportViewBuilder;
+    private final KubernetesApiPolicy apiPolicy;
+    private final PodStartupLatencies startupLatencies;
+    private final AtomicReference<KubernetesCluster> lastKnownCluster;
 
-
-    public StatusReportExecutor(PluginRequest pluginRequest) {
-        this(pluginRequest, KubernetesClientFactory.instance(), PluginStatusReportViewBuilder.instance());
+    /**
+     * @param lastKnownCluster cluster information of the last successful report, kept across reports by the caller
+     */
+    public StatusReportExecutor(PluginRequest pluginRequest, InventoryRefresher inventoryRefresher, AtomicReference<KubernetesCluster> lastKnownCluster) {
+        this(pluginRequest, inventoryRefresher, KubernetesClientFactory.instance(), PluginStatusReportViewBuilder.instance(),
+                KubernetesApiPolicy.instance(), PodStartupLatencies.instance(), lastKnownCluster);
     }
 
     public StatusReportExecutor(PluginRequest pluginRequest, KubernetesClientFactory factory, PluginStatusReportViewBuilder statusReportViewBuilder) {
+        this(pluginRequest, null, factory, statusReportViewBuilder);
+    }
+
+    public StatusReportExecutor(PluginRequest pluginRequest, InventoryRefresher inventoryRefresher, KubernetesClientFactory factory, PluginStatusReportViewBuilder statusReportViewBuilder) {
+        this(pluginRequest, inventoryRefresher, factory, statusReportViewBuilder, KubernetesApiPolicy.instance(), PodStartupLatencies.instance(), new AtomicReference<>());
+    }
+
+    StatusReportExecutor(PluginRequest pluginRequest, InventoryRefresher inventoryRefresher, KubernetesClientFactory factory, PluginStatusReportViewBuilder statusReportViewBuilder,
+                         KubernetesApiPolicy apiPolicy, PodStartupLatencies startupLatencies, AtomicReference<KubernetesCluster> lastKnownCluster) {
         this.pluginRequest = pluginRequest;
+        this.inventoryRefresher = inventoryRefresher;
         this.factory = factory;
         this.statusReportViewBuilder = statusReportViewBuilder;
+        this.apiPolicy = apiPolicy;
+        this.startupLatencies = startupLatencies;
+        this.lastKnownCluster = lastKnownCluster;
     }
 
     public GoPluginApiResponse execute() {
         try {
             LOG.info("[status-report] Generating status report.");
-            KubernetesClient client = factory.client(pluginRequest.getPluginSettings());
-            final KubernetesCluster kubernetesCluster = new KubernetesCluster(client);
+            PluginSettings settings = pluginRequest.getPluginSettings();
+            KubernetesClient client = factory.client(settings);
+            List<KubernetesClient> namespaceClients = new ArrayList<>();
+            for (String namespace : settings.getNamespaces()) {
+                if (!namespace.equals(settings.getNamespace())) {
+                    namespaceClients.add(factory.client(settings, namespace));
+                }
+            }
+            final KubernetesCluster kubernetesCluster = clusterFrom(client, namespaceClients)
+                    .withStatus(inventoryRefresher == null ? null : inventoryRefresher.status(), startupLatencies.report());
             final Template template = statusReportViewBuilder.getTemplate("status-report.template.ftlh");
             final String statusReportView = statusReportViewBuilder.build(template, kubernetesCluster);
 
@@ -61,4 +99,19 @@ public class StatusReportExecutor {
             return StatusReportGenerationErrorHandler.handle(statusReportViewBuilder, e);
         }
     }
+
+    private KubernetesCluster clusterFrom(KubernetesClient client, List<KubernetesClient> namespaceClients) {
+        try {
+            KubernetesCluster cluster = new KubernetesCluster(client, namespaceClients, apiPolicy);
+            lastKnownCluster.set(cluster);
+            return cluster;
+        } catch (CircuitOpenException e) {
+            KubernetesCluster cluster = lastKnownCluster.get();
+            if (cluster == null) {
+                throw e;
+            }
+            LOG.warn(format("[status-report] {0} Reporting the last known cluster information.", e.getMessage()));
+            return cluster;
+        }
+    }
 }
\ No newline at end of file
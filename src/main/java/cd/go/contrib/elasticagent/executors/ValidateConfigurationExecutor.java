@@ -74,16 +74,17 @@ public class ValidateConfigurationExecutor implements RequestExecutor {
     }
 
     private void validateNamespaceExistence() {
-        final String namespace = validatePluginSettingsRequest.getPluginSettingsMap().getNamespace();
+        final List<String> namespaces = validatePluginSettingsRequest.getPluginSettingsMap().getNamespaces();
         try {
             final KubernetesClient client = factory.client(validatePluginSettingsRequest.getPluginSettingsMap());
             final List<Namespace> namespaceList = client.namespaces().list().getItems();
 
-            if (namespaceList.stream().anyMatch(n -> n.getMetadata().getName().equals(namespace))) {
-                return;
+            for (String namespace : namespaces) {
+                if (namespaceList.stream().noneMatch(n -> n.getMetadata().getName().equals(namespace))) {
+                    result.add(error(NAMESPACE.key(), format("Namespace `{0}` does not exist in you cluster. Run \"kubectl create namespace {1}\" to create a namespace.", namespace, namespace)));
+                    return;
+                }
             }
-
-            result.add(error(NAMESPACE.key(), format("Namespace `{0}` does not exist in you cluster. Run \"kubectl create namespace {1}\" to create a namespace.", namespace, namespace)));
         } catch (Exception e) {
             String message = "Failed validation of plugin settings. The reasons could be - " +
                     "Cluster Url is configured incorrectly or " +
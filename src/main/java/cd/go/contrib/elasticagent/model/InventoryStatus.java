@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent.model;
+
+import java.util.Date;
+
+public class InventoryStatus {
+    private final Date lastRefreshedAt;
+    private final boolean stale;
+    private final int consecutiveFailures;
+
+    public InventoryStatus(Date lastRefreshedAt, boolean stale, int consecutiveFailures) {
+        this.lastRefreshedAt = lastRefreshedAt;
+        this.stale = stale;
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public Date getLastRefreshedAt() {
+        return lastRefreshedAt;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+}
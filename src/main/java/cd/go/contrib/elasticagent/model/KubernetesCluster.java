@@ -17,43 +17,89 @@
 package cd.go.contrib.elasticagent.model;
 
 import cd.go.contrib.elasticagent.Constants;
+import cd.go.contrib.elasticagent.KubernetesApiPolicy;
+import cd.go.contrib.elasticagent.PodPager;
+import io.fabric8.kubernetes.api.model.Node;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.client.KubernetesClient;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import static cd.go.contrib.elasticagent.KubernetesPlugin.LOG;
+import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
+/**
+ * Nodes of the cluster with the elastic agent pods running on them. A cluster read from the API is not changed
+ * afterwards; the status report decorates a copy of it with the plugin's own status.
+ */
 public class KubernetesCluster {
     private final List<KubernetesNode> nodes;
     private final String pluginId;
+    private final InventoryStatus inventoryStatus;
+    private final List<ProfileStartupLatencies> startupLatencies;
 
     public KubernetesCluster(KubernetesClient client) throws ParseException {
+        this(client, Collections.emptyList(), KubernetesApiPolicy.instance());
+    }
+
+    /**
+     * Reads nodes and pods with one API call each, so that the policy retries a failed call on its own.
+     *
+     * @param namespaceClients clients of the other namespaces agent pods are spread over
+     */
+    public KubernetesCluster(KubernetesClient client, List<KubernetesClient> namespaceClients, KubernetesApiPolicy apiPolicy) throws ParseException {
         pluginId = Constants.PLUGIN_ID;
-        nodes = client.nodes().list().getItems().stream().map(node -> new KubernetesNode(node)).collect(toList());
+        List<Node> listedNodes = apiPolicy.call("list nodes", () -> client.nodes().list().getItems());
+        nodes = Collections.unmodifiableList(listedNodes.stream().map(node -> new KubernetesNode(node)).collect(toList()));
         LOG.info("Running kubernetes nodes " + nodes.size());
-        fetchPods(client);
+        fetchPods(client, apiPolicy);
+        for (KubernetesClient namespaceClient : namespaceClients) {
+            fetchPods(namespaceClient, apiPolicy);
+        }
+        inventoryStatus = null;
+        startupLatencies = Collections.emptyList();
+    }
+
+    private KubernetesCluster(KubernetesCluster cluster, InventoryStatus inventoryStatus, List<ProfileStartupLatencies> startupLatencies) {
+        this.nodes = cluster.nodes;
+        this.pluginId = cluster.pluginId;
+        this.inventoryStatus = inventoryStatus;
+        this.startupLatencies = startupLatencies;
+    }
+
+    /**
+     * @return copy of this cluster that also reports the given status of the plugin
+     */
+    public KubernetesCluster withStatus(InventoryStatus inventoryStatus, List<ProfileStartupLatencies> startupLatencies) {
+        return new KubernetesCluster(this, inventoryStatus, startupLatencies);
     }
 
-    private void fetchPods(KubernetesClient dockerClient) throws ParseException {
+    private void fetchPods(KubernetesClient dockerClient, KubernetesApiPolicy apiPolicy) throws ParseException {
         final Map<String, KubernetesNode> dockerNodeMap = nodes.stream().distinct().collect(toMap(KubernetesNode::getName, node -> node));
 
-        final List<Pod> pods = dockerClient.pods()
-                .withLabel(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID)
-                .list().getItems();
+        final List<Pod> pods = new ArrayList<>();
+        apiPolicy.call("list elastic agent pods", () -> {
+            pods.clear();
+            return new PodPager(dockerClient).forEach(singletonMap(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID), pods::add);
+        });
+        for (Pod pod : pods) {
+            addToNode(dockerNodeMap, pod);
+        }
 
         LOG.info("Running pods " + pods.size());
+    }
 
-        for (Pod pod : pods) {
-            final KubernetesPod kubernetesPod = new KubernetesPod(pod);
-            final KubernetesNode kubernetesNode = dockerNodeMap.get(kubernetesPod.getNodeName());
-            if (kubernetesNode != null) {
-                kubernetesNode.add(kubernetesPod);
-            }
+    private static void addToNode(Map<String, KubernetesNode> dockerNodeMap, Pod pod) throws ParseException {
+        final KubernetesPod kubernetesPod = new KubernetesPod(pod);
+        final KubernetesNode kubernetesNode = dockerNodeMap.get(kubernetesPod.getNodeName());
+        if (kubernetesNode != null) {
+            kubernetesNode.add(kubernetesPod);
         }
     }
 
@@ -64,4 +110,12 @@ public class KubernetesCluster {
     public String getPluginId() {
         return pluginId;
     }
+
+    public InventoryStatus getInventoryStatus() {
+        return inventoryStatus;
+    }
+
+    public List<ProfileStartupLatencies> getStartupLatencies() {
+        return startupLatencies;
+    }
 }
@@ -16,6 +16,8 @@
 
 package cd.go.contrib.elasticagent.model;
 
+import org.apache.commons.lang3.StringUtils;
+
 public class PositiveNumberField extends Field {
     public PositiveNumberField(String key, String displayName, String defaultValue, Boolean required, Boolean secure, String displayOrder) {
         super(key, displayName, defaultValue, required, secure, displayOrder);
@@ -23,10 +25,10 @@ public class PositiveNumberField extends Field {
 
     @Override
     public String doValidate(String input) {
-        if (required == false) {
+        if (required == false && StringUtils.isBlank(input)) {
             return null;
         }
-        
+
         try {
             if (Integer.parseInt(input) <= 0) {
                 return this.displayName + " must be a positive integer.";
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent.model;
+
+import cd.go.contrib.elasticagent.PodStartupLatencies;
+
+import java.util.List;
+
+public class ProfileStartupLatencies {
+    private final String profile;
+    private final List<PodStartupLatencies.Histogram> stages;
+
+    public ProfileStartupLatencies(String profile, List<PodStartupLatencies.Histogram> stages) {
+        this.profile = profile;
+        this.stages = stages;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public List<PodStartupLatencies.Histogram> getStages() {
+        return stages;
+    }
+}
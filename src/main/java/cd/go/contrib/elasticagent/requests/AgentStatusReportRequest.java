@@ -16,6 +16,8 @@
 
 package cd.go.contrib.elasticagent.requests;
 
+import cd.go.contrib.elasticagent.AgentInstances;
+import cd.go.contrib.elasticagent.KubernetesInstance;
 import cd.go.contrib.elasticagent.PluginRequest;
 import cd.go.contrib.elasticagent.Request;
 import cd.go.contrib.elasticagent.executors.AgentStatusReportExecutor;
@@ -57,7 +59,7 @@ public class AgentStatusReportRequest {
         return jobIdentifier;
     }
 
-    public AgentStatusReportExecutor executor(PluginRequest pluginRequest) {
-        return new AgentStatusReportExecutor(this, pluginRequest);
+    public AgentStatusReportExecutor executor(PluginRequest pluginRequest, AgentInstances<KubernetesInstance> agentInstances) {
+        return new AgentStatusReportExecutor(this, pluginRequest, agentInstances);
     }
 }
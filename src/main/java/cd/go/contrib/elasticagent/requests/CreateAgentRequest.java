@@ -79,10 +79,22 @@ public class CreateAgentRequest {
         return jobIdentifier;
     }
 
+    /**
+     * @return request for a warm pool pod of the same profile and environment, which is not bound to any job. It
+     * registers with this request's auto-register key, so it must only be used when this request did not create a pod.
+     */
+    public CreateAgentRequest forStandby() {
+        return new CreateAgentRequest(autoRegisterKey, properties, environment);
+    }
+
     public RequestExecutor executor(AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest) {
         return new CreateAgentRequestExecutor(this, agentInstances, pluginRequest);
     }
 
+    public RequestExecutor executor(PodCreationQueue podCreationQueue, PluginRequest pluginRequest) {
+        return new CreateAgentRequestExecutor(this, podCreationQueue, pluginRequest);
+    }
+
     public Collection<EnvVar> autoregisterPropertiesAsEnvironmentVars(String elasticAgentId) {
         ArrayList<EnvVar> vars = new ArrayList<>();
         if (isNotBlank(autoRegisterKey)) {
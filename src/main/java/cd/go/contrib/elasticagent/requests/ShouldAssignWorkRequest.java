@@ -76,6 +76,10 @@ public class ShouldAssignWorkRequest {
         return new ShouldAssignWorkRequestExecutor(this, agentInstances);
     }
 
+    public RequestExecutor executor(AgentInstances<KubernetesInstance> agentInstances, PluginRequest pluginRequest) {
+        return new ShouldAssignWorkRequestExecutor(this, agentInstances, pluginRequest);
+    }
+
     public JobIdentifier jobIdentifier() {
         return jobIdentifier;
     }
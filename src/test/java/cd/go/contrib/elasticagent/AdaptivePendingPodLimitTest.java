@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AdaptivePendingPodLimitTest {
+    private AdaptivePendingPodLimit limit;
+    private Clock.TestClock clock;
+
+    @Before
+    public void setUp() {
+        clock = new Clock.TestClock();
+        limit = new AdaptivePendingPodLimit();
+        limit.clock = clock;
+        limit.setTarget(Period.seconds(60));
+    }
+
+    @Test
+    public void shouldUseConfiguredLimitWhenAdaptiveModeIsDisabled() {
+        limit.limit("default", 10, 0);
+        limit.unschedulable("default");
+
+        assertThat(limit.limit("default", 10, 0), is(10));
+    }
+
+    @Test
+    public void shouldGrowAllowanceWhilePodsAreScheduledQuickly() {
+        assertThat(limit.limit("default", 2, 4), is(2));
+
+        limit.scheduled("default", 1000);
+        limit.scheduled("default", 1000);
+        assertThat(limit.limit("default", 2, 4), is(2));
+        limit.scheduled("default", 1000);
+        assertThat(limit.limit("default", 2, 4), is(3));
+
+        for (int i = 0; i < 20; i++) {
+            limit.scheduled("default", 1000);
+        }
+        assertThat(limit.limit("default", 2, 4), is(4));
+    }
+
+    @Test
+    public void shouldHalveAllowanceAtMostOncePerTargetPeriodWhenPodsAreSlowOrUnschedulable() {
+        limit.limit("default", 16, 32);
+
+        limit.scheduled("default", 120000);
+        limit.unschedulable("default");
+        assertThat(limit.limit("default", 16, 32), is(8));
+
+        clock.forward(Period.seconds(61));
+        limit.pending("default", 90000);
+        assertThat(limit.limit("default", 16, 32), is(4));
+
+        clock.forward(Period.seconds(61));
+        limit.pending("default", 30000);
+        assertThat(limit.limit("default", 16, 32), is(4));
+    }
+
+    @Test
+    public void shouldAdaptEachProfileSeparately() {
+        limit.limit("first", 8, 16);
+        limit.limit("second", 8, 16);
+
+        limit.unschedulable("first");
+
+        assertThat(limit.limit("first", 8, 16), is(4));
+        assertThat(limit.limit("second", 8, 16), is(8));
+    }
+}
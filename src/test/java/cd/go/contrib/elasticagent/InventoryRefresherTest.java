@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class InventoryRefresherTest {
+    @Mock
+    private AgentInstances<KubernetesInstance> agentInstances;
+
+    @Mock
+    private PluginRequest pluginRequest;
+
+    @Mock
+    private ScheduledExecutorService executor;
+
+    private InventoryRefresher refresher;
+    private Clock.TestClock clock;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(pluginRequest.getPluginSettings()).thenReturn(new PluginSettings());
+        clock = new Clock.TestClock();
+        refresher = new InventoryRefresher(agentInstances, pluginRequest, executor);
+        refresher.clock = clock;
+    }
+
+    @Test
+    public void shouldScheduleNextRefreshAfterIntervalWithJitter() {
+        long delay = refresher.refresh();
+
+        assertThat(delay, is(both(greaterThanOrEqualTo(30000L)).and(lessThanOrEqualTo(35000L))));
+        assertTrue(refresher.hasRefreshed());
+        assertFalse(refresher.isStale());
+    }
+
+    @Test
+    public void shouldBackOffWhileRefreshFails() throws Exception {
+        doThrow(new RuntimeException("cluster unreachable")).when(agentInstances).refreshAll(pluginRequest);
+
+        assertThat(refresher.refresh(), is(both(greaterThanOrEqualTo(60000L)).and(lessThanOrEqualTo(65000L))));
+        assertThat(refresher.refresh(), is(both(greaterThanOrEqualTo(120000L)).and(lessThanOrEqualTo(125000L))));
+        for (int i = 0; i < 5; i++) {
+            refresher.refresh();
+        }
+        assertThat(refresher.refresh(), is(lessThanOrEqualTo(305000L)));
+        assertThat(refresher.status().getConsecutiveFailures(), is(8));
+        assertFalse(refresher.hasRefreshed());
+    }
+
+    @Test
+    public void shouldMarkInventoryStaleAfterMissingSeveralRefreshes() throws Exception {
+        refresher.refresh();
+        doThrow(new RuntimeException("cluster unreachable")).when(agentInstances).refreshAll(pluginRequest);
+
+        clock.forward(Period.seconds(60));
+        refresher.refresh();
+        assertFalse(refresher.isStale());
+
+        clock.forward(Period.seconds(31));
+        refresher.refresh();
+        assertTrue(refresher.isStale());
+        assertTrue(refresher.status().isStale());
+        assertNotNull(refresher.status().getLastRefreshedAt());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.*;
+
+public class InventoryStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldSaveAndLoadInventory() throws Exception {
+        final InventoryStore store = new InventoryStore(new File(folder.getRoot(), "inventory.json"));
+        final DateTime createdAt = new DateTime();
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("Image", "gocd/gocd-agent-alpine-3.6:v18.1.0");
+        final KubernetesInstance instance = new KubernetesInstance(createdAt, "prod", "pod-1", properties, 42L, PodState.Running, "default");
+        final Map<String, String> selector = Collections.singletonMap("kind", "kubernetes-elastic-agent");
+
+        store.save(Arrays.asList(
+                new InventoryStore.StoredInventory("https://cluster", "gocd", selector, "1234", Collections.singletonList(instance)),
+                new InventoryStore.StoredInventory("https://cluster", "second", selector, "5678", Collections.emptyList())));
+        final List<InventoryStore.StoredInventory> inventories = store.load();
+        assertThat(inventories.size(), is(2));
+        assertThat(inventories.get(1).namespace(), is("second"));
+        assertThat(inventories.get(1).resourceVersion(), is("5678"));
+
+        final InventoryStore.StoredInventory loaded = inventories.get(0);
+        assertThat(loaded.namespace(), is("gocd"));
+
+        assertThat(loaded.resourceVersion(), is("1234"));
+        assertTrue(loaded.isFor("https://cluster", "gocd", selector));
+        assertFalse(loaded.isFor("https://cluster", "other", selector));
+
+        final List<KubernetesInstance> instances = loaded.instances();
+        assertThat(instances.size(), is(1));
+        assertThat(instances.get(0).name(), is("pod-1"));
+        assertThat(instances.get(0).jobId(), is(42L));
+        assertThat(instances.get(0).profile(), is("default"));
+        assertThat(instances.get(0).environment(), is("prod"));
+        assertThat(instances.get(0).state(), is(PodState.Running));
+        assertThat(instances.get(0).createdAt().getMillis(), is(createdAt.getMillis()));
+        assertThat(instances.get(0).getInstanceProperties(), is(properties));
+    }
+
+    @Test
+    public void shouldKeepInventoriesOfDifferentServersInSeparateFiles() throws Exception {
+        final String serverId = "server-" + System.nanoTime();
+        final File file = new File(System.getProperty("java.io.tmpdir"), Constants.PLUGIN_ID + "-" + serverId + "-inventory.json");
+        file.deleteOnExit();
+        final Map<String, String> selector = Collections.singletonMap("kind", "kubernetes-elastic-agent");
+
+        InventoryStore.inTempDirectory(serverId).save(Collections.singletonList(
+                new InventoryStore.StoredInventory("https://cluster", "gocd", selector, "1234", Collections.emptyList())));
+
+        assertTrue(file.isFile());
+        assertThat(InventoryStore.inTempDirectory(serverId).load().size(), is(1));
+        assertTrue(InventoryStore.inTempDirectory("other-" + serverId).load().isEmpty());
+    }
+
+    @Test
+    public void shouldIgnoreMissingOrUnreadableInventory() throws Exception {
+        final File file = new File(folder.getRoot(), "inventory.json");
+        final InventoryStore store = new InventoryStore(file);
+        assertTrue(store.load().isEmpty());
+
+        Files.write(file.toPath(), "{not json".getBytes());
+        assertTrue(store.load().isEmpty());
+    }
+}
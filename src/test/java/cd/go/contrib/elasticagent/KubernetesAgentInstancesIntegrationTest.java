@@ -62,12 +62,13 @@ public class KubernetesAgentInstancesIntegrationTest {
     public void setUp() throws Exception {
         initMocks(this);
         kubernetesAgentInstances = new KubernetesAgentInstances(mockedKubernetesClientFactory);
-        when(mockedKubernetesClientFactory.client(any())).thenReturn(mockKubernetesClient);
+        when(mockedKubernetesClientFactory.client(any(), any())).thenReturn(mockKubernetesClient);
         when(pods.create(any())).thenAnswer((Answer<Pod>) invocation -> {
             Object[] args = invocation.getArguments();
             return (Pod) args[0];
         });
 
+        when(pods.withLabels(any())).thenReturn(pods);
         when(pods.list()).thenReturn(new PodList());
         when(mockKubernetesClient.pods()).thenReturn(pods);
 
@@ -82,6 +83,19 @@ public class KubernetesAgentInstancesIntegrationTest {
         assertTrue(kubernetesAgentInstances.instanceExists(kubernetesInstance));
     }
 
+    @Test
+    public void shouldLabelStandbyPodWithoutJobId() throws Exception {
+        ArgumentCaptor<Pod> argumentCaptor = ArgumentCaptor.forClass(Pod.class);
+        KubernetesInstance instance = kubernetesAgentInstances.create(createAgentRequest.forStandby(), settings, mockedPluginRequest);
+        verify(pods).create(argumentCaptor.capture());
+        Pod elasticAgentPod = argumentCaptor.getValue();
+
+        assertTrue(instance.isStandby());
+        assertThat(elasticAgentPod.getMetadata().getLabels().get(Constants.STANDBY_LABEL_KEY), is("true"));
+        assertFalse(elasticAgentPod.getMetadata().getLabels().containsKey(Constants.JOB_ID_LABEL_KEY));
+        assertFalse(elasticAgentPod.getMetadata().getAnnotations().containsKey(Constants.JOB_IDENTIFIER_LABEL_KEY));
+    }
+
     @Test
     public void shouldCreateKubernetesPodWithContainerSpecification() throws Exception {
         ArgumentCaptor<Pod> argumentCaptor = ArgumentCaptor.forClass(Pod.class);
@@ -218,6 +232,17 @@ public class KubernetesAgentInstancesIntegrationTest {
         assertThat(elasticAgentPod.getMetadata().getLabels(), is(labels));
     }
 
+    @Test
+    public void shouldCreateKubernetesPodWithServerIdLabel() throws Exception {
+        when(mockedPluginRequest.getServerId()).thenReturn("gocd-server-id");
+        ArgumentCaptor<Pod> argumentCaptor = ArgumentCaptor.forClass(Pod.class);
+        kubernetesAgentInstances.create(createAgentRequest, settings, mockedPluginRequest);
+        verify(pods).create(argumentCaptor.capture());
+        Pod elasticAgentPod = argumentCaptor.getValue();
+
+        assertThat(elasticAgentPod.getMetadata().getLabels().get(Constants.SERVER_ID_LABEL_KEY), is("gocd-server-id"));
+    }
+
     //Tests Using Pod Yaml
 
     @Test
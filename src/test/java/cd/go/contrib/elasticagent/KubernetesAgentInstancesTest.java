@@ -19,24 +19,40 @@ package cd.go.contrib.elasticagent;
 import cd.go.contrib.elasticagent.model.JobIdentifier;
 import cd.go.contrib.elasticagent.requests.CreateAgentRequest;
 import io.fabric8.kubernetes.api.model.DoneablePod;
+import io.fabric8.kubernetes.api.model.ListMeta;
 import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.PodStatusBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
 import io.fabric8.kubernetes.client.dsl.MixedOperation;
 import io.fabric8.kubernetes.client.dsl.PodResource;
 import org.joda.time.DateTime;
+import org.joda.time.Period;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import static cd.go.contrib.elasticagent.Constants.JOB_ID_LABEL_KEY;
+import static cd.go.contrib.elasticagent.utils.Util.getSimpleDateFormat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -74,11 +90,15 @@ public class KubernetesAgentInstancesTest {
         testProperties = new HashMap<>();
         when(mockCreateAgentRequest.properties()).thenReturn(testProperties);
         when(mockPluginSettings.getMaxPendingPods()).thenReturn(10);
+        when(mockPluginSettings.getNamespace()).thenReturn("default");
+        when(mockPluginSettings.getNamespaces()).thenReturn(Collections.singletonList("default"));
         when(factory.client(mockPluginSettings)).thenReturn(mockKubernetesClient);
+        when(factory.client(mockPluginSettings, "default")).thenReturn(mockKubernetesClient);
         JobIdentifier jobId = new JobIdentifier("test", 1L, "Test pipeline", "test name", "1", "test job", 100L);
         when(mockCreateAgentRequest.jobIdentifier()).thenReturn(jobId);
 
         when(mockKubernetesClient.pods()).thenReturn(mockedOperation);
+        when(mockedOperation.withLabels(any())).thenReturn(mockedOperation);
         when(mockPluginRequest.getPluginSettings()).thenReturn(mockPluginSettings);
         when(mockedOperation.list()).thenReturn(podList);
         when(podList.getItems()).thenReturn(Collections.emptyList());
@@ -187,4 +207,522 @@ public class KubernetesAgentInstancesTest {
         inOrder.verify(mockedOperation).list();
         inOrder.verify(mockKubernetesInstanceFactory).create(mockCreateAgentRequest, mockPluginSettings, mockKubernetesClient, mockPluginRequest, false);
     }
+
+    @Test
+    public void shouldServeRefreshFromPodWatchOnceSynced() {
+        final ListMeta listMeta = new ListMeta();
+        listMeta.setResourceVersion("42");
+        when(podList.getMetadata()).thenReturn(listMeta);
+        when(mockedOperation.watch(eq("42"), any())).thenReturn(mock(Watch.class));
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.refreshAll(mockPluginRequest);
+        agentInstances.refreshAll(mockPluginRequest);
+
+        verify(mockedOperation, times(1)).list();
+        verify(mockedOperation, times(1)).watch(eq("42"), any());
+    }
+
+    @Test
+    public void shouldApplyPodEventsReceivedFromPodWatch() {
+        when(mockedOperation.watch(any(), any())).thenReturn(mock(Watch.class));
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.refreshAll(mockPluginRequest);
+
+        ArgumentCaptor<KubernetesPodWatcher> watcher = ArgumentCaptor.forClass(KubernetesPodWatcher.class);
+        verify(mockedOperation).watch(any(), watcher.capture());
+
+        final Pod pod = elasticAgentPod("test-agent", 100L);
+        watcher.getValue().eventReceived(Watcher.Action.ADDED, pod);
+        assertNotNull(agentInstances.find("test-agent"));
+
+        watcher.getValue().eventReceived(Watcher.Action.DELETED, pod);
+        assertNull(agentInstances.find("test-agent"));
+    }
+
+    @Test
+    public void shouldListPodsAgainWhenPodWatchIsClosed() {
+        when(mockedOperation.watch(any(), any())).thenReturn(mock(Watch.class));
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.refreshAll(mockPluginRequest);
+
+        ArgumentCaptor<KubernetesPodWatcher> watcher = ArgumentCaptor.forClass(KubernetesPodWatcher.class);
+        verify(mockedOperation).watch(any(), watcher.capture());
+        watcher.getValue().onClose(null);
+
+        agentInstances.refreshAll(mockPluginRequest);
+        verify(mockedOperation, times(2)).list();
+    }
+
+    @Test
+    public void shouldListOnlyElasticAgentPodsCreatedForThisServer() {
+        when(mockPluginRequest.getServerId()).thenReturn("gocd-server-id");
+        final Pod ownPod = elasticAgentPod("own-pod", 1L);
+        ownPod.getMetadata().getLabels().put(Constants.SERVER_ID_LABEL_KEY, "gocd-server-id");
+        final Pod otherServerPod = elasticAgentPod("other-server-pod", 2L);
+        otherServerPod.getMetadata().getLabels().put(Constants.SERVER_ID_LABEL_KEY, "other-server-id");
+        when(podList.getItems()).thenReturn(Arrays.asList(ownPod, otherServerPod));
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.refreshAll(mockPluginRequest);
+
+        final Map<String, String> selector = new HashMap<>();
+        selector.put(Constants.KUBERNETES_POD_KIND_LABEL_KEY, Constants.KUBERNETES_POD_KIND_LABEL_VALUE);
+        selector.put(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID);
+        verify(mockedOperation, atLeastOnce()).withLabels(selector);
+        assertNotNull(agentInstances.find("own-pod"));
+        assertNull(agentInstances.find("other-server-pod"));
+    }
+
+    @Test
+    public void shouldKeepTrackOfPodsCreatedBeforePodsWereLabelledWithServerId() {
+        when(mockPluginRequest.getServerId()).thenReturn("gocd-server-id");
+        when(podList.getItems()).thenReturn(Collections.singletonList(elasticAgentPod("unlabelled-pod", 1L)));
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.refreshAll(mockPluginRequest);
+
+        assertNotNull(agentInstances.find("unlabelled-pod"));
+        assertEquals(1, agentInstances.runningPods("default") + agentInstances.pendingPods("default"));
+    }
+
+    @Test
+    public void shouldJoinInFlightRefreshInsteadOfListingPodsAgain() throws Exception {
+        when(mockedOperation.watch(any(), any())).thenThrow(new KubernetesClientException("watch not available"));
+        final CountDownLatch listing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(mockedOperation.list()).thenAnswer(invocation -> {
+            listing.countDown();
+            release.await();
+            return podList;
+        });
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        Thread leader = new Thread(() -> agentInstances.refreshAll(mockPluginRequest));
+        leader.start();
+        listing.await();
+
+        Thread follower = new Thread(() -> agentInstances.refreshAll(mockPluginRequest));
+        follower.start();
+        while (follower.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+
+        release.countDown();
+        leader.join();
+        follower.join();
+
+        verify(mockedOperation, times(1)).list();
+    }
+
+    @Test
+    public void shouldReuseLastSyncWithinMinimumRefreshInterval() {
+        when(mockedOperation.watch(any(), any())).thenThrow(new KubernetesClientException("watch not available"));
+        when(mockPluginSettings.getMinRefreshInterval()).thenReturn(Period.seconds(10));
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        final Clock.TestClock clock = new Clock.TestClock();
+        agentInstances.clock = clock;
+
+        agentInstances.refreshAll(mockPluginRequest);
+        agentInstances.refreshAll(mockPluginRequest);
+        verify(mockedOperation, times(1)).list();
+
+        clock.forward(Period.seconds(11));
+        agentInstances.refreshAll(mockPluginRequest);
+        verify(mockedOperation, times(2)).list();
+    }
+
+    @Test
+    public void shouldListPodsOnlyWhenOlderThanStalenessBudgetOfRequestType() {
+        when(mockedOperation.watch(any(), any())).thenThrow(new KubernetesClientException("watch not available"));
+        when(mockPluginSettings.getMaxStaleness(Request.REQUEST_SERVER_PING)).thenReturn(Period.seconds(30));
+        when(mockPluginSettings.getMaxStaleness(Request.REQUEST_SHOULD_ASSIGN_WORK)).thenReturn(Period.seconds(60));
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        final Clock.TestClock clock = new Clock.TestClock();
+        agentInstances.clock = clock;
+
+        agentInstances.refreshAll(mockPluginRequest, Request.REQUEST_SERVER_PING);
+        verify(mockedOperation, times(1)).list();
+
+        clock.forward(Period.seconds(40));
+        agentInstances.refreshAll(mockPluginRequest, Request.REQUEST_SHOULD_ASSIGN_WORK);
+        verify(mockedOperation, times(1)).list();
+
+        agentInstances.refreshAll(mockPluginRequest, Request.REQUEST_SERVER_PING);
+        verify(mockedOperation, times(2)).list();
+
+        RefreshAgeMetrics.Stats serverPing = agentInstances.refreshAgeMetrics.get(Request.REQUEST_SERVER_PING);
+        assertEquals(2L, serverPing.reads());
+        assertEquals(2L, serverPing.refreshes());
+        assertEquals(40000L, serverPing.maxAgeMillis());
+
+        RefreshAgeMetrics.Stats shouldAssignWork = agentInstances.refreshAgeMetrics.get(Request.REQUEST_SHOULD_ASSIGN_WORK);
+        assertEquals(1L, shouldAssignWork.reads());
+        assertEquals(0L, shouldAssignWork.refreshes());
+        assertEquals(40000L, shouldAssignWork.averageAgeMillis());
+    }
+
+    @Test
+    public void shouldLimitPendingPodsPerProfile() {
+        when(mockPluginSettings.getMaxPendingPods()).thenReturn(1);
+        testProperties.put("SpecifiedUsingPodConfiguration", "false");
+        testProperties.put("Profile", "first");
+        KubernetesInstance pendingPod = new KubernetesInstance(new DateTime(), "test", "first-agent", new HashMap<>(), 100L, PodState.Pending, "first");
+        when(mockKubernetesInstanceFactory.create(mockCreateAgentRequest, mockPluginSettings, mockKubernetesClient, mockPluginRequest, false)).
+                thenReturn(pendingPod);
+        when(mockedOperation.watch(any(), any())).thenReturn(mock(Watch.class));
+
+        KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory, mockKubernetesInstanceFactory);
+        agentInstances.create(mockCreateAgentRequest, mockPluginSettings, mockPluginRequest);
+
+        when(mockCreateAgentRequest.jobIdentifier()).thenReturn(new JobIdentifier("test", 1L, "Test pipeline", "test name", "1", "test job", 101L));
+        assertNull(agentInstances.create(mockCreateAgentRequest, mockPluginSettings, mockPluginRequest));
+
+        testProperties.put("Profile", "second");
+        when(mockKubernetesInstanceFactory.create(mockCreateAgentRequest, mockPluginSettings, mockKubernetesClient, mockPluginRequest, false)).
+                thenReturn(new KubernetesInstance(new DateTime(), "test", "second-agent", new HashMap<>(), 101L, PodState.Pending, "second"));
+        assertNotNull(agentInstances.create(mockCreateAgentRequest, mockPluginSettings, mockPluginRequest));
+
+        assertEquals(1, agentInstances.pendingPods("first"));
+        assertEquals(1, agentInstances.pendingPods("second"));
+    }
+
+    @Test
+    public void shouldCountPodsByStateFromPodWatchEvents() {
+        when(mockedOperation.watch(any(), any())).thenReturn(mock(Watch.class));
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.refreshAll(mockPluginRequest);
+
+        ArgumentCaptor<KubernetesPodWatcher> watcher = ArgumentCaptor.forClass(KubernetesPodWatcher.class);
+        verify(mockedOperation).watch(any(), watcher.capture());
+
+        final Pod pod = elasticAgentPod("test-agent", 100L);
+        watcher.getValue().eventReceived(Watcher.Action.ADDED, pod);
+        assertEquals(1, agentInstances.pendingPods("default"));
+
+        pod.setStatus(new PodStatusBuilder().withPhase("Running").build());
+        watcher.getValue().eventReceived(Watcher.Action.MODIFIED, pod);
+        assertEquals(0, agentInstances.pendingPods("default"));
+        assertEquals(1, agentInstances.runningPods("default"));
+
+        pod.getMetadata().setDeletionTimestamp(getSimpleDateFormat().format(new Date()));
+        watcher.getValue().eventReceived(Watcher.Action.MODIFIED, pod);
+        assertEquals(0, agentInstances.runningPods("default"));
+        assertEquals(1, agentInstances.terminatingPods("default"));
+
+        watcher.getValue().eventReceived(Watcher.Action.DELETED, pod);
+        assertEquals(0, agentInstances.terminatingPods("default"));
+    }
+
+    @Test
+    public void shouldCreatePodsForDifferentProfilesInParallel() throws Exception {
+        when(mockedOperation.watch(any(), any())).thenReturn(mock(Watch.class));
+        final CreateAgentRequest first = createAgentRequest("first", 100L);
+        final CreateAgentRequest second = createAgentRequest("second", 101L);
+        final CountDownLatch firstPodRequested = new CountDownLatch(1);
+        final CountDownLatch releaseFirstPod = new CountDownLatch(1);
+        when(mockKubernetesInstanceFactory.create(eq(first), any(), any(), any(), any())).thenAnswer(invocation -> {
+            firstPodRequested.countDown();
+            releaseFirstPod.await();
+            return new KubernetesInstance(new DateTime(), "test", "first-agent", new HashMap<>(), 100L, PodState.Pending, "first");
+        });
+        when(mockKubernetesInstanceFactory.create(eq(second), any(), any(), any(), any())).
+                thenReturn(new KubernetesInstance(new DateTime(), "test", "second-agent", new HashMap<>(), 101L, PodState.Pending, "second"));
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory, mockKubernetesInstanceFactory);
+        final Thread creatingFirst = new Thread(() -> agentInstances.create(first, mockPluginSettings, mockPluginRequest));
+        creatingFirst.start();
+        firstPodRequested.await();
+
+        assertNotNull(agentInstances.create(second, mockPluginSettings, mockPluginRequest));
+        assertNull(agentInstances.create(first, mockPluginSettings, mockPluginRequest));
+
+        releaseFirstPod.countDown();
+        creatingFirst.join();
+        assertNotNull(agentInstances.find("first-agent"));
+        verify(mockKubernetesInstanceFactory, times(1)).create(eq(first), any(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldResumeRestoredInventoryFromSavedResourceVersion() throws Exception {
+        final File file = File.createTempFile("inventory", ".json");
+        file.deleteOnExit();
+        when(mockedOperation.watch(any(), any())).thenReturn(mock(Watch.class));
+        final ListMeta listMeta = new ListMeta();
+        listMeta.setResourceVersion("42");
+        when(podList.getMetadata()).thenReturn(listMeta);
+        when(podList.getItems()).thenReturn(Collections.singletonList(elasticAgentPod("test-agent", 100L)));
+
+        final KubernetesAgentInstances previousRun = new KubernetesAgentInstances(factory);
+        previousRun.restoreFrom(new InventoryStore(file));
+        previousRun.refreshAll(mockPluginRequest);
+        verify(mockedOperation, times(1)).list();
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.restoreFrom(new InventoryStore(file));
+        assertNotNull(agentInstances.find("test-agent"));
+        assertNotNull(agentInstances.findByJobId(100L));
+
+        agentInstances.refreshAll(mockPluginRequest);
+        verify(mockedOperation, times(1)).list();
+        final ArgumentCaptor<KubernetesPodWatcher> watcher = ArgumentCaptor.forClass(KubernetesPodWatcher.class);
+        verify(mockedOperation, times(2)).watch(eq("42"), watcher.capture());
+
+        watcher.getValue().eventReceived(Watcher.Action.MODIFIED, elasticAgentPod("test-agent", 100L));
+        agentInstances.refreshAll(mockPluginRequest);
+        verify(mockedOperation, times(1)).list();
+    }
+
+    @Test
+    public void shouldListPodsWhenResumedPodWatchWasNotConfirmedByAnEvent() throws Exception {
+        final File file = File.createTempFile("inventory", ".json");
+        file.deleteOnExit();
+        when(mockPluginRequest.getServerId()).thenReturn("gocd-server-id");
+        when(mockedOperation.watch(any(), any())).thenReturn(mock(Watch.class));
+        final ListMeta listMeta = new ListMeta();
+        listMeta.setResourceVersion("42");
+        when(podList.getMetadata()).thenReturn(listMeta);
+        when(podList.getItems()).thenReturn(Collections.singletonList(elasticAgentPod("test-agent", 100L)));
+        final KubernetesAgentInstances previousRun = new KubernetesAgentInstances(factory);
+        previousRun.restoreFrom(new InventoryStore(file));
+        previousRun.refreshAll(mockPluginRequest);
+
+        final List<String> serverIds = new ArrayList<>();
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.restoreOnFirstRefresh(serverId -> {
+            serverIds.add(serverId);
+            return new InventoryStore(file);
+        });
+        agentInstances.refreshAll(mockPluginRequest);
+        assertEquals(Collections.singletonList("gocd-server-id"), serverIds);
+        assertNotNull(agentInstances.find("test-agent"));
+        verify(mockedOperation, times(1)).list();
+
+        agentInstances.refreshAll(mockPluginRequest);
+        verify(mockedOperation, times(2)).list();
+    }
+
+    @Test
+    public void shouldListPodsOfEveryNamespaceAndPlaceNewPodsInLeastLoadedNamespace() {
+        final KubernetesClient secondClient = mock(KubernetesClient.class);
+        final MixedOperation<Pod, PodList, DoneablePod, PodResource<Pod, DoneablePod>> secondOperation = mock(MixedOperation.class);
+        final PodList secondPodList = mock(PodList.class);
+        when(mockPluginSettings.getNamespaces()).thenReturn(Arrays.asList("default", "second"));
+        when(factory.client(mockPluginSettings, "second")).thenReturn(secondClient);
+        when(secondClient.pods()).thenReturn(secondOperation);
+        when(secondOperation.withLabels(any())).thenReturn(secondOperation);
+        when(secondOperation.list()).thenReturn(secondPodList);
+        when(secondPodList.getItems()).thenReturn(Collections.emptyList());
+        when(podList.getItems()).thenReturn(Collections.singletonList(elasticAgentPod("test-agent", 100L)));
+
+        final KubernetesInstance created = new KubernetesInstance(new DateTime(), "test", "new-agent", new HashMap<>(), 200L, PodState.Pending, "default");
+        when(mockKubernetesInstanceFactory.create(any(), eq(mockPluginSettings), eq(secondClient), eq(mockPluginRequest), any())).thenReturn(created);
+        when(mockKubernetesInstanceFactory.fromKubernetesPod(any())).thenAnswer(invocation -> new KubernetesInstanceFactory().fromKubernetesPod((Pod) invocation.getArguments()[0]));
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory, mockKubernetesInstanceFactory);
+        agentInstances.create(createAgentRequest("default", 200L), mockPluginSettings, mockPluginRequest);
+
+        verify(mockedOperation).list();
+        verify(secondOperation).list();
+        verify(mockKubernetesInstanceFactory).create(any(), eq(mockPluginSettings), eq(secondClient), eq(mockPluginRequest), any());
+        assertNotNull(agentInstances.find("test-agent"));
+        assertNotNull(agentInstances.find("new-agent"));
+        assertEquals(2, agentInstances.pendingPods("default"));
+    }
+
+    @Test
+    public void shouldBindJobToStandbyPodOfWarmPoolAndRefillPool() {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("Profile", "default");
+        properties.put("WarmPoolSize", "1");
+        final CreateAgentRequest request = new CreateAgentRequest("key", properties, null, new JobIdentifier("test", 1L, "Test pipeline", "test name", "1", "test job", 200L));
+        when(podList.getItems()).thenReturn(Collections.singletonList(standbyPod("standby-agent")));
+        when(mockKubernetesInstanceFactory.fromKubernetesPod(any())).thenAnswer(invocation -> new KubernetesInstanceFactory().fromKubernetesPod((Pod) invocation.getArguments()[0]));
+        final KubernetesInstance bound = new KubernetesInstance(new DateTime(), null, "standby-agent", new HashMap<>(), 200L, PodState.Running, "default");
+        when(mockKubernetesInstanceFactory.bind(mockKubernetesClient, "standby-agent", request)).thenReturn(bound);
+        when(mockKubernetesInstanceFactory.create(any(), eq(mockPluginSettings), eq(mockKubernetesClient), eq(mockPluginRequest), any()))
+                .thenReturn(new KubernetesInstance(new DateTime(), null, "new-standby-agent", new HashMap<>(), null, PodState.Pending, "default"));
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory, mockKubernetesInstanceFactory);
+
+        assertEquals(bound, agentInstances.create(request, mockPluginSettings, mockPluginRequest));
+        assertEquals(bound, agentInstances.findByJobId(200L));
+        final ArgumentCaptor<CreateAgentRequest> standbyRequest = ArgumentCaptor.forClass(CreateAgentRequest.class);
+        verify(mockKubernetesInstanceFactory).create(standbyRequest.capture(), eq(mockPluginSettings), eq(mockKubernetesClient), eq(mockPluginRequest), any());
+        assertNull(standbyRequest.getValue().jobIdentifier());
+        assertEquals("key", standbyRequest.getValue().autoRegisterKey());
+        assertEquals(1, agentInstances.standbyPods("default", null));
+    }
+
+    @Test
+    public void shouldFillWarmPoolOnlyWithAutoRegisterKeysOfRequestsThatDidNotCreateAPod() {
+        when(mockPluginSettings.getMaxPendingPods()).thenReturn(2);
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("Profile", "default");
+        properties.put("WarmPoolSize", "2");
+        final JobIdentifier jobIdentifier = new JobIdentifier("test", 1L, "Test pipeline", "test name", "1", "test job", 200L);
+        when(mockKubernetesInstanceFactory.create(any(), eq(mockPluginSettings), eq(mockKubernetesClient), eq(mockPluginRequest), any())).thenAnswer(invocation -> {
+            final CreateAgentRequest created = (CreateAgentRequest) invocation.getArguments()[0];
+            final Long jobId = created.jobIdentifier() == null ? null : created.jobIdentifier().getJobId();
+            return new KubernetesInstance(new DateTime(), null, "agent-" + created.autoRegisterKey(), new HashMap<>(), jobId, PodState.Pending, "default");
+        });
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory, mockKubernetesInstanceFactory);
+
+        assertNotNull(agentInstances.create(new CreateAgentRequest("first-key", properties, null, jobIdentifier), mockPluginSettings, mockPluginRequest));
+        assertEquals(0, agentInstances.standbyPods("default", null));
+
+        assertNull(agentInstances.create(new CreateAgentRequest("repeated-key", properties, null, jobIdentifier), mockPluginSettings, mockPluginRequest));
+        final ArgumentCaptor<CreateAgentRequest> created = ArgumentCaptor.forClass(CreateAgentRequest.class);
+        verify(mockKubernetesInstanceFactory, times(2)).create(created.capture(), any(), any(), any(), any());
+        verify(mockKubernetesInstanceFactory, never()).bind(any(), any(), any());
+        assertEquals("repeated-key", created.getAllValues().get(1).autoRegisterKey());
+        assertNull(created.getAllValues().get(1).jobIdentifier());
+        assertEquals(1, agentInstances.standbyPods("default", null));
+        assertEquals(2, agentInstances.pendingPods("default"));
+    }
+
+    @Test
+    public void shouldDrainIdleAndStandbyPodsOfProfileWithOneCollectionDelete() throws Exception {
+        final Pod otherProfilePod = elasticAgentPod("other-agent", 102L);
+        otherProfilePod.getMetadata().getLabels().put(Constants.KUBERNETES_POD_AGENT_PROFILE, "other");
+        when(podList.getItems()).thenReturn(Arrays.asList(standbyPod("standby-agent"), elasticAgentPod("busy-agent", 100L),
+                elasticAgentPod("idle-agent", 101L), otherProfilePod));
+        when(mockKubernetesInstanceFactory.fromKubernetesPod(any())).thenAnswer(invocation -> new KubernetesInstanceFactory().fromKubernetesPod((Pod) invocation.getArguments()[0]));
+        when(mockKubernetesInstanceFactory.markForReaping(eq(mockKubernetesClient), anyString(), anyString())).thenReturn(true);
+        final Agent idleAgent = new Agent("idle-agent", Agent.AgentState.Idle, Agent.BuildState.Idle, Agent.ConfigState.Enabled);
+        when(mockPluginRequest.listAgents()).thenReturn(new Agents(Arrays.asList(idleAgent,
+                new Agent("busy-agent", Agent.AgentState.Building, Agent.BuildState.Building, Agent.ConfigState.Enabled),
+                new Agent("other-agent", Agent.AgentState.Idle, Agent.BuildState.Idle, Agent.ConfigState.Enabled))));
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory, mockKubernetesInstanceFactory);
+
+        assertEquals(2, agentInstances.drainProfile("default", mockPluginSettings, mockPluginRequest));
+
+        final ArgumentCaptor<String> batch = ArgumentCaptor.forClass(String.class);
+        verify(mockKubernetesInstanceFactory).markForReaping(eq(mockKubernetesClient), eq("standby-agent"), batch.capture());
+        verify(mockKubernetesInstanceFactory).markForReaping(mockKubernetesClient, "idle-agent", batch.getValue());
+        verify(mockKubernetesInstanceFactory, never()).markForReaping(any(), eq("busy-agent"), any());
+        verify(mockKubernetesInstanceFactory, never()).markForReaping(any(), eq("other-agent"), any());
+
+        final Map<String, String> reapSelector = new HashMap<>();
+        reapSelector.put(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID);
+        reapSelector.put(Constants.REAP_LABEL_KEY, batch.getValue());
+        verify(mockedOperation).withLabels(reapSelector);
+        verify(mockedOperation, times(1)).delete();
+        verify(mockPluginRequest).disableAgents(Collections.singletonList(idleAgent));
+        verify(mockPluginRequest).deleteAgents(Collections.singletonList(idleAgent));
+
+        assertNull(agentInstances.find("standby-agent"));
+        assertNull(agentInstances.find("idle-agent"));
+        assertNotNull(agentInstances.find("busy-agent"));
+        assertNotNull(agentInstances.find("other-agent"));
+    }
+
+    @Test
+    public void shouldDrainIdlePodsOfEveryProfileWhenSettingsChange() throws Exception {
+        final Pod otherProfilePod = elasticAgentPod("other-agent", 102L);
+        otherProfilePod.getMetadata().getLabels().put(Constants.KUBERNETES_POD_AGENT_PROFILE, "other");
+        when(podList.getItems()).thenReturn(Arrays.asList(standbyPod("standby-agent"), elasticAgentPod("busy-agent", 100L), otherProfilePod));
+        when(mockKubernetesInstanceFactory.fromKubernetesPod(any())).thenAnswer(invocation -> new KubernetesInstanceFactory().fromKubernetesPod((Pod) invocation.getArguments()[0]));
+        when(mockKubernetesInstanceFactory.markForReaping(eq(mockKubernetesClient), anyString(), anyString())).thenReturn(true);
+        final Agent otherAgent = new Agent("other-agent", Agent.AgentState.Idle, Agent.BuildState.Idle, Agent.ConfigState.Enabled);
+        when(mockPluginRequest.listAgents()).thenReturn(new Agents(Arrays.asList(otherAgent,
+                new Agent("busy-agent", Agent.AgentState.Building, Agent.BuildState.Building, Agent.ConfigState.Enabled))));
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory, mockKubernetesInstanceFactory);
+
+        assertEquals(2, agentInstances.drainIdleInstances(mockPluginSettings, mockPluginRequest));
+
+        verify(mockPluginRequest, times(1)).listAgents();
+        verify(mockPluginRequest).deleteAgents(Collections.singletonList(otherAgent));
+        assertNull(agentInstances.find("standby-agent"));
+        assertNull(agentInstances.find("other-agent"));
+        assertNotNull(agentInstances.find("busy-agent"));
+    }
+
+    @Test
+    public void shouldOnlyAskClusterAboutPodsThatMissedAutoRegisterPeriod() throws Exception {
+        final Pod youngPod = elasticAgentPod("young-agent", 101L);
+        youngPod.getMetadata().setCreationTimestamp(getSimpleDateFormat().format(new DateTime().plusMinutes(5).toDate()));
+        when(podList.getItems()).thenReturn(Arrays.asList(elasticAgentPod("old-agent", 100L), youngPod, elasticAgentPod("registered-agent", 102L)));
+        when(mockPluginSettings.getAutoRegisterPeriod()).thenReturn(Period.minutes(10));
+        final PodResource<Pod, DoneablePod> podResource = mock(PodResource.class);
+        when(mockedOperation.withName(anyString())).thenReturn(podResource);
+        when(podResource.get()).thenReturn(elasticAgentPod("old-agent", 100L));
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.refreshAll(mockPluginRequest);
+        agentInstances.clock = new Clock.TestClock().forward(Period.minutes(11));
+
+        agentInstances.terminateUnregisteredInstances(mockPluginSettings, new Agents(Collections.singletonList(
+                new Agent("registered-agent", Agent.AgentState.Idle, Agent.BuildState.Idle, Agent.ConfigState.Enabled))));
+
+        verify(podResource, times(2)).get();
+        verify(podResource).patch(any(Pod.class));
+        verify(mockedOperation).delete();
+        verify(mockedOperation, times(2)).withName("old-agent");
+        verify(mockedOperation, never()).withName("young-agent");
+        verify(mockedOperation, never()).withName("registered-agent");
+        assertNull(agentInstances.find("old-agent"));
+        assertNotNull(agentInstances.find("young-agent"));
+    }
+
+    @Test
+    public void shouldTimeUnregisteredStandbyFromPodCreationButIdleBoundAgentFromBind() throws Exception {
+        final Pod boundStandby = elasticAgentPod("bound-standby", 100L);
+        boundStandby.getMetadata().setCreationTimestamp(getSimpleDateFormat().format(new DateTime().minusMinutes(30).toDate()));
+        boundStandby.getMetadata().getAnnotations().put(Constants.BOUND_AT_ANNOTATION_KEY, getSimpleDateFormat().format(new DateTime().minusMinutes(1).toDate()));
+        when(podList.getItems()).thenReturn(Collections.singletonList(boundStandby));
+        when(mockPluginSettings.getAutoRegisterPeriod()).thenReturn(Period.minutes(10));
+        final PodResource<Pod, DoneablePod> podResource = mock(PodResource.class);
+        when(mockedOperation.withName("bound-standby")).thenReturn(podResource);
+        when(podResource.get()).thenReturn(boundStandby);
+
+        final KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
+        agentInstances.refreshAll(mockPluginRequest);
+        final KubernetesInstance instance = agentInstances.find("bound-standby");
+        assertTrue(instance.createdAt().isBefore(instance.boundAt()));
+
+        final Agents idleAgent = new Agents(Collections.singletonList(new Agent("bound-standby", Agent.AgentState.Idle, Agent.BuildState.Idle, Agent.ConfigState.Enabled)));
+        assertTrue(agentInstances.instancesCreatedAfterTimeout(mockPluginSettings, idleAgent).agents().isEmpty());
+
+        agentInstances.terminateUnregisteredInstances(mockPluginSettings, new Agents(Collections.emptyList()));
+        verify(podResource).patch(any(Pod.class));
+        verify(mockedOperation).delete();
+    }
+
+    private CreateAgentRequest createAgentRequest(String profile, Long jobId) {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("Profile", profile);
+        final CreateAgentRequest request = mock(CreateAgentRequest.class);
+        when(request.properties()).thenReturn(properties);
+        when(request.jobIdentifier()).thenReturn(new JobIdentifier("test", 1L, "Test pipeline", "test name", "1", "test job", jobId));
+        return request;
+    }
+
+    private Pod standbyPod(String name) {
+        final Pod pod = elasticAgentPod(name, 0L);
+        pod.getMetadata().getLabels().remove(JOB_ID_LABEL_KEY);
+        pod.getMetadata().getLabels().put(Constants.STANDBY_LABEL_KEY, "true");
+        pod.setStatus(new PodStatusBuilder().withPhase("Running").build());
+        return pod;
+    }
+
+    private Pod elasticAgentPod(String name, Long jobId) {
+        final Map<String, String> labels = new HashMap<>();
+        labels.put(JOB_ID_LABEL_KEY, jobId.toString());
+        labels.put(Constants.KUBERNETES_POD_KIND_LABEL_KEY, Constants.KUBERNETES_POD_KIND_LABEL_VALUE);
+        labels.put(Constants.KUBERNETES_POD_AGENT_PROFILE, "default");
+
+        final ObjectMeta objectMeta = new ObjectMeta();
+        objectMeta.setName(name);
+        objectMeta.setLabels(labels);
+        objectMeta.setAnnotations(new HashMap<>());
+        objectMeta.setCreationTimestamp(getSimpleDateFormat().format(new Date()));
+
+        final Pod pod = new Pod();
+        pod.setMetadata(objectMeta);
+        return pod;
+    }
 }
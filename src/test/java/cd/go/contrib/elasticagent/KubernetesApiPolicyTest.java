@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class KubernetesApiPolicyTest {
+    private KubernetesApiPolicy policy;
+    private Clock.TestClock clock;
+    private List<Long> sleeps;
+
+    @Before
+    public void setUp() {
+        sleeps = new ArrayList<>();
+        clock = new Clock.TestClock();
+        policy = new KubernetesApiPolicy() {
+            @Override
+            void sleep(long millis) {
+                sleeps.add(millis);
+            }
+        };
+        policy.clock = clock;
+    }
+
+    @Test
+    public void shouldRetryTransientFailuresWithBackoff() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = policy.call("get pod", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new KubernetesClientException("unavailable", 503, null);
+            }
+            return "pod";
+        });
+
+        assertThat(result, is("pod"));
+        assertThat(calls.get(), is(3));
+        assertThat(sleeps.size(), is(2));
+        assertThat(sleeps.get(0) <= KubernetesApiPolicy.BASE_BACKOFF_MILLIS, is(true));
+        assertThat(sleeps.get(1) <= 2 * KubernetesApiPolicy.BASE_BACKOFF_MILLIS, is(true));
+    }
+
+    @Test
+    public void shouldNotRetryNonTransientFailures() {
+        AtomicInteger calls = new AtomicInteger();
+
+        try {
+            policy.call("get pod", () -> {
+                calls.incrementAndGet();
+                throw new KubernetesClientException("not found", 404, null);
+            });
+            fail("Should have thrown");
+        } catch (KubernetesClientException e) {
+            assertThat(e.getCode(), is(404));
+        }
+
+        assertThat(calls.get(), is(1));
+        assertThat(sleeps.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldOpenCircuitAfterRepeatedFailuresAndFailFast() {
+        failCalls(KubernetesApiPolicy.FAILURE_THRESHOLD);
+        assertThat(policy.isOpen(), is(true));
+
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.call("create pod", calls::incrementAndGet);
+            fail("Should have thrown");
+        } catch (CircuitOpenException expected) {
+        }
+        assertThat(calls.get(), is(0));
+    }
+
+    @Test
+    public void shouldCloseCircuitWhenTrialCallSucceeds() {
+        failCalls(KubernetesApiPolicy.FAILURE_THRESHOLD);
+
+        clock.forward(KubernetesApiPolicy.OPEN_PERIOD.plus(Period.seconds(1)));
+
+        assertThat(policy.call("get pod", () -> "pod"), is("pod"));
+        assertThat(policy.isOpen(), is(false));
+    }
+
+    @Test
+    public void shouldReopenCircuitWhenTrialCallFails() {
+        failCalls(KubernetesApiPolicy.FAILURE_THRESHOLD);
+
+        clock.forward(KubernetesApiPolicy.OPEN_PERIOD.plus(Period.seconds(1)));
+        failCalls(1);
+
+        assertThat(policy.isOpen(), is(true));
+    }
+
+    private void failCalls(int count) {
+        Callable<String> unavailable = () -> {
+            throw new KubernetesClientException("unavailable", 503, null);
+        };
+        for (int i = 0; i < count; i++) {
+            try {
+                policy.call("list pods", unavailable);
+                fail("Should have thrown");
+            } catch (KubernetesClientException expected) {
+            }
+        }
+    }
+}
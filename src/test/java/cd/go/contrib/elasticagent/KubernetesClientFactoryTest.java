@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class KubernetesClientFactoryTest {
+    private final KubernetesClientFactory factory = new KubernetesClientFactory();
+
+    @Test
+    public void shouldKeepClientWhenOnlyTuningSettingsChange() {
+        final KubernetesClient client = factory.client(settings("https://cluster", "gocd, gocd-2", "5"));
+        final KubernetesClient namespaceClient = factory.client(settings("https://cluster", "gocd, gocd-2", "5"), "gocd-2");
+
+        assertSame(client, factory.client(settings("https://cluster", "gocd, gocd-2", "20")));
+        assertSame(namespaceClient, factory.client(settings("https://cluster", "gocd, gocd-2", "20"), "gocd-2"));
+    }
+
+    @Test
+    public void shouldCreateNewClientsWhenConnectionSettingsChange() {
+        final KubernetesClient client = factory.client(settings("https://cluster", "gocd, gocd-2", "5"));
+        final KubernetesClient namespaceClient = factory.client(settings("https://cluster", "gocd, gocd-2", "5"), "gocd-2");
+
+        assertNotSame(client, factory.client(settings("https://other-cluster", "gocd, gocd-2", "5")));
+        assertNotSame(namespaceClient, factory.client(settings("https://other-cluster", "gocd, gocd-2", "5"), "gocd-2"));
+    }
+
+    private static PluginSettings settings(String clusterUrl, String namespaces, String podCreationWorkers) {
+        return PluginSettings.fromJSON("{" +
+                "\"go_server_url\": \"https://foo.go.cd/go\", " +
+                "\"kubernetes_cluster_url\": \"" + clusterUrl + "\", " +
+                "\"security_token\": \"token\", " +
+                "\"namespace\": \"" + namespaces + "\", " +
+                "\"pod_creation_workers\": \"" + podCreationWorkers + "\" " +
+                "}");
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.*;
+
+public class KubernetesInstanceSnapshotTest {
+    private final KubernetesInstance first = new KubernetesInstance(new DateTime(), null, "pod-1", new HashMap<>(), 1L, PodState.Running, "default");
+    private final KubernetesInstance second = new KubernetesInstance(new DateTime(), null, "pod-2", new HashMap<>(), 2L, PodState.Pending, "default");
+
+    @Test
+    public void shouldLeaveExistingSnapshotUntouchedWhenAddingAnInstance() {
+        KubernetesInstanceSnapshot snapshot = KubernetesInstanceSnapshot.of(Arrays.asList(first));
+
+        KubernetesInstanceSnapshot updated = snapshot.with(second);
+
+        assertThat(snapshot.size(), is(1));
+        assertNull(snapshot.get("pod-2"));
+        assertThat(updated.size(), is(2));
+        assertThat(updated.get("pod-2"), is(second));
+    }
+
+    @Test
+    public void shouldLeaveExistingSnapshotUntouchedWhenRemovingAnInstance() {
+        KubernetesInstanceSnapshot snapshot = KubernetesInstanceSnapshot.of(Arrays.asList(first, second));
+
+        KubernetesInstanceSnapshot updated = snapshot.without("pod-1");
+
+        assertTrue(snapshot.contains(first));
+        assertFalse(updated.contains(first));
+        assertThat(updated.names(), is(Collections.singleton("pod-2")));
+    }
+
+    @Test
+    public void shouldReturnSameSnapshotWhenRemovingUnknownInstance() {
+        KubernetesInstanceSnapshot snapshot = KubernetesInstanceSnapshot.of(Arrays.asList(first));
+
+        assertSame(snapshot, snapshot.without("unknown"));
+    }
+
+    @Test
+    public void shouldIndexInstancesByJobId() {
+        KubernetesInstanceSnapshot snapshot = KubernetesInstanceSnapshot.of(Arrays.asList(first)).with(second);
+
+        assertThat(snapshot.getByJobId(1L), is(first));
+        assertThat(snapshot.getByJobId(2L), is(second));
+        assertNull(snapshot.without("pod-2").getByJobId(2L));
+    }
+
+    @Test
+    public void shouldKeepOtherInstanceForSameJobIndexedWhenOneIsRemoved() {
+        KubernetesInstance duplicate = new KubernetesInstance(new DateTime(), null, "pod-3", new HashMap<>(), 1L, PodState.Pending, "default");
+        KubernetesInstanceSnapshot snapshot = KubernetesInstanceSnapshot.of(Arrays.asList(first, duplicate));
+
+        KubernetesInstance indexed = snapshot.getByJobId(1L);
+        KubernetesInstanceSnapshot updated = snapshot.without(indexed.name());
+
+        assertThat(updated.getByJobId(1L), is(indexed == first ? duplicate : first));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotAllowSnapshotToBeModifiedInPlace() {
+        KubernetesInstanceSnapshot.of(Arrays.asList(first)).instances().add(second);
+    }
+
+    @Test
+    public void shouldKeepInstancesWhoseNamesHaveTheSameHash() {
+        KubernetesInstance aa = new KubernetesInstance(new DateTime(), null, "Aa", new HashMap<>(), 3L, PodState.Running, "default");
+        KubernetesInstance bb = new KubernetesInstance(new DateTime(), null, "BB", new HashMap<>(), 4L, PodState.Running, "default");
+
+        KubernetesInstanceSnapshot snapshot = KubernetesInstanceSnapshot.of(Arrays.asList(aa, bb));
+
+        assertThat(snapshot.get("Aa"), is(aa));
+        assertThat(snapshot.get("BB"), is(bb));
+        assertThat(snapshot.names(), is(new HashSet<>(Arrays.asList("Aa", "BB"))));
+        assertThat(snapshot.without("Aa").get("BB"), is(bb));
+        assertNull(snapshot.without("Aa").get("Aa"));
+    }
+
+    @Test
+    public void shouldApplyManyChangesWithoutLosingInstances() {
+        KubernetesInstanceSnapshot snapshot = KubernetesInstanceSnapshot.EMPTY;
+        for (long i = 0; i < 2000; i++) {
+            snapshot = snapshot.with(new KubernetesInstance(new DateTime(), null, "pod-" + i, new HashMap<>(), i, PodState.Pending, "default"));
+        }
+        for (long i = 0; i < 2000; i += 2) {
+            snapshot = snapshot.without("pod-" + i);
+        }
+
+        assertThat(snapshot.size(), is(1000));
+        Set<String> iterated = new HashSet<>();
+        for (KubernetesInstance instance : snapshot.instances()) {
+            iterated.add(instance.name());
+        }
+        assertThat(iterated.size(), is(1000));
+        assertTrue(iterated.contains("pod-11"));
+        assertFalse(iterated.contains("pod-10"));
+        assertNull(snapshot.get("pod-10"));
+        assertThat(snapshot.get("pod-11").name(), is("pod-11"));
+        assertNull(snapshot.getByJobId(10L));
+        assertThat(snapshot.getByJobId(11L).name(), is("pod-11"));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import com.thoughtworks.go.plugin.api.GoApplicationAccessor;
+import com.thoughtworks.go.plugin.api.request.GoApiRequest;
+import com.thoughtworks.go.plugin.api.response.GoApiResponse;
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class PluginRequestTest {
+    @Mock
+    private GoApplicationAccessor accessor;
+
+    @Mock
+    private GoApiResponse response;
+
+    private PluginRequest pluginRequest;
+    private Clock.TestClock clock;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(accessor.submit(any(GoApiRequest.class))).thenReturn(response);
+        when(response.responseCode()).thenReturn(200);
+        when(response.responseBody()).thenReturn("{\"go_server_url\":\"https://gocd.example.com/go\",\"kubernetes_cluster_url\":\"https://kubernetes.example.com\"}");
+        clock = new Clock.TestClock();
+        pluginRequest = new PluginRequest(accessor);
+        pluginRequest.clock = clock;
+    }
+
+    @Test
+    public void shouldServePluginSettingsFromCacheUntilTheyExpire() throws Exception {
+        assertThat(pluginRequest.getPluginSettings().getGoServerUrl(), is("https://gocd.example.com/go"));
+        pluginRequest.getPluginSettings();
+        verify(accessor, times(1)).submit(any(GoApiRequest.class));
+
+        clock.forward(PluginRequest.PLUGIN_SETTINGS_TTL.plus(Period.seconds(1)));
+        pluginRequest.getPluginSettings();
+        verify(accessor, times(2)).submit(any(GoApiRequest.class));
+    }
+
+    @Test
+    public void shouldFetchPluginSettingsAgainOnceCacheIsInvalidated() throws Exception {
+        pluginRequest.getPluginSettings();
+
+        pluginRequest.invalidateCache();
+        pluginRequest.getPluginSettings();
+
+        verify(accessor, times(2)).submit(any(GoApiRequest.class));
+    }
+
+    @Test
+    public void shouldCachePluginSettingsOnlyBrieflyAfterNewSettingsWereValidated() throws Exception {
+        pluginRequest.getPluginSettings();
+
+        pluginRequest.pluginSettingsValidated();
+        pluginRequest.getPluginSettings();
+        verify(accessor, times(1)).submit(any(GoApiRequest.class));
+
+        clock.forward(PluginRequest.UNSAVED_PLUGIN_SETTINGS_TTL.plus(Period.seconds(1)));
+        pluginRequest.getPluginSettings();
+        verify(accessor, times(2)).submit(any(GoApiRequest.class));
+
+        clock.forward(PluginRequest.UNSAVED_PLUGIN_SETTINGS_TTL.plus(Period.seconds(1)));
+        pluginRequest.getPluginSettings();
+        verify(accessor, times(3)).submit(any(GoApiRequest.class));
+
+        clock.forward(PluginRequest.PLUGIN_SETTINGS_TTL);
+        pluginRequest.getPluginSettings();
+        clock.forward(PluginRequest.UNSAVED_PLUGIN_SETTINGS_TTL.plus(Period.seconds(1)));
+        pluginRequest.getPluginSettings();
+        verify(accessor, times(4)).submit(any(GoApiRequest.class));
+    }
+
+    @Test
+    public void shouldRememberPluginSettingsLookedUpBeforeNewSettingsWereValidated() throws Exception {
+        final PluginSettings before = pluginRequest.getPluginSettings();
+        pluginRequest.pluginSettingsValidated();
+
+        when(response.responseBody()).thenReturn("{\"go_server_url\":\"https://gocd.example.com/go\",\"kubernetes_cluster_url\":\"https://other.example.com\"}");
+        clock.forward(PluginRequest.UNSAVED_PLUGIN_SETTINGS_TTL.plus(Period.seconds(1)));
+        pluginRequest.getPluginSettings();
+        pluginRequest.pluginSettingsValidated();
+
+        assertSame(before, pluginRequest.pluginSettingsBeforeChange());
+
+        pluginRequest.invalidateCache();
+        assertNull(pluginRequest.pluginSettingsBeforeChange());
+    }
+
+    @Test
+    public void shouldNotCacheFailedLookups() throws Exception {
+        final GoApiResponse failed = mock(GoApiResponse.class);
+        when(failed.responseCode()).thenReturn(500);
+        when(accessor.submit(any(GoApiRequest.class))).thenReturn(failed, response);
+        try {
+            pluginRequest.getPluginSettings();
+        } catch (ServerRequestFailedException expected) {
+        }
+
+        assertThat(pluginRequest.getPluginSettings().getGoServerUrl(), is("https://gocd.example.com/go"));
+        verify(accessor, times(2)).submit(any(GoApiRequest.class));
+    }
+}
@@ -17,8 +17,10 @@
 package cd.go.contrib.elasticagent;
 
 import com.google.gson.Gson;
+import org.joda.time.Period;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -38,11 +40,17 @@ public class PluginSettingsTest {
         pluginSettingsMap.put("security_token", "foo-token");
         pluginSettingsMap.put("kubernetes_cluster_ca_cert", "foo-ca-certs");
         pluginSettingsMap.put("namespace", "gocd");
+        pluginSettingsMap.put("min_refresh_interval", "30");
+        pluginSettingsMap.put("should_assign_work_max_staleness", "120");
+        pluginSettingsMap.put("server_ping_max_staleness", "10");
 
         PluginSettings pluginSettings = PluginSettings.fromJSON(new Gson().toJson(pluginSettingsMap));
 
         assertThat(pluginSettings.getGoServerUrl(), is("https://foo.go.cd/go"));
         assertThat(pluginSettings.getAutoRegisterTimeout(), is(13));
+        assertThat(pluginSettings.getMinRefreshInterval(), is(Period.seconds(30)));
+        assertThat(pluginSettings.getMaxStaleness(Request.REQUEST_SHOULD_ASSIGN_WORK), is(Period.seconds(120)));
+        assertThat(pluginSettings.getMaxStaleness(Request.REQUEST_SERVER_PING), is(Period.seconds(30)));
         assertThat(pluginSettings.getMaxPendingPods(), is(14));
         assertThat(pluginSettings.getClusterUrl(), is("https://cloud.example.com"));
         assertThat(pluginSettings.getCaCertData(), is("foo-ca-certs"));
@@ -81,6 +89,13 @@ public class PluginSettingsTest {
         assertThat(pluginSettings.getAutoRegisterTimeout(), is(5));
         assertThat(pluginSettings.getMaxPendingPods(), is(10));
         assertThat(pluginSettings.getNamespace(), is("default"));
+        assertThat(pluginSettings.getMinRefreshInterval(), is(Period.seconds(5)));
+        assertThat(pluginSettings.getMaxStaleness(Request.REQUEST_CREATE_AGENT), is(Period.seconds(5)));
+        assertThat(pluginSettings.getMaxStaleness(Request.REQUEST_SHOULD_ASSIGN_WORK), is(Period.seconds(60)));
+        assertThat(pluginSettings.getMaxStaleness(Request.REQUEST_SERVER_PING), is(Period.seconds(30)));
+        assertThat(pluginSettings.getMaxStaleness(Request.REQUEST_STATUS_REPORT), is(Period.seconds(10)));
+        assertThat(pluginSettings.getBackgroundRefreshInterval(), is(Period.seconds(30)));
+        assertThat(pluginSettings.getBackgroundRefreshJitter(), is(Period.seconds(5)));
         assertNull(pluginSettings.getClusterUrl());
         assertNull(pluginSettings.getCaCertData());
     }
@@ -94,4 +109,15 @@ public class PluginSettingsTest {
 
         assertThat(pluginSettings.getNamespace(), is("default"));
     }
+
+    @Test
+    public void shouldSplitCommaSeparatedNamespaces() {
+        final Map<String, Object> pluginSettingsMap = new HashMap<>();
+        pluginSettingsMap.put("namespace", "gocd, gocd-2,,gocd");
+
+        PluginSettings pluginSettings = PluginSettings.fromJSON(new Gson().toJson(pluginSettingsMap));
+
+        assertThat(pluginSettings.getNamespaces(), is(Arrays.asList("gocd", "gocd-2")));
+        assertThat(pluginSettings.getNamespace(), is("gocd"));
+    }
 }
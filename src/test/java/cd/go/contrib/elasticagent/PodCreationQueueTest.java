@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import cd.go.contrib.elasticagent.model.JobIdentifier;
+import cd.go.contrib.elasticagent.requests.CreateAgentRequest;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class PodCreationQueueTest {
+    @Mock
+    private AgentInstances<KubernetesInstance> agentInstances;
+
+    @Mock
+    private PluginRequest pluginRequest;
+
+    @Mock
+    private PluginSettings settings;
+
+    private ThreadPoolExecutor executor;
+    private PodCreationQueue queue;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(pluginRequest.getPluginSettings()).thenReturn(settings);
+        when(settings.getPodCreationWorkers()).thenReturn(1);
+        when(settings.getPodCreationQueueSize()).thenReturn(10);
+        executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        queue = new PodCreationQueue(agentInstances, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldCreatePodOnWorkerAfterAcknowledgingRequest() throws Exception {
+        final CreateAgentRequest request = createAgentRequest(1L);
+        when(agentInstances.create(request, settings, pluginRequest)).thenReturn(new KubernetesInstance(new DateTime(), null, "agent-1", new HashMap<>(), 1L, PodState.Pending, "default"));
+
+        assertTrue(queue.submit(request, pluginRequest));
+        awaitWorkers();
+
+        verify(agentInstances).create(request, settings, pluginRequest);
+        assertEquals(0, queue.depth());
+        assertEquals(1L, queue.metrics.queued());
+        assertEquals(1L, queue.metrics.created());
+    }
+
+    @Test
+    public void shouldQueueJobOnlyOnceWhileItIsBeingCreated() throws Exception {
+        final CountDownLatch release = blockCreation();
+
+        assertTrue(queue.submit(createAgentRequest(1L), pluginRequest));
+        assertTrue(queue.submit(createAgentRequest(1L), pluginRequest));
+        release.countDown();
+        awaitWorkers();
+
+        verify(agentInstances, times(1)).create(any(), any(), any());
+        assertEquals(1L, queue.metrics.deduplicated());
+    }
+
+    @Test
+    public void shouldDropRequestsBeyondQueueSize() throws Exception {
+        when(settings.getPodCreationQueueSize()).thenReturn(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(agentInstances.create(any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+
+        assertTrue(queue.submit(createAgentRequest(1L), pluginRequest));
+        started.await(5, TimeUnit.SECONDS);
+        assertTrue(queue.submit(createAgentRequest(2L), pluginRequest));
+        assertFalse(queue.submit(createAgentRequest(3L), pluginRequest));
+        assertEquals(1, queue.depth());
+
+        release.countDown();
+        awaitWorkers();
+
+        verify(agentInstances, times(2)).create(any(), any(), any());
+        assertEquals(1L, queue.metrics.rejected());
+        assertEquals(2L, queue.metrics.skipped());
+    }
+
+    @Test
+    public void shouldRetryRateLimitedCreateWithoutHoldingWorker() throws Exception {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        queue = new PodCreationQueue(agentInstances, executor, scheduler);
+        final CreateAgentRequest throttled = createAgentRequest(1L);
+        final CreateAgentRequest other = createAgentRequest(2L);
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch retried = new CountDownLatch(1);
+        when(agentInstances.create(eq(throttled), any(), any())).thenAnswer(invocation -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new PodCreationThrottledException("rate limited", 200);
+            }
+            retried.countDown();
+            return null;
+        });
+
+        assertTrue(queue.submit(throttled, pluginRequest));
+        assertTrue(queue.submit(other, pluginRequest));
+        assertTrue(queue.submit(createAgentRequest(1L), pluginRequest));
+        assertTrue(retried.await(5, TimeUnit.SECONDS));
+        awaitWorkers();
+        scheduler.shutdownNow();
+
+        InOrder inOrder = inOrder(agentInstances);
+        inOrder.verify(agentInstances).create(eq(throttled), any(), any());
+        inOrder.verify(agentInstances).create(eq(other), any(), any());
+        inOrder.verify(agentInstances).create(eq(throttled), any(), any());
+        assertEquals(0, queue.depth());
+        assertEquals(1L, queue.metrics.deferred());
+        assertEquals(0L, queue.metrics.failed());
+        assertEquals(2L, queue.metrics.skipped());
+    }
+
+    private CountDownLatch blockCreation() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(agentInstances.create(any(), any(), any())).thenAnswer(invocation -> {
+            release.await();
+            return null;
+        });
+        return release;
+    }
+
+    private void awaitWorkers() throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static CreateAgentRequest createAgentRequest(Long jobId) {
+        return new CreateAgentRequest("key", new HashMap<>(), "env", new JobIdentifier("up42", 1L, "1", "stage", "1", "job", jobId));
+    }
+}
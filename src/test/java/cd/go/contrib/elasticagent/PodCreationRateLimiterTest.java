@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PodCreationRateLimiterTest {
+    private static final PodCreationRateLimiter.Limit UNLIMITED = new PodCreationRateLimiter.Limit(0, 0);
+
+    private PodCreationRateLimiter limiter;
+    private Clock.TestClock clock;
+
+    @Before
+    public void setUp() {
+        clock = new Clock.TestClock();
+        limiter = new PodCreationRateLimiter();
+        limiter.clock = clock;
+    }
+
+    @Test
+    public void shouldAllowBurstAndThenReserveTokensAtConfiguredRate() {
+        final PodCreationRateLimiter.Limit global = new PodCreationRateLimiter.Limit(4, 2);
+
+        assertThat(limiter.tryAcquire("1", "default", global, UNLIMITED), is(0L));
+        assertThat(limiter.tryAcquire("2", "default", global, UNLIMITED), is(0L));
+        assertThat(limiter.tryAcquire("3", "default", global, UNLIMITED), is(250L));
+        assertThat(limiter.tryAcquire("4", "default", global, UNLIMITED), is(500L));
+
+        clock.forward(Period.millis(250));
+        assertThat(limiter.tryAcquire("3", "default", global, UNLIMITED), is(0L));
+        assertThat(limiter.tryAcquire("4", "default", global, UNLIMITED), is(250L));
+        assertThat(limiter.tryAcquire("5", "default", global, UNLIMITED), is(500L));
+
+        clock.forward(Period.millis(250));
+        assertThat(limiter.tryAcquire("4", "default", global, UNLIMITED), is(0L));
+        assertThat(limiter.summary(), containsString("4 creates, 3 deferred, avg/max deferral 416/500ms"));
+    }
+
+    @Test
+    public void shouldNotLetNewCreatesTakeTokensReservedByEarlierOnes() {
+        final PodCreationRateLimiter.Limit global = new PodCreationRateLimiter.Limit(1, 1);
+
+        assertThat(limiter.tryAcquire("1", "default", global, UNLIMITED), is(0L));
+        assertThat(limiter.tryAcquire("2", "default", global, UNLIMITED), is(1000L));
+
+        clock.forward(Period.millis(1000));
+        assertThat(limiter.tryAcquire("3", "default", global, UNLIMITED), is(1000L));
+        assertThat(limiter.tryAcquire(null, "default", global, UNLIMITED), is(2000L));
+        assertThat(limiter.tryAcquire("2", "default", global, UNLIMITED), is(0L));
+    }
+
+    @Test
+    public void shouldLimitEachProfileSeparately() {
+        final PodCreationRateLimiter.Limit perProfile = new PodCreationRateLimiter.Limit(1, 1);
+
+        assertThat(limiter.tryAcquire("1", "first", UNLIMITED, perProfile), is(0L));
+        assertThat(limiter.tryAcquire("2", "first", UNLIMITED, perProfile), is(1000L));
+        assertThat(limiter.tryAcquire("3", "second", UNLIMITED, perProfile), is(0L));
+    }
+
+    @Test
+    public void shouldWaitForSlowerOfGlobalAndProfileLimit() {
+        final PodCreationRateLimiter.Limit global = new PodCreationRateLimiter.Limit(10, 1);
+        final PodCreationRateLimiter.Limit perProfile = new PodCreationRateLimiter.Limit(1, 1);
+
+        limiter.tryAcquire("1", "default", global, perProfile);
+
+        assertThat(limiter.tryAcquire("2", "default", global, perProfile), is(1000L));
+    }
+
+    @Test
+    public void shouldNotTakeTokensForCreatesThatAreNotRetried() {
+        final PodCreationRateLimiter.Limit global = new PodCreationRateLimiter.Limit(10, 2);
+        final PodCreationRateLimiter.Limit perProfile = new PodCreationRateLimiter.Limit(1, 1);
+
+        assertThat(limiter.tryAcquire(null, "first", global, perProfile), is(0L));
+        assertThat(limiter.tryAcquire(null, "first", global, perProfile), is(1000L));
+
+        assertThat(limiter.tryAcquire(null, "second", global, perProfile), is(0L));
+        assertThat(limiter.tryAcquire(null, "third", global, perProfile), is(100L));
+    }
+
+    @Test
+    public void shouldExpireReservationsThatAreNeverClaimed() {
+        final PodCreationRateLimiter.Limit global = new PodCreationRateLimiter.Limit(1, 1);
+
+        limiter.tryAcquire("1", "default", global, UNLIMITED);
+        assertThat(limiter.tryAcquire("2", "default", global, UNLIMITED), is(1000L));
+
+        clock.forward(Period.millis((int) PodCreationRateLimiter.RESERVATION_TIMEOUT_MILLIS + 2000));
+        assertThat(limiter.tryAcquire("2", "default", global, UNLIMITED), is(0L));
+        assertThat(limiter.tryAcquire("2", "default", global, UNLIMITED), is(1000L));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import io.fabric8.kubernetes.api.model.DoneablePod;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.MixedOperation;
+import io.fabric8.kubernetes.client.dsl.PodResource;
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class PodPagerTest {
+    private KubernetesClient client;
+    private OkHttpClient httpClient;
+
+    @Before
+    public void setUp() throws Exception {
+        client = mock(KubernetesClient.class, withSettings().extraInterfaces(HttpClientAware.class));
+        httpClient = mock(OkHttpClient.class);
+        when(((HttpClientAware) client).getHttpClient()).thenReturn(httpClient);
+        when(client.getMasterUrl()).thenReturn(new URL("https://kubernetes.example.com/"));
+        when(client.getNamespace()).thenReturn("gocd");
+    }
+
+    @Test
+    public void shouldListPodsPageByPageUsingContinueToken() throws Exception {
+        final Call firstPage = call(200, "{\"metadata\":{\"resourceVersion\":\"42\",\"continue\":\"next-page\"},\"items\":[{\"metadata\":{\"name\":\"pod-1\"}},{\"metadata\":{\"name\":\"pod-2\"}}]}");
+        final Call lastPage = call(200, "{\"metadata\":{\"resourceVersion\":\"43\"},\"items\":[{\"metadata\":{\"name\":\"pod-3\"}}]}");
+        when(httpClient.newCall(any())).thenReturn(firstPage, lastPage);
+
+        final List<String> names = new ArrayList<>();
+        final String resourceVersion = new PodPager(client, 2).forEach(Collections.singletonMap("kind", "kubernetes-elastic-agent"), pod -> names.add(pod.getMetadata().getName()));
+
+        assertThat(names, contains("pod-1", "pod-2", "pod-3"));
+        assertThat(resourceVersion, is("42"));
+
+        final ArgumentCaptor<Request> requests = ArgumentCaptor.forClass(Request.class);
+        verify(httpClient, times(2)).newCall(requests.capture());
+        assertThat(requests.getAllValues().get(0).url().encodedPath(), is("/api/v1/namespaces/gocd/pods"));
+        assertThat(requests.getAllValues().get(0).url().queryParameter("limit"), is("2"));
+        assertThat(requests.getAllValues().get(0).url().queryParameter("labelSelector"), is("kind=kubernetes-elastic-agent"));
+        assertThat(requests.getAllValues().get(0).url().queryParameter("continue"), is(nullValue()));
+        assertThat(requests.getAllValues().get(1).url().queryParameter("continue"), is("next-page"));
+    }
+
+    @Test(expected = KubernetesClientException.class)
+    public void shouldErrorOutWhenPageCannotBeListed() throws Exception {
+        final Call expired = call(410, "{\"kind\":\"Status\",\"reason\":\"Expired\"}");
+        when(httpClient.newCall(any())).thenReturn(expired);
+
+        new PodPager(client).forEach(Collections.emptyMap(), pod -> {
+        });
+    }
+
+    @Test
+    public void shouldFallBackToSingleListWhenHttpClientIsNotAvailable() {
+        final KubernetesClient client = mock(KubernetesClient.class);
+        final MixedOperation<Pod, PodList, DoneablePod, PodResource<Pod, DoneablePod>> pods = mock(MixedOperation.class);
+        final PodList podList = new PodList();
+        final Pod pod = new Pod();
+        podList.setItems(Collections.singletonList(pod));
+        when(client.pods()).thenReturn(pods);
+        when(pods.withLabels(any())).thenReturn(pods);
+        when(pods.list()).thenReturn(podList);
+
+        final List<Pod> listed = new ArrayList<>();
+        new PodPager(client).forEach(Collections.emptyMap(), listed::add);
+
+        assertThat(listed, contains(pod));
+    }
+
+    private Call call(int code, String body) throws Exception {
+        final Request request = new Request.Builder().url("https://kubernetes.example.com/").build();
+        final Response response = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("")
+                .body(ResponseBody.create(MediaType.parse("application/json"), body))
+                .build();
+        final Call call = mock(Call.class);
+        when(call.execute()).thenReturn(response);
+        return call;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import cd.go.contrib.elasticagent.PodStartupLatencies.Stage;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import org.joda.time.DateTime;
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PodStartupLatenciesTest {
+    private PodStartupLatencies latencies;
+    private Clock.TestClock clock;
+
+    @Before
+    public void setUp() {
+        clock = new Clock.TestClock();
+        latencies = new PodStartupLatencies();
+        latencies.clock = clock;
+    }
+
+    @Test
+    public void shouldRecordEachStageFromCreateRequestToWorkAssignment() {
+        DateTime requestedAt = clock.now();
+        clock.forward(Period.seconds(2));
+        latencies.created("pod-1", "default", requestedAt);
+
+        clock.forward(Period.seconds(3));
+        latencies.observed(pod("pod-1", "node-1", "Pending"));
+        clock.forward(Period.seconds(20));
+        latencies.observed(pod("pod-1", "node-1", "Running"));
+        clock.forward(Period.seconds(10));
+        latencies.registered("pod-1");
+        clock.forward(Period.seconds(1));
+        latencies.assigned("pod-1");
+
+        assertThat(latencies.histogram("default", Stage.CREATE).getMax(), is(2000L));
+        assertThat(latencies.histogram("default", Stage.SCHEDULING).getMax(), is(3000L));
+        assertThat(latencies.histogram("default", Stage.CONTAINER_START).getMax(), is(20000L));
+        assertThat(latencies.histogram("default", Stage.REGISTRATION).getMax(), is(10000L));
+        assertThat(latencies.histogram("default", Stage.ASSIGNMENT).getMax(), is(1000L));
+        assertThat(latencies.histogram("default", Stage.TOTAL).getMax(), is(36000L));
+        assertThat(latencies.report().size(), is(1));
+    }
+
+    @Test
+    public void shouldRecordEachTransitionOnlyOnce() {
+        latencies.created("pod-1", "default", clock.now());
+        latencies.observed(pod("pod-1", "node-1", "Running"));
+        latencies.observed(pod("pod-1", "node-1", "Running"));
+        latencies.registered("pod-1");
+        latencies.registered("pod-1");
+
+        assertThat(latencies.histogram("default", Stage.CONTAINER_START).getCount(), is(1L));
+        assertThat(latencies.histogram("default", Stage.REGISTRATION).getCount(), is(1L));
+    }
+
+    @Test
+    public void shouldMeasureAssignmentOfStandbyPodFromWhenItWasBound() {
+        latencies.created("standby-1", "default", clock.now());
+        latencies.observed(pod("standby-1", "node-1", "Running"));
+        latencies.registered("standby-1");
+
+        clock.forward(Period.minutes(30));
+        latencies.bound("standby-1");
+        clock.forward(Period.seconds(4));
+        latencies.assigned("standby-1");
+
+        assertThat(latencies.histogram("default", Stage.ASSIGNMENT).getMax(), is(4000L));
+        assertThat(latencies.histogram("default", Stage.TOTAL).getMax(), is(4000L));
+    }
+
+    @Test
+    public void shouldIgnorePodsNotCreatedByThisPlugin() {
+        latencies.observed(pod("adopted", "node-1", "Running"));
+        latencies.registered("adopted");
+        latencies.assigned("adopted");
+
+        assertThat(latencies.histogram("default", Stage.TOTAL), is(nullValue()));
+        assertThat(latencies.report().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldEstimatePercentilesFromBuckets() {
+        PodStartupLatencies.Histogram histogram = new PodStartupLatencies.Histogram(Stage.TOTAL);
+        for (int i = 0; i < 9; i++) {
+            histogram.record(1500);
+        }
+        histogram.record(45000);
+
+        assertThat(histogram.getCount(), is(10L));
+        assertThat(histogram.getP50(), is(2000L));
+        assertThat(histogram.getP90(), is(2000L));
+        assertThat(histogram.getP99(), is(45000L));
+        assertThat(histogram.getMax(), is(45000L));
+    }
+
+    private static Pod pod(String name, String nodeName, String phase) {
+        return new PodBuilder()
+                .withNewMetadata().withName(name).endMetadata()
+                .withNewSpec().withNodeName(nodeName).endSpec()
+                .withNewStatus().withPhase(phase).endStatus()
+                .build();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class PodTemplateCacheTest {
+    private static final String POD_YAML = "apiVersion: v1\n" +
+            "kind: Pod\n" +
+            "metadata:\n" +
+            "  name: pod-name-prefix-{{ POD_POSTFIX }}\n" +
+            "  labels:\n" +
+            "    app: web\n" +
+            "spec:\n" +
+            "  containers:\n" +
+            "    - name: gocd-agent-container-{{ CONTAINER_POSTFIX }}\n" +
+            "      image: {{ GOCD_AGENT_IMAGE }}:{{ LATEST_VERSION }}\n" +
+            "      ports:\n" +
+            "        - containerPort: 80";
+
+    private final PodTemplateCache cache = new PodTemplateCache();
+
+    @Test
+    public void shouldFillFreshPostfixesIntoEveryPod() {
+        final Pod first = cache.newPod("default", POD_YAML);
+        final Pod second = cache.newPod("default", POD_YAML);
+
+        assertThat(first.getMetadata().getName(), startsWith("pod-name-prefix-"));
+        assertThat(first.getMetadata().getName(), not(containsString("postfix")));
+        assertThat(first.getMetadata().getName(), not(second.getMetadata().getName()));
+        assertThat(first.getSpec().getContainers().get(0).getName(), startsWith("gocd-agent-container-"));
+        assertThat(first.getSpec().getContainers().get(0).getName(), not(second.getSpec().getContainers().get(0).getName()));
+        assertThat(first.getSpec().getContainers().get(0).getImage(), is("gocd/gocd-agent-alpine-3.5:v17.10.0"));
+        assertThat(first.getSpec().getContainers().get(0).getPorts().get(0).getContainerPort(), is(80));
+    }
+
+    @Test
+    public void shouldNotShareStateBetweenPodsOfSameTemplate() {
+        final Pod first = cache.newPod("default", POD_YAML);
+        first.getMetadata().getLabels().put("job", "42");
+
+        final Pod second = cache.newPod("default", POD_YAML);
+
+        assertThat(second.getMetadata().getLabels(), not(hasKey("job")));
+    }
+
+    @Test
+    public void shouldRecompileWhenTemplateOfProfileChanges() {
+        cache.newPod("default", POD_YAML);
+
+        final Pod pod = cache.newPod("default", POD_YAML.replace("app: web", "app: api"));
+
+        assertThat(pod.getMetadata().getLabels(), hasEntry("app", "api"));
+    }
+
+    @Test
+    public void shouldCompileEachTemplateOnceWhenProfilesAlternate() {
+        final String otherPodYaml = POD_YAML.replace("app: web", "app: api");
+
+        cache.newPod(null, POD_YAML);
+        cache.newPod(null, otherPodYaml);
+        cache.newPod(null, POD_YAML);
+        final Pod pod = cache.newPod(null, otherPodYaml);
+
+        assertThat(pod.getMetadata().getLabels(), hasEntry("app", "api"));
+        assertThat(cache.stats().missCount(), is(2L));
+        assertThat(cache.stats().hitCount(), is(2L));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cd.go.contrib.elasticagent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class PodTerminatorTest {
+    @Mock
+    private AgentInstances<KubernetesInstance> agentInstances;
+
+    @Mock
+    private PluginSettings settings;
+
+    private ThreadPoolExecutor executor;
+    private PodTerminator terminator;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(settings.getPodTerminationConcurrency()).thenReturn(2);
+        executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        terminator = new PodTerminator(agentInstances, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldReturnOnlyAgentsWhosePodsWereTerminated() throws Exception {
+        when(agentInstances.terminateAll(anyList(), eq(settings))).thenAnswer(invocation -> {
+            List<String> terminated = new ArrayList<>((List<String>) invocation.getArguments()[0]);
+            terminated.remove("agent-2");
+            return terminated;
+        });
+
+        List<Agent> terminated = terminator.terminate(Arrays.asList(agent("agent-1"), agent("agent-2"), agent("agent-3")), settings);
+
+        assertEquals(Arrays.asList("agent-1", "agent-3"), agentIds(terminated));
+        verify(agentInstances).terminateAll(Arrays.asList("agent-1", "agent-2"), settings);
+        verify(agentInstances).terminateAll(Arrays.asList("agent-3"), settings);
+        verify(agentInstances, never()).terminate(anyString(), any());
+    }
+
+    @Test
+    public void shouldKeepAgentsOfFailedBatch() throws Exception {
+        when(agentInstances.terminateAll(Arrays.asList("agent-1", "agent-2"), settings)).thenThrow(new RuntimeException("API server unavailable"));
+        when(agentInstances.terminateAll(Arrays.asList("agent-3"), settings)).thenReturn(Arrays.asList("agent-3"));
+
+        List<Agent> terminated = terminator.terminate(Arrays.asList(agent("agent-1"), agent("agent-2"), agent("agent-3")), settings);
+
+        assertEquals(Arrays.asList("agent-3"), agentIds(terminated));
+    }
+
+    @Test
+    public void shouldTerminateBatchesInParallelUpToConfiguredConcurrency() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(agentInstances.terminateAll(anyList(), eq(settings))).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return invocation.getArguments()[0];
+        });
+
+        List<Agent> agents = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            agents.add(agent("agent-" + i));
+        }
+        List<Agent> terminated = terminator.terminate(agents, settings);
+
+        assertEquals(8, terminated.size());
+        assertEquals(2, executor.getMaximumPoolSize());
+        assertTrue(maxRunning.get() <= 2);
+        verify(agentInstances, times(2)).terminateAll(anyList(), eq(settings));
+    }
+
+    @Test
+    public void shouldDrainIdlePodsInBackgroundOnlyWhenSettingsCreatePodsDifferently() throws Exception {
+        final PluginRequest pluginRequest = mock(PluginRequest.class);
+        final PluginSettings previous = pluginSettings("https://cluster", "5");
+        when(pluginRequest.getPluginSettings()).thenReturn(pluginSettings("https://cluster", "20"), pluginSettings("https://other-cluster", "20"));
+
+        terminator.drainIdleInstancesCreatedWith(previous, pluginRequest);
+        terminator.drainIdleInstancesCreatedWith(previous, pluginRequest);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        verify(agentInstances, times(1)).drainIdleInstances(any(), eq(pluginRequest));
+    }
+
+    @Test
+    public void shouldNotDrainIdlePodsWhenPreviousSettingsAreUnknown() throws Exception {
+        terminator.drainIdleInstancesCreatedWith(null, mock(PluginRequest.class));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        verifyZeroInteractions(agentInstances);
+    }
+
+    @Test
+    public void shouldNotTerminateAnythingWhenThereAreNoAgents() throws Exception {
+        assertTrue(terminator.terminate(new ArrayList<>(), settings).isEmpty());
+        verifyZeroInteractions(agentInstances);
+    }
+
+    private static List<String> agentIds(List<Agent> agents) {
+        List<String> agentIds = new ArrayList<>();
+        for (Agent agent : agents) {
+            agentIds.add(agent.elasticAgentId());
+        }
+        return agentIds;
+    }
+
+    private static PluginSettings pluginSettings(String clusterUrl, String podCreationWorkers) {
+        return PluginSettings.fromJSON("{" +
+                "\"go_server_url\": \"https://foo.go.cd/go\", " +
+                "\"kubernetes_cluster_url\": \"" + clusterUrl + "\", " +
+                "\"pod_creation_workers\": \"" + podCreationWorkers + "\" " +
+                "}");
+    }
+
+    private static Agent agent(String agentId) {
+        return new Agent(agentId, Agent.AgentState.Idle, Agent.BuildState.Idle, Agent.ConfigState.Disabled);
+    }
+}
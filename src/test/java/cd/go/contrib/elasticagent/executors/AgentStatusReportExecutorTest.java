@@ -16,13 +16,19 @@
 
 package cd.go.contrib.elasticagent.executors;
 
+import cd.go.contrib.elasticagent.AgentInstances;
+import cd.go.contrib.elasticagent.Constants;
+import cd.go.contrib.elasticagent.KubernetesApiPolicy;
 import cd.go.contrib.elasticagent.KubernetesClientFactory;
+import cd.go.contrib.elasticagent.KubernetesInstance;
 import cd.go.contrib.elasticagent.PluginRequest;
 import cd.go.contrib.elasticagent.PluginSettings;
+import cd.go.contrib.elasticagent.PodState;
 import cd.go.contrib.elasticagent.builders.PluginStatusReportViewBuilder;
 import cd.go.contrib.elasticagent.model.JobIdentifier;
 import cd.go.contrib.elasticagent.model.reports.agent.KubernetesElasticAgent;
 import cd.go.contrib.elasticagent.reports.StatusReportGenerationError;
+import com.google.gson.Gson;
 import cd.go.contrib.elasticagent.requests.AgentStatusReportRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import freemarker.template.Template;
@@ -32,6 +38,7 @@ import io.fabric8.kubernetes.client.dsl.MixedOperation;
 import io.fabric8.kubernetes.client.dsl.NonNamespaceOperation;
 import io.fabric8.kubernetes.client.dsl.PodResource;
 import io.fabric8.kubernetes.client.dsl.Resource;
+import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -39,12 +46,17 @@ import org.mockito.Mock;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static cd.go.contrib.elasticagent.Constants.JOB_IDENTIFIER_LABEL_KEY;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -62,6 +74,9 @@ public class AgentStatusReportExecutorTest {
     @Mock
     private KubernetesClientFactory kubernetesClientFactory;
 
+    @Mock
+    private AgentInstances<KubernetesInstance> agentInstances;
+
     @Mock
     private KubernetesClient client;
 
@@ -94,13 +109,14 @@ public class AgentStatusReportExecutorTest {
         initMocks(this);
         Pod pod = createDefaultPod();
         pod.getMetadata().setName(elasticAgentId);
-        executor = new AgentStatusReportExecutor(statusReportRequest, pluginRequest, kubernetesClientFactory, builder);
+        executor = new AgentStatusReportExecutor(statusReportRequest, pluginRequest, agentInstances, kubernetesClientFactory, builder, new KubernetesApiPolicy());
 
         when(client.pods()).thenReturn(mockedOperation);
         when(mockedOperation.list()).thenReturn(podList);
         when(podList.getItems()).thenReturn(Arrays.asList(pod));
 
         when(mockedOperation.withName(elasticAgentId)).thenReturn(podresource);
+        when(podresource.get()).thenReturn(pod);
         when(podresource.getLog()).thenReturn("agent-logs");
 
         when(client.events()).thenReturn(events);
@@ -117,7 +133,7 @@ public class AgentStatusReportExecutorTest {
         PluginSettings pluginSettings = new PluginSettings();
 
         when(pluginRequest.getPluginSettings()).thenReturn(pluginSettings);
-        when(kubernetesClientFactory.client(pluginSettings)).thenReturn(client);
+        when(kubernetesClientFactory.client(pluginSettings, pluginSettings.getNamespace())).thenReturn(client);
 
         when(builder.getTemplate("agent-status-report.template.ftlh")).thenReturn(template);
         when(builder.build(eq(template), any(KubernetesElasticAgent.class))).thenReturn("my-view");
@@ -130,7 +146,7 @@ public class AgentStatusReportExecutorTest {
 
     @Test
     public void shouldReturnErrorWhenPodForSpecifiedElasticAgentIdNotFound() throws Exception {
-        when(podList.getItems()).thenReturn(new ArrayList<>()); // no matching pod for the specified elastic agent id
+        when(podresource.get()).thenReturn(null); // no matching pod for the specified elastic agent id
 
         when(statusReportRequest.getJobIdentifier()).thenReturn(null);
         when(statusReportRequest.getElasticAgentId()).thenReturn(elasticAgentId);
@@ -138,7 +154,7 @@ public class AgentStatusReportExecutorTest {
         PluginSettings pluginSettings = new PluginSettings();
 
         when(pluginRequest.getPluginSettings()).thenReturn(pluginSettings);
-        when(kubernetesClientFactory.client(pluginSettings)).thenReturn(client);
+        when(kubernetesClientFactory.client(pluginSettings, pluginSettings.getNamespace())).thenReturn(client);
 
         when(builder.getTemplate("error.template.ftlh")).thenReturn(template);
         when(builder.build(eq(template), any(StatusReportGenerationError.class))).thenReturn("my-error-view");
@@ -149,6 +165,28 @@ public class AgentStatusReportExecutorTest {
         assertThat(response.responseBody(), is("{\"view\":\"my-error-view\"}"));
     }
 
+    @Test
+    public void shouldReturnAgentStatusReportForPodCreatedForProvidedJobIdentifier() throws Exception {
+        JobIdentifier jobIdentifier = new JobIdentifier("up42", 1L, "1", "up42_stage", "1", "job_name", 1L);
+        when(statusReportRequest.getJobIdentifier()).thenReturn(jobIdentifier);
+        when(statusReportRequest.getElasticAgentId()).thenReturn(null);
+        when(agentInstances.findByJobId(1L)).thenReturn(new KubernetesInstance(new DateTime(), null, elasticAgentId, Collections.emptyMap(), 1L, PodState.Running, "default"));
+
+        PluginSettings pluginSettings = new PluginSettings();
+
+        when(pluginRequest.getPluginSettings()).thenReturn(pluginSettings);
+        when(kubernetesClientFactory.client(pluginSettings, pluginSettings.getNamespace())).thenReturn(client);
+
+        when(builder.getTemplate("agent-status-report.template.ftlh")).thenReturn(template);
+        when(builder.build(eq(template), any(KubernetesElasticAgent.class))).thenReturn("my-view");
+
+        GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseCode(), is(200));
+        assertThat(response.responseBody(), is("{\"view\":\"my-view\"}"));
+        verify(mockedOperation, never()).withLabel(any(), any());
+    }
+
     @Test
     public void shouldReturnErrorWhenPodForSpecifiedJobIdentifierNotFound() throws Exception {
         when(client.pods()).thenThrow(new RuntimeException("Boom!")); //can not find pod for specified job identitier
@@ -160,7 +198,7 @@ public class AgentStatusReportExecutorTest {
         PluginSettings pluginSettings = new PluginSettings();
 
         when(pluginRequest.getPluginSettings()).thenReturn(pluginSettings);
-        when(kubernetesClientFactory.client(pluginSettings)).thenReturn(client);
+        when(kubernetesClientFactory.client(pluginSettings, pluginSettings.getNamespace())).thenReturn(client);
 
         when(builder.getTemplate("error.template.ftlh")).thenReturn(template);
         when(builder.build(eq(template), any(StatusReportGenerationError.class))).thenReturn("my-error-view");
@@ -171,6 +209,63 @@ public class AgentStatusReportExecutorTest {
         assertThat(response.responseBody(), is("{\"view\":\"my-error-view\"}"));
     }
 
+    @Test
+    public void shouldLookUpPodOfKnownAgentInItsNamespace() throws Exception {
+        when(statusReportRequest.getJobIdentifier()).thenReturn(null);
+        when(statusReportRequest.getElasticAgentId()).thenReturn(elasticAgentId);
+        when(agentInstances.namespaceOf(elasticAgentId)).thenReturn("gocd-2");
+
+        podList.getItems().get(0).getMetadata().setNamespace("gocd-2");
+        PluginSettings pluginSettings = settingsWithNamespaces("gocd, gocd-2");
+        KubernetesClient defaultNamespaceClient = mock(KubernetesClient.class);
+        when(pluginRequest.getPluginSettings()).thenReturn(pluginSettings);
+        when(kubernetesClientFactory.client(pluginSettings, pluginSettings.getNamespace())).thenReturn(defaultNamespaceClient);
+        when(kubernetesClientFactory.client(pluginSettings, "gocd-2")).thenReturn(client);
+
+        when(builder.getTemplate("agent-status-report.template.ftlh")).thenReturn(template);
+        when(builder.build(eq(template), any(KubernetesElasticAgent.class))).thenReturn("my-view");
+
+        GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseBody(), is("{\"view\":\"my-view\"}"));
+        verify(defaultNamespaceClient, never()).pods();
+    }
+
+    @Test
+    public void shouldSearchEveryNamespaceForPodOfUnknownJob() throws Exception {
+        JobIdentifier jobIdentifier = new JobIdentifier("up42", 1L, "1", "up42_stage", "1", "job_name", 1L);
+        when(statusReportRequest.getJobIdentifier()).thenReturn(jobIdentifier);
+        when(statusReportRequest.getElasticAgentId()).thenReturn(null);
+        when(mockedOperation.withLabel(Constants.JOB_ID_LABEL_KEY, "1")).thenReturn(mockedOperation);
+
+        podList.getItems().get(0).getMetadata().setNamespace("gocd-2");
+        PluginSettings pluginSettings = settingsWithNamespaces("gocd, gocd-2");
+        KubernetesClient defaultNamespaceClient = mock(KubernetesClient.class);
+        MixedOperation<Pod, PodList, DoneablePod, PodResource<Pod, DoneablePod>> defaultNamespacePods = mock(MixedOperation.class);
+        PodList emptyPodList = mock(PodList.class);
+        when(defaultNamespaceClient.pods()).thenReturn(defaultNamespacePods);
+        when(defaultNamespacePods.withLabel(Constants.JOB_ID_LABEL_KEY, "1")).thenReturn(defaultNamespacePods);
+        when(defaultNamespacePods.list()).thenReturn(emptyPodList);
+        when(emptyPodList.getItems()).thenReturn(Collections.emptyList());
+
+        when(pluginRequest.getPluginSettings()).thenReturn(pluginSettings);
+        when(kubernetesClientFactory.client(pluginSettings, pluginSettings.getNamespace())).thenReturn(defaultNamespaceClient);
+        when(kubernetesClientFactory.client(pluginSettings, "gocd-2")).thenReturn(client);
+
+        when(builder.getTemplate("agent-status-report.template.ftlh")).thenReturn(template);
+        when(builder.build(eq(template), any(KubernetesElasticAgent.class))).thenReturn("my-view");
+
+        GoPluginApiResponse response = executor.execute();
+
+        assertThat(response.responseBody(), is("{\"view\":\"my-view\"}"));
+    }
+
+    private static PluginSettings settingsWithNamespaces(String namespaces) {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("namespace", namespaces);
+        return PluginSettings.fromJSON(new Gson().toJson(settings));
+    }
+
     private Pod createDefaultPod() {
         Pod pod = new Pod();
         pod.setMetadata(new ObjectMeta());
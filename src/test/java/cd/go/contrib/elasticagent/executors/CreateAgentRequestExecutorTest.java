@@ -18,8 +18,11 @@ package cd.go.contrib.elasticagent.executors;
 
 import cd.go.contrib.elasticagent.*;
 import cd.go.contrib.elasticagent.requests.CreateAgentRequest;
+import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import org.junit.Test;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.*;
 
 public class CreateAgentRequestExecutorTest {
@@ -34,4 +37,29 @@ public class CreateAgentRequestExecutorTest {
 
         verify(agentInstances).create(request, settings, pluginRequest);
     }
+
+    @Test
+    public void shouldQueueAgentCreationAndAcknowledgeRightAway() throws Exception {
+        CreateAgentRequest request = new CreateAgentRequest();
+        PodCreationQueue podCreationQueue = mock(PodCreationQueue.class);
+        PluginRequest pluginRequest = mock(PluginRequest.class);
+        when(podCreationQueue.submit(request, pluginRequest)).thenReturn(true);
+
+        GoPluginApiResponse response = new CreateAgentRequestExecutor(request, podCreationQueue, pluginRequest).execute();
+
+        assertThat(response.responseCode(), is(200));
+        verify(podCreationQueue).submit(request, pluginRequest);
+    }
+
+    @Test
+    public void shouldRespondWithErrorWhenPodCreationQueueDropsRequest() throws Exception {
+        CreateAgentRequest request = new CreateAgentRequest();
+        PodCreationQueue podCreationQueue = mock(PodCreationQueue.class);
+        PluginRequest pluginRequest = mock(PluginRequest.class);
+        when(podCreationQueue.submit(request, pluginRequest)).thenReturn(false);
+
+        GoPluginApiResponse response = new CreateAgentRequestExecutor(request, podCreationQueue, pluginRequest).execute();
+
+        assertThat(response.responseCode(), is(500));
+    }
 }
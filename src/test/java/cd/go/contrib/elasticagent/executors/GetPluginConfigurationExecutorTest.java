@@ -45,7 +45,7 @@ public class GetPluginConfigurationExecutorTest {
         GoPluginApiResponse response = new GetPluginConfigurationExecutor().execute();
 
         assertThat(response.responseCode(), is(200));
-        String expectedJSON = "{\"go_server_url\":{\"display-name\":\"GoCD server URL\",\"required\":false,\"secure\":false,\"display-order\":\"0\"},\"auto_register_timeout\":{\"display-name\":\"Agent auto-register timeout (in minutes)\",\"default-value\":\"10\",\"required\":false,\"secure\":false,\"display-order\":\"1\"},\"pending_pods_count\":{\"display-name\":\"Maximum pending pods\",\"default-value\":\"10\",\"required\":false,\"secure\":false,\"display-order\":\"2\"},\"kubernetes_cluster_url\":{\"display-name\":\"Cluster URL\",\"required\":true,\"secure\":false,\"display-order\":\"3\"},\"kubernetes_cluster_ca_cert\":{\"display-name\":\"Cluster ca certificate\",\"required\":false,\"secure\":true,\"display-order\":\"7\"},\"security_token\":{\"display-name\":\"Security token\",\"required\":true,\"secure\":true,\"display-order\":\"6\"},\"namespace\":{\"display-name\":\"Namespace\",\"default-value\":\"default\",\"required\":false,\"secure\":false,\"display-order\":\"5\"},\"use_profile_pending_pods_count\":{\"display-name\":\"Namespace\",\"default-value\":\"default\",\"required\":false,\"secure\":false,\"display-order\":\"5\"}}";
+        String expectedJSON = "{\"go_server_url\":{\"display-name\":\"GoCD server URL\",\"required\":false,\"secure\":false,\"display-order\":\"0\"},\"auto_register_timeout\":{\"display-name\":\"Agent auto-register timeout (in minutes)\",\"default-value\":\"10\",\"required\":false,\"secure\":false,\"display-order\":\"1\"},\"pending_pods_count\":{\"display-name\":\"Maximum pending pods\",\"default-value\":\"10\",\"required\":false,\"secure\":false,\"display-order\":\"2\"},\"kubernetes_cluster_url\":{\"display-name\":\"Cluster URL\",\"required\":true,\"secure\":false,\"display-order\":\"3\"},\"kubernetes_cluster_ca_cert\":{\"display-name\":\"Cluster ca certificate\",\"required\":false,\"secure\":true,\"display-order\":\"7\"},\"security_token\":{\"display-name\":\"Security token\",\"required\":true,\"secure\":true,\"display-order\":\"6\"},\"namespace\":{\"display-name\":\"Namespace\",\"default-value\":\"default\",\"required\":false,\"secure\":false,\"display-order\":\"5\"},\"use_profile_pending_pods_count\":{\"display-name\":\"Namespace\",\"default-value\":\"default\",\"required\":false,\"secure\":false,\"display-order\":\"5\"},\"min_refresh_interval\":{\"display-name\":\"Minimum pod refresh interval (in seconds)\",\"default-value\":\"5\",\"required\":false,\"secure\":false,\"display-order\":\"8\"},\"create_agent_max_staleness\":{\"display-name\":\"Pod information staleness for create agent (in seconds)\",\"default-value\":\"5\",\"required\":false,\"secure\":false,\"display-order\":\"9\"},\"should_assign_work_max_staleness\":{\"display-name\":\"Pod information staleness for should assign work (in seconds)\",\"default-value\":\"60\",\"required\":false,\"secure\":false,\"display-order\":\"10\"},\"server_ping_max_staleness\":{\"display-name\":\"Pod information staleness for server ping (in seconds)\",\"default-value\":\"30\",\"required\":false,\"secure\":false,\"display-order\":\"11\"},\"status_report_max_staleness\":{\"display-name\":\"Pod information staleness for status reports (in seconds)\",\"default-value\":\"10\",\"required\":false,\"secure\":false,\"display-order\":\"12\"},\"background_refresh_interval\":{\"display-name\":\"Background pod refresh interval (in seconds)\",\"default-value\":\"30\",\"required\":false,\"secure\":false,\"display-order\":\"13\"},\"background_refresh_jitter\":{\"display-name\":\"Background pod refresh jitter (in seconds)\",\"default-value\":\"5\",\"required\":false,\"secure\":false,\"display-order\":\"14\"},\"pod_creation_workers\":{\"display-name\":\"Pod creation workers\",\"default-value\":\"4\",\"required\":false,\"secure\":false,\"display-order\":\"15\"},\"pod_creation_queue_size\":{\"display-name\":\"Pod creation queue size\",\"default-value\":\"500\",\"required\":false,\"secure\":false,\"display-order\":\"16\"},\"pod_creation_rate\":{\"display-name\":\"Pod creation rate (pods per second)\",\"default-value\":\"0\",\"required\":false,\"secure\":false,\"display-order\":\"17\"},\"pod_creation_burst\":{\"display-name\":\"Pod creation burst\",\"default-value\":\"10\",\"required\":false,\"secure\":false,\"display-order\":\"18\"},\"adaptive_max_pending_pods\":{\"display-name\":\"Adaptive maximum pending pods\",\"default-value\":\"0\",\"required\":false,\"secure\":false,\"display-order\":\"19\"},\"pending_latency_target\":{\"display-name\":\"Pod scheduling latency target (in seconds)\",\"default-value\":\"60\",\"required\":false,\"secure\":false,\"display-order\":\"20\"},\"pod_termination_concurrency\":{\"display-name\":\"Pod termination concurrency\",\"default-value\":\"10\",\"required\":false,\"secure\":false,\"display-order\":\"21\"}}";
         //        String expectedJSON = "{\n" +
         //                "  \"go_server_url\": {\n" +
         //                "    \"display-name\": \"GoCD server URL\",\n" +
@@ -43,7 +43,7 @@ public class GetProfileMetadataExecutorTest {
         GoPluginApiResponse response = new GetProfileMetadataExecutor().execute();
 
         assertThat(response.responseCode(), is(200));
-        String expectedJSON = "[{\"key\":\"Image\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"MaxMemory\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"MaxCPU\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"Environment\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"PodConfiguration\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"SpecifiedUsingPodConfiguration\",\"metadata\":{\"required\":true,\"secure\":false}},{\"key\":\"Privileged\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"MaxPendingPods\",\"metadata\":{\"required\":false,\"secure\":false}}]";
+        String expectedJSON = "[{\"key\":\"Image\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"MaxMemory\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"MaxCPU\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"Environment\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"PodConfiguration\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"SpecifiedUsingPodConfiguration\",\"metadata\":{\"required\":true,\"secure\":false}},{\"key\":\"Privileged\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"MaxPendingPods\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"WarmPoolSize\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"PodCreationRate\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"PodCreationBurst\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"MaxJobsPerPod\",\"metadata\":{\"required\":false,\"secure\":false}},{\"key\":\"IdleAgentTimeout\",\"metadata\":{\"required\":false,\"secure\":false}}]";
 //        String expectedJSON = "[\n" +
 //                "  {\n" +
 //                "    \"key\": \"Image\",\n" +
@@ -59,8 +59,9 @@ public class ServerPingRequestExecutorTest extends BaseTest {
     @Before
     public void setUp() {
         initMocks(this);
-        when(factory.client(any())).thenReturn(mockedClient);
+        when(factory.client(any(), any())).thenReturn(mockedClient);
         when(mockedClient.pods()).thenReturn(mockedOperation);
+        when(mockedOperation.withLabels(any())).thenReturn(mockedOperation);
         when(mockedOperation.create(any(Pod.class))).thenAnswer(new Answer<Pod>() {
             @Override
             public Pod answer(InvocationOnMock invocation) throws Throwable {
@@ -94,7 +95,7 @@ public class ServerPingRequestExecutorTest extends BaseTest {
         verifyNoMoreInteractions(pluginRequest);
 
         final Collection<Agent> values = agents.agents();
-        new ServerPingRequestExecutor(agentInstances, pluginRequest).execute();
+        new ServerPingRequestExecutor(agentInstances, pluginRequest, new PodTerminator(agentInstances), new PodStartupLatencies()).execute();
         verify(pluginRequest).disableAgents(argThat(collectionMatches(values)));
     }
 
@@ -118,11 +119,27 @@ public class ServerPingRequestExecutorTest extends BaseTest {
         when(pluginRequest.listAgents()).thenReturn(agents);
         verifyNoMoreInteractions(pluginRequest);
 
-        new ServerPingRequestExecutor(agentInstances, pluginRequest).execute();
+        new ServerPingRequestExecutor(agentInstances, pluginRequest, new PodTerminator(agentInstances), new PodStartupLatencies()).execute();
         final Collection<Agent> values = agents.agents();
         verify(pluginRequest).deleteAgents(argThat(collectionMatches(values)));
     }
 
+    @Test
+    public void shouldTerminateAgentsDisabledInSamePingWithoutListingAgentsAgain() throws Exception {
+        final Agent agent = new Agent("missing-agent", Agent.AgentState.Idle, Agent.BuildState.Idle, Agent.ConfigState.Enabled);
+        AgentInstances<KubernetesInstance> agentInstances = new KubernetesAgentInstances(factory);
+
+        PluginRequest pluginRequest = mock(PluginRequest.class);
+        when(pluginRequest.getPluginSettings()).thenReturn(createSettings());
+        when(pluginRequest.listAgents()).thenReturn(new Agents(Arrays.asList(agent)));
+
+        new ServerPingRequestExecutor(agentInstances, pluginRequest, new PodTerminator(agentInstances), new PodStartupLatencies()).execute();
+
+        verify(pluginRequest, times(1)).listAgents();
+        verify(pluginRequest).disableAgents(argThat(collectionMatches(Arrays.asList(agent))));
+        verify(pluginRequest).deleteAgents(argThat(collectionMatches(Arrays.asList(agent.disabled()))));
+    }
+
     @Test
     public void testShouldTerminateInstancesThatNeverAutoRegistered() throws Exception {
         KubernetesAgentInstances agentInstances = new KubernetesAgentInstances(factory);
@@ -141,7 +158,7 @@ public class ServerPingRequestExecutorTest extends BaseTest {
         when(pluginRequest.listAgents()).thenReturn(new Agents());
         verifyNoMoreInteractions(pluginRequest);
 
-        new ServerPingRequestExecutor(agentInstances, pluginRequest).execute();
+        new ServerPingRequestExecutor(agentInstances, pluginRequest, new PodTerminator(agentInstances), new PodStartupLatencies()).execute();
         assertFalse(agentInstances.instanceExists(container));
     }
 
@@ -153,7 +170,7 @@ public class ServerPingRequestExecutorTest extends BaseTest {
         verifyNoMoreInteractions(pluginRequest);
 
         AgentInstances<KubernetesInstance> agentInstances = new KubernetesAgentInstances(factory);
-        ServerPingRequestExecutor serverPingRequestExecutor = new ServerPingRequestExecutor(agentInstances, pluginRequest);
+        ServerPingRequestExecutor serverPingRequestExecutor = new ServerPingRequestExecutor(agentInstances, pluginRequest, new PodTerminator(agentInstances), new PodStartupLatencies());
         serverPingRequestExecutor.execute();
     }
 }
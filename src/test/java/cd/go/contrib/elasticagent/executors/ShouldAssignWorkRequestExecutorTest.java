@@ -18,17 +18,20 @@ package cd.go.contrib.elasticagent.executors;
 
 import cd.go.contrib.elasticagent.*;
 import cd.go.contrib.elasticagent.model.JobIdentifier;
+import cd.go.contrib.elasticagent.model.ProfileStartupLatencies;
 import cd.go.contrib.elasticagent.requests.CreateAgentRequest;
 import cd.go.contrib.elasticagent.requests.ShouldAssignWorkRequest;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import io.fabric8.kubernetes.api.model.DoneablePod;
 import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
 import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.dsl.MixedOperation;
 import io.fabric8.kubernetes.client.dsl.PodResource;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -39,9 +42,14 @@ import java.util.Map;
 import java.util.UUID;
 
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -58,12 +66,14 @@ public class ShouldAssignWorkRequestExecutorTest extends BaseTest {
     @Mock
     private MixedOperation<Pod, PodList, DoneablePod, PodResource<Pod, DoneablePod>> mockedOperation;
     private String environment = "QA";
+    private final PodStartupLatencies startupLatencies = new PodStartupLatencies();
 
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        when(factory.client(any())).thenReturn(mockedClient);
+        when(factory.client(any(), any())).thenReturn(mockedClient);
         when(mockedClient.pods()).thenReturn(mockedOperation);
+        when(mockedOperation.withLabels(any())).thenReturn(mockedOperation);
         
         final PodList podList = mock(PodList.class);
         when(mockedOperation.list()).thenReturn(podList);
@@ -87,18 +97,143 @@ public class ShouldAssignWorkRequestExecutorTest extends BaseTest {
     public void shouldAssignWorkWhenJobIdMatchesPodId() throws Exception {
         JobIdentifier jobIdentifier = new JobIdentifier("test-pipeline", 1L, "Test Pipeline", "test-stage", "1", "test-job", 100L);
         ShouldAssignWorkRequest request = new ShouldAssignWorkRequest(new Agent(instance.name(), null, null, null), environment, properties, jobIdentifier);
-        GoPluginApiResponse response = new ShouldAssignWorkRequestExecutor(request, agentInstances).execute();
+        GoPluginApiResponse response = new ShouldAssignWorkRequestExecutor(request, agentInstances, null, startupLatencies).execute();
         assertThat(response.responseCode(), is(200));
         assertThat(response.responseBody(), is("true"));
     }
 
+    @Test
+    public void shouldCompleteStartupOfAgentThatIsAssignedWorkBeforeServerPingListedIt() throws Exception {
+        final PodStartupLatencies trackedByAgentInstances = PodStartupLatencies.instance();
+        final long startupsBefore = completedStartups(trackedByAgentInstances, instance.profile());
+        JobIdentifier jobIdentifier = new JobIdentifier("test-pipeline", 1L, "Test Pipeline", "test-stage", "1", "test-job", 100L);
+        ShouldAssignWorkRequest request = new ShouldAssignWorkRequest(new Agent(instance.name(), null, null, null), environment, properties, jobIdentifier);
+
+        GoPluginApiResponse response = new ShouldAssignWorkRequestExecutor(request, agentInstances, null, trackedByAgentInstances).execute();
+
+        assertThat(response.responseBody(), is("true"));
+        assertThat(completedStartups(trackedByAgentInstances, instance.profile()), is(startupsBefore + 1));
+    }
+
     @Test
     public void shouldNotAssignWorkWhenJobIdDiffersFromPodId() throws Exception {
         long mismatchingJobId = 200L;
         JobIdentifier jobIdentifier = new JobIdentifier("test-pipeline", 1L, "Test Pipeline", "test-stage", "1", "test-job", mismatchingJobId);
         ShouldAssignWorkRequest request = new ShouldAssignWorkRequest(new Agent(instance.name(), null, null, null), "FooEnv", properties, jobIdentifier);
-        GoPluginApiResponse response = new ShouldAssignWorkRequestExecutor(request, agentInstances).execute();
+        GoPluginApiResponse response = new ShouldAssignWorkRequestExecutor(request, agentInstances, null, startupLatencies).execute();
         assertThat(response.responseCode(), is(200));
         assertThat(response.responseBody(), is("false"));
     }
+
+    @Test
+    public void shouldReuseIdleAgentForJobOfSameProfileWhenProfileAllowsReuse() throws Exception {
+        KubernetesInstance reusable = createReusableInstance("2");
+        JobIdentifier jobIdentifier = new JobIdentifier("test-pipeline", 2L, "Test Pipeline", "test-stage", "1", "test-job", 200L);
+        ShouldAssignWorkRequest request = new ShouldAssignWorkRequest(idleAgent(reusable), environment, properties, jobIdentifier);
+
+        GoPluginApiResponse response = new ShouldAssignWorkRequestExecutor(request, agentInstances, pluginRequest, startupLatencies).execute();
+
+        assertThat(response.responseBody(), is("true"));
+        assertThat(agentInstances.find(reusable.name()).jobId(), is(200L));
+        assertThat(agentInstances.find(reusable.name()).jobsRun(), is(2));
+    }
+
+    @Test
+    public void shouldRemovePodAndAgentCreatedForJobOnNextServerPingWhenReusedAgentTakesTheJob() throws Exception {
+        JobIdentifier jobIdentifier = new JobIdentifier("test-pipeline", 2L, "Test Pipeline", "test-stage", "1", "test-job", 200L);
+        KubernetesInstance superseded = agentInstances.create(new CreateAgentRequest(UUID.randomUUID().toString(), properties, environment, jobIdentifier), createSettings(), pluginRequest);
+        PodResource<Pod, DoneablePod> supersededResource = mock(PodResource.class);
+        when(mockedOperation.withName(superseded.name())).thenReturn(supersededResource);
+        when(supersededResource.get()).thenReturn(new PodBuilder().withNewMetadata().withName(superseded.name()).withLabels(new HashMap<>()).endMetadata().build());
+        Agent supersededAgent = new Agent(superseded.name(), Agent.AgentState.Idle, Agent.BuildState.Idle, Agent.ConfigState.Enabled);
+        when(pluginRequest.getPluginSettings()).thenReturn(createSettings());
+        when(pluginRequest.listAgents()).thenReturn(new Agents(Collections.singletonList(supersededAgent)));
+        KubernetesInstance reusable = createReusableInstance("2");
+
+        GoPluginApiResponse response = new ShouldAssignWorkRequestExecutor(new ShouldAssignWorkRequest(idleAgent(reusable), environment, properties, jobIdentifier), agentInstances, pluginRequest, startupLatencies).execute();
+
+        assertThat(response.responseBody(), is("true"));
+        verifyZeroInteractions(supersededResource);
+        verify(pluginRequest, never()).listAgents();
+
+        new ServerPingRequestExecutor(agentInstances, pluginRequest).execute();
+
+        verify(mockedOperation).delete();
+        assertNull(agentInstances.find(superseded.name()));
+        verify(pluginRequest).disableAgents(Collections.singletonList(supersededAgent));
+        verify(pluginRequest).deleteAgents(Collections.singletonList(supersededAgent.disabled()));
+    }
+
+    @Test
+    public void shouldTerminatePodCreatedForJobOnNextServerPingWhenItsAgentHasNotRegistered() throws Exception {
+        JobIdentifier jobIdentifier = new JobIdentifier("test-pipeline", 2L, "Test Pipeline", "test-stage", "1", "test-job", 200L);
+        KubernetesInstance superseded = agentInstances.create(new CreateAgentRequest(UUID.randomUUID().toString(), properties, environment, jobIdentifier), createSettings(), pluginRequest);
+        PodResource<Pod, DoneablePod> supersededResource = mock(PodResource.class);
+        when(mockedOperation.withName(superseded.name())).thenReturn(supersededResource);
+        when(supersededResource.get()).thenReturn(new PodBuilder().withNewMetadata().withName(superseded.name()).withLabels(new HashMap<>()).endMetadata().build());
+        when(pluginRequest.listAgents()).thenReturn(new Agents());
+        KubernetesInstance reusable = createReusableInstance("2");
+        new ShouldAssignWorkRequestExecutor(new ShouldAssignWorkRequest(idleAgent(reusable), environment, properties, jobIdentifier), agentInstances, pluginRequest, startupLatencies).execute();
+
+        new ServerPingRequestExecutor(agentInstances, pluginRequest).execute();
+
+        verify(mockedOperation).delete();
+        assertNull(agentInstances.find(superseded.name()));
+    }
+
+    @Test
+    public void shouldNotReuseAgentThatRanMaximumJobsOfProfile() throws Exception {
+        KubernetesInstance reusable = createReusableInstance("2");
+        JobIdentifier secondJob = new JobIdentifier("test-pipeline", 2L, "Test Pipeline", "test-stage", "1", "test-job", 200L);
+        new ShouldAssignWorkRequestExecutor(new ShouldAssignWorkRequest(idleAgent(reusable), environment, properties, secondJob), agentInstances, pluginRequest, startupLatencies).execute();
+
+        JobIdentifier thirdJob = new JobIdentifier("test-pipeline", 3L, "Test Pipeline", "test-stage", "1", "test-job", 300L);
+        GoPluginApiResponse response = new ShouldAssignWorkRequestExecutor(new ShouldAssignWorkRequest(idleAgent(reusable), environment, properties, thirdJob), agentInstances, pluginRequest, startupLatencies).execute();
+
+        assertThat(response.responseBody(), is("false"));
+        assertThat(agentInstances.find(reusable.name()).jobId(), is(200L));
+    }
+
+    @Test
+    public void shouldNotReuseAgentWhenProfileDoesNotAllowReuse() throws Exception {
+        when(pluginRequest.getPluginSettings()).thenReturn(createSettings());
+        JobIdentifier jobIdentifier = new JobIdentifier("test-pipeline", 2L, "Test Pipeline", "test-stage", "1", "test-job", 200L);
+        ShouldAssignWorkRequest request = new ShouldAssignWorkRequest(idleAgent(instance), environment, properties, jobIdentifier);
+
+        GoPluginApiResponse response = new ShouldAssignWorkRequestExecutor(request, agentInstances, pluginRequest, startupLatencies).execute();
+
+        assertThat(response.responseBody(), is("false"));
+        assertThat(agentInstances.find(instance.name()).jobId(), is(100L));
+    }
+
+    private KubernetesInstance createReusableInstance(String maxJobsPerPod) throws Exception {
+        properties.put("MaxJobsPerPod", maxJobsPerPod);
+        KubernetesInstance reusable = agentInstances.create(new CreateAgentRequest(UUID.randomUUID().toString(), properties, environment, new JobIdentifier(150L)), createSettings(), pluginRequest);
+
+        ArgumentCaptor<Pod> created = ArgumentCaptor.forClass(Pod.class);
+        verify(mockedOperation, atLeastOnce()).create(created.capture());
+        PodResource<Pod, DoneablePod> podResource = mock(PodResource.class);
+        when(mockedOperation.withName(reusable.name())).thenReturn(podResource);
+        when(podResource.get()).thenAnswer(invocation -> created.getValue());
+        when(podResource.patch(any(Pod.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+        when(pluginRequest.getPluginSettings()).thenReturn(createSettings());
+        return reusable;
+    }
+
+    private static Agent idleAgent(KubernetesInstance instance) {
+        return new Agent(instance.name(), Agent.AgentState.Idle, Agent.BuildState.Idle, Agent.ConfigState.Enabled);
+    }
+
+    private static long completedStartups(PodStartupLatencies latencies, String profile) {
+        for (ProfileStartupLatencies latenciesOfProfile : latencies.report()) {
+            if (latenciesOfProfile.getProfile().equals(profile)) {
+                for (PodStartupLatencies.Histogram stage : latenciesOfProfile.getStages()) {
+                    if (stage.getStage().equals(PodStartupLatencies.Stage.TOTAL.description())) {
+                        return stage.getCount();
+                    }
+                }
+            }
+        }
+        return 0;
+    }
 }
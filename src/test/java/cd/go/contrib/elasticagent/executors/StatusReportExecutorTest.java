@@ -16,11 +16,16 @@
 
 package cd.go.contrib.elasticagent.executors;
 
+import cd.go.contrib.elasticagent.CircuitOpenException;
 import cd.go.contrib.elasticagent.Constants;
+import cd.go.contrib.elasticagent.InventoryRefresher;
+import cd.go.contrib.elasticagent.KubernetesApiPolicy;
 import cd.go.contrib.elasticagent.KubernetesClientFactory;
 import cd.go.contrib.elasticagent.PluginRequest;
 import cd.go.contrib.elasticagent.PluginSettings;
+import cd.go.contrib.elasticagent.PodStartupLatencies;
 import cd.go.contrib.elasticagent.builders.PluginStatusReportViewBuilder;
+import cd.go.contrib.elasticagent.model.InventoryStatus;
 import cd.go.contrib.elasticagent.model.KubernetesCluster;
 import com.thoughtworks.go.plugin.api.response.GoPluginApiResponse;
 import freemarker.template.Template;
@@ -31,12 +36,22 @@ import io.fabric8.kubernetes.client.dsl.internal.NodeOperationsImpl;
 import io.fabric8.kubernetes.client.dsl.internal.PodOperationsImpl;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class StatusReportExecutorTest {
@@ -58,15 +73,7 @@ public class StatusReportExecutorTest {
 
     @Test
     public void shouldBuildStatusReportView() throws Exception {
-        NodeOperationsImpl nodes = mock(NodeOperationsImpl.class);
-        PodOperationsImpl pods = mock(PodOperationsImpl.class);
-
-        when(nodes.list()).thenReturn(new NodeList());
-        when(kubernetesClient.nodes()).thenReturn(nodes);
-
-        when(pods.withLabel(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID)).thenReturn(pods);
-        when(pods.list()).thenReturn(new PodList());
-        when(kubernetesClient.pods()).thenReturn(pods);
+        stubClusterInformation();
 
         final PluginStatusReportViewBuilder builder = mock(PluginStatusReportViewBuilder.class);
         final Template template = mock(Template.class);
@@ -74,9 +81,51 @@ public class StatusReportExecutorTest {
         when(builder.getTemplate("status-report.template.ftlh")).thenReturn(template);
         when(builder.build(eq(template), any(KubernetesCluster.class))).thenReturn("status-report");
 
-        final GoPluginApiResponse response = new StatusReportExecutor(pluginRequest, kubernetesClientFactory, builder).execute();
+        final GoPluginApiResponse response = new StatusReportExecutor(pluginRequest, null, kubernetesClientFactory, builder, new KubernetesApiPolicy(), new PodStartupLatencies(),
+                new AtomicReference<>()).execute();
 
         assertThat(response.responseCode(), is(200));
         assertThat(response.responseBody(), is("{\"view\":\"status-report\"}"));
     }
+
+    @Test
+    public void shouldReportCopyOfLastKnownClusterWhileKubernetesApiCircuitIsOpen() throws Exception {
+        stubClusterInformation();
+        final PluginStatusReportViewBuilder builder = mock(PluginStatusReportViewBuilder.class);
+        final Template template = mock(Template.class);
+        when(builder.getTemplate("status-report.template.ftlh")).thenReturn(template);
+        when(builder.build(eq(template), any(KubernetesCluster.class))).thenReturn("status-report");
+        final AtomicReference<KubernetesCluster> lastKnownCluster = new AtomicReference<>();
+
+        new StatusReportExecutor(pluginRequest, null, kubernetesClientFactory, builder, new KubernetesApiPolicy(), new PodStartupLatencies(), lastKnownCluster).execute();
+        final KubernetesCluster cached = lastKnownCluster.get();
+
+        final KubernetesApiPolicy openCircuit = mock(KubernetesApiPolicy.class);
+        when(openCircuit.call(anyString(), any())).thenThrow(new CircuitOpenException("Kubernetes API circuit is open."));
+        final InventoryRefresher inventoryRefresher = mock(InventoryRefresher.class);
+        final InventoryStatus status = new InventoryStatus(new Date(), true, 3);
+        when(inventoryRefresher.status()).thenReturn(status);
+        final GoPluginApiResponse response = new StatusReportExecutor(pluginRequest, inventoryRefresher, kubernetesClientFactory, builder, openCircuit,
+                new PodStartupLatencies(), lastKnownCluster).execute();
+
+        assertThat(response.responseCode(), is(200));
+        final ArgumentCaptor<KubernetesCluster> reported = ArgumentCaptor.forClass(KubernetesCluster.class);
+        verify(builder, times(2)).build(eq(template), reported.capture());
+        assertThat(reported.getAllValues().get(1).getInventoryStatus(), is(status));
+        assertSame(cached.getNodes(), reported.getAllValues().get(1).getNodes());
+        assertNull(cached.getInventoryStatus());
+        assertSame(cached, lastKnownCluster.get());
+    }
+
+    private void stubClusterInformation() {
+        NodeOperationsImpl nodes = mock(NodeOperationsImpl.class);
+        PodOperationsImpl pods = mock(PodOperationsImpl.class);
+
+        when(nodes.list()).thenReturn(new NodeList());
+        when(kubernetesClient.nodes()).thenReturn(nodes);
+
+        when(pods.withLabels(Collections.singletonMap(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID))).thenReturn(pods);
+        when(pods.list()).thenReturn(new PodList());
+        when(kubernetesClient.pods()).thenReturn(pods);
+    }
 }
@@ -204,6 +204,57 @@ public class ValidateConfigurationExecutorTest {
                 "]", response.responseBody(), true);
     }
 
+    @Test
+    public void shouldRejectZeroAndNegativeValuesOfSettingsThatMustBePositive() throws Exception {
+        when(namespaceList.getItems()).thenReturn(getNamespaceList("default"));
+
+        ValidatePluginSettingsRequest settings = new ValidatePluginSettingsRequest();
+        settings.put("go_server_url", "https://ci.example.com/go");
+        settings.put("kubernetes_cluster_url", "https://cluster.example.com");
+        settings.put("security_token", "some-token");
+        settings.put("background_refresh_interval", "0");
+        settings.put("pod_creation_workers", "-2");
+        settings.put("pod_creation_queue_size", "0");
+        GoPluginApiResponse response = new ValidateConfigurationExecutor(settings, null, factory).execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("[\n" +
+                "  {\n" +
+                "    \"message\": \"Background pod refresh interval (in seconds) must be a positive integer.\",\n" +
+                "    \"key\": \"background_refresh_interval\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"message\": \"Pod creation workers must be a positive integer.\",\n" +
+                "    \"key\": \"pod_creation_workers\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"message\": \"Pod creation queue size must be a positive integer.\",\n" +
+                "    \"key\": \"pod_creation_queue_size\"\n" +
+                "  }\n" +
+                "]", response.responseBody(), false);
+    }
+
+    @Test
+    public void shouldAllowZeroButRejectNegativeValuesOfSettingsThatCanBeTurnedOff() throws Exception {
+        when(namespaceList.getItems()).thenReturn(getNamespaceList("default"));
+
+        ValidatePluginSettingsRequest settings = new ValidatePluginSettingsRequest();
+        settings.put("go_server_url", "https://ci.example.com/go");
+        settings.put("kubernetes_cluster_url", "https://cluster.example.com");
+        settings.put("security_token", "some-token");
+        settings.put("pod_creation_rate", "0");
+        settings.put("adaptive_max_pending_pods", "-1");
+        GoPluginApiResponse response = new ValidateConfigurationExecutor(settings, null, factory).execute();
+
+        assertThat(response.responseCode(), is(200));
+        JSONAssert.assertEquals("[\n" +
+                "  {\n" +
+                "    \"message\": \"Adaptive maximum pending pods must be a non-negative integer.\",\n" +
+                "    \"key\": \"adaptive_max_pending_pods\"\n" +
+                "  }\n" +
+                "]", response.responseBody(), true);
+    }
+
     private List<Namespace> getNamespaceList(String... namespaces) {
         if (namespaces == null || namespaces.length == 0) {
             return Collections.emptyList();
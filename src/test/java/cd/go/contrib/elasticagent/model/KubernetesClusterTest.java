@@ -24,6 +24,8 @@ import io.fabric8.kubernetes.client.dsl.internal.NodeOperationsImpl;
 import io.fabric8.kubernetes.client.dsl.internal.PodOperationsImpl;
 import org.junit.Test;
 
+import java.util.Collections;
+
 import static org.mockito.Mockito.*;
 
 public class KubernetesClusterTest {
@@ -37,7 +39,7 @@ public class KubernetesClusterTest {
         when(nodes.list()).thenReturn(new NodeList());
         when(kubernetesClient.nodes()).thenReturn(nodes);
 
-        when(pods.withLabel(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID)).thenReturn(pods);
+        when(pods.withLabels(Collections.singletonMap(Constants.CREATED_BY_LABEL_KEY, Constants.PLUGIN_ID))).thenReturn(pods);
         when(pods.list()).thenReturn(new PodList());
         when(kubernetesClient.pods()).thenReturn(pods);
 